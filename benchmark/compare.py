@@ -0,0 +1,38 @@
+# Compares two JMH json results (make baseline, make bench): time and bytes allocated per call.
+import json
+import sys
+
+
+def load(path):
+    results = {}
+    with open(path) as f:
+        for run in json.load(f):
+            params = ",".join(f"{k}={v}" for k, v in sorted(run.get("params", {}).items()))
+            name = run["benchmark"].rsplit(".", 2)[-2:]
+            key = ".".join(name) + (f" [{params}]" if params else "")
+            alloc = run.get("secondaryMetrics", {}).get("gc.alloc.rate.norm", {}).get("score")
+            results[key] = (run["primaryMetric"]["score"], run["primaryMetric"]["scoreUnit"], alloc)
+    return results
+
+
+def change(before, after):
+    if before is None or after is None or before == 0:
+        return ""
+    return f"{100.0 * (after - before) / before:+.1f}%"
+
+
+if len(sys.argv) != 3:
+    print("Usage: python3 compare.py baseline.json current.json")
+    sys.exit(1)
+
+baseline = load(sys.argv[1])
+current = load(sys.argv[2])
+
+print(f"{'Benchmark':<60}{'Before':>12}{'After':>12}{'':>9}{'Unit':>8}{'B/op before':>14}{'B/op after':>14}{'':>9}")
+for key in sorted(set(baseline) | set(current)):
+    before = baseline.get(key, (None, "", None))
+    after = current.get(key, (None, "", None))
+    score = lambda value: "" if value is None else f"{value:.3f}"
+    alloc = lambda value: "" if value is None else f"{value:,.0f}"
+    print(f"{key:<60}{score(before[0]):>12}{score(after[0]):>12}{change(before[0], after[0]):>9}{after[1] or before[1]:>8}"
+          f"{alloc(before[2]):>14}{alloc(after[2]):>14}{change(before[2], after[2]):>9}")
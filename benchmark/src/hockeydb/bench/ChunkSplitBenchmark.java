@@ -0,0 +1,116 @@
+package hockeydb.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Splitting a chunk file into its statements, without a database.
+ *
+ * - populatorSplit: Populator.repopulateDB, the line by line splitter, against a connection
+ *   that only hands each statement to the blackhole
+ * - chunkScanner: ChunkScanner, the byte scanner REPOP loads with
+ * Both read the chunk from disk on every call, as a load does (from the page cache after
+ * the first).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkSplitBenchmark {
+
+    static final String CHUNKS = "../populate_data/sql_chunks/";
+
+    @Param("sql_chunk_36.sql")
+    public String chunk;
+
+    private MethodHandle repopulate;
+    private MethodHandle open;
+    private MethodHandle next;
+    private MethodHandle statement;
+    private MethodHandle close;
+
+    @Setup
+    public void setup() {
+        if (!Files.exists(Paths.get(CHUNKS, chunk))) {
+            throw new IllegalStateException("No chunk " + CHUNKS + chunk + ", run from the benchmark directory");
+        }
+
+        repopulate = Interface.staticMethod("Populator", "repopulateDB", void.class, Connection.class, String.class);
+        Class<?> scanner = Interface.type("ChunkScanner");
+        open = Interface.staticMethod("ChunkScanner", "chunk", scanner, String.class);
+        next = Interface.method("ChunkScanner", "next", boolean.class);
+        statement = Interface.method("ChunkScanner", "statement", String.class);
+        close = Interface.method("ChunkScanner", "close", void.class);
+    }
+
+    @Benchmark
+    public void populatorSplit(Blackhole blackhole) throws Throwable {
+        repopulate.invoke(sink(blackhole), chunk);
+    }
+
+    @Benchmark
+    public long chunkScanner(Blackhole blackhole) throws Throwable {
+        Object scanner = open.invoke(chunk);
+        long statements = 0;
+        try {
+            while ((boolean) next.invoke(scanner)) {
+                blackhole.consume((String) statement.invoke(scanner));
+                statements++;
+            }
+        } finally {
+            close.invoke(scanner);
+        }
+        return statements;
+    }
+
+    // a connection whose statements consume what is batched and run nothing
+    private static Connection sink(Blackhole blackhole) {
+        Statement statement = (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                new Class<?>[] { Statement.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "addBatch":
+                            blackhole.consume(args[0]);
+                            return null;
+                        case "executeBatch":
+                            return new int[0];
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, method, args) -> method.getName().equals("createStatement")
+                        ? statement
+                        : defaultValue(method.getReturnType()));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        return null;
+    }
+}
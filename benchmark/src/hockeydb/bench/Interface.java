@@ -0,0 +1,51 @@
+package hockeydb.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/*
+ * The interface classes are in the default package, which a named package (and JMH wants
+ * one for its generated code) cannot import. The benchmarks look them up here once, in
+ * their setup, and call them through MethodHandles, a few nanoseconds per call.
+ */
+final class Interface {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private Interface() {
+    }
+
+    static Class<?> type(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(className + " is not on the classpath, build ../interface first", e);
+        }
+    }
+
+    static MethodHandle staticMethod(String className, String name, Class<?> returnType, Class<?>... params) {
+        try {
+            return LOOKUP.findStatic(type(className), name, MethodType.methodType(returnType, params));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No " + className + "." + name, e);
+        }
+    }
+
+    // an instance method, the receiver is the first argument
+    static MethodHandle method(String className, String name, Class<?> returnType, Class<?>... params) {
+        try {
+            return LOOKUP.findVirtual(type(className), name, MethodType.methodType(returnType, params));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No " + className + "." + name, e);
+        }
+    }
+
+    static MethodHandle constructor(String className, Class<?>... params) {
+        try {
+            return LOOKUP.findConstructor(type(className), MethodType.methodType(void.class, params));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No constructor of " + className, e);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package hockeydb.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The 16 console commands end to end: query, read and print, without the course server.
+ *
+ * - embedded: the H2 database in data/ (db.url=embedded), filled once with REPOP from the
+ *   console. The result cache is off, so every call runs its query.
+ * - local: the --local engine over the binary snapshot
+ * Each command runs with the inputs below, the ones the README's example uses where it has
+ * them. Commands report their errors on the console instead of throwing, so each one is run
+ * once in setup with its output kept, and a trial whose output shows an error fails the
+ * benchmark instead of being timed as a fast success.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class QueryBenchmark {
+
+    static final String EMBEDDED_FILE = "../data/hockeydb.mv.db";
+
+    // console command -> HockeyDB method and its arguments
+    // what the console prints for a failed query, a stack trace or an unknown player or team
+    private static final String[] FAILURE_MARKERS = { "Exception", "Error", "Sorry" };
+
+    private static final Map<String, Object[]> COMMANDS = Map.ofEntries(
+            Map.entry("tgbt", new Object[] { "totalGoalsByTeam", "Tom", "Wilson" }),
+            Map.entry("tgap", new Object[] { "totalGAP", "Tom", "Wilson" }),
+            Map.entry("asl", new Object[] { "avgShiftByPlay" }),
+            Map.entry("gba", new Object[] { "goalsByVenue", "2016-2017" }),
+            Map.entry("topNO", new Object[] { "topNOfficialPenalties", 10 }),
+            Map.entry("mt", new Object[] { "topTeamsPlayedFor", 10 }),
+            Map.entry("tpp", new Object[] { "topPlayersPenalties", 10 }),
+            Map.entry("aslp", new Object[] { "avgShiftLengthByPeriod" }),
+            Map.entry("pw", new Object[] { "totalPlayoffWins", "Penguins", "2016-2017" }),
+            Map.entry("sAll", new Object[] { "playersScoredAgainstAllTeams" }),
+            Map.entry("top25", new Object[] { "top25byStat", "p", "2016-2017" }),
+            Map.entry("gps", new Object[] { "goalsPerShotAllPlayers", "Tom", "Wilson" }),
+            Map.entry("teams", new Object[] { "allTeams" }),
+            Map.entry("sp", new Object[] { "searchPlayer", "tom" }),
+            Map.entry("gs", new Object[] { "schedule", "Penguins", "2016-2017" }),
+            Map.entry("ghh", new Object[] { "gordieHoweHatTrick", 10 }));
+
+    @Param({ "tgbt", "tgap", "asl", "gba", "topNO", "mt", "tpp", "aslp", "pw", "sAll", "top25", "gps", "teams", "sp",
+            "gs", "ghh" })
+    public String command;
+
+    @Param({ "embedded", "local" })
+    public String backend;
+
+    private Object db;
+    private Method method;
+    private Object[] args;
+    private PrintStream console;
+
+    @Setup
+    public void setup() throws Throwable {
+        Object[] call = COMMANDS.get(command);
+        args = Arrays.copyOfRange(call, 1, call.length);
+        Class<?>[] types = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            types[i] = args[i] instanceof Integer ? int.class : String.class;
+        }
+        method = Interface.type("HockeyDB").getMethod((String) call[0], types);
+
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        if (backend.equals("local")) {
+            db = Interface.constructor("HockeyDB", boolean.class).invoke(true);
+        } else if (Files.exists(Paths.get(EMBEDDED_FILE))) {
+            Properties settings = new Properties();
+            settings.setProperty("db.url", "embedded");
+            settings.setProperty("pool.min", "1");
+            settings.setProperty("pool.max", "1");
+            settings.setProperty("cache.maxEntries", "0");
+            db = Interface.constructor("HockeyDB", Properties.class).invoke(settings);
+        } else {
+            System.setOut(console);
+            throw new IllegalStateException("No embedded database at " + EMBEDDED_FILE
+                    + ", set db.url=embedded in auth.cfg and run REPOP from the console first");
+        }
+
+        trialRun();
+    }
+
+    private void trialRun() throws Throwable {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+        try {
+            runCommand();
+        } finally {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        String text = output.toString();
+        for (String marker : FAILURE_MARKERS) {
+            if (text.contains(marker)) {
+                tearDown();
+                throw new IllegalStateException(String.format("'%s' failed on the %s backend:\n%s", command, backend, text));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        System.setOut(console);
+        Interface.method("HockeyDB", "close", void.class).invoke(db);
+    }
+
+    @Benchmark
+    public void runCommand() throws Throwable {
+        try {
+            method.invoke(db, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
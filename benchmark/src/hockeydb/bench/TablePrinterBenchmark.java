@@ -0,0 +1,110 @@
+package hockeydb.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * TablePrinter reading and printing a result set of a player table (name, name, goals,
+ * assists), as the top-N commands print them. The result set is a CachedRowSet built once
+ * per row count and rewound before each call. System.out goes to a stream that drops the
+ * bytes, so the time is reading, sizing, formatting and encoding, not the terminal.
+ * plain=true prints the tab separated values of the console's 'plain' mode instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TablePrinterBenchmark {
+
+    private static final String[] HEADERS = { "First", "Last", "Goals", "Assists" };
+    private static final String[] RANK_HEADERS = { "Rank", "First", "Last", "Goals", "Assists" };
+
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int rows;
+
+    @Param({ "false", "true" })
+    public boolean plain;
+
+    private CachedRowSet resultSet;
+    private MethodHandle printResultSet;
+    private MethodHandle printResultSetWithRank;
+    private PrintStream console;
+
+    @Setup
+    public void setup() throws Throwable {
+        Interface.staticMethod("TablePrinter", "setPlain", void.class, boolean.class).invoke(plain);
+        printResultSet = Interface.staticMethod("TablePrinter", "printResultSet", void.class, ResultSet.class,
+                String[].class);
+        printResultSetWithRank = Interface.staticMethod("TablePrinter", "printResultSetWithRank", void.class,
+                ResultSet.class, String[].class, int.class);
+        resultSet = players(rows);
+
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        System.setOut(console);
+        resultSet.close();
+    }
+
+    @Benchmark
+    public void printResultSet() throws Throwable {
+        resultSet.beforeFirst();
+        printResultSet.invoke((ResultSet) resultSet, HEADERS);
+    }
+
+    @Benchmark
+    public void printResultSetWithRank() throws Throwable {
+        resultSet.beforeFirst();
+        printResultSetWithRank.invoke((ResultSet) resultSet, RANK_HEADERS, rows);
+    }
+
+    // names repeat the way real ones do, the counts have one to two digits
+    private static CachedRowSet players(int count) throws SQLException {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(HEADERS.length);
+        for (int c = 1; c <= HEADERS.length; c++) {
+            metaData.setColumnName(c, HEADERS[c - 1]);
+            metaData.setColumnType(c, c <= 2 ? Types.VARCHAR : Types.INTEGER);
+        }
+
+        CachedRowSet players = RowSetProvider.newFactory().createCachedRowSet();
+        players.setMetaData(metaData);
+        for (int i = 0; i < count; i++) {
+            players.moveToInsertRow();
+            players.updateString(1, "First" + i % 997);
+            players.updateString(2, "Last" + i % 1009);
+            players.updateInt(3, i % 60);
+            players.updateInt(4, i * 7 % 80);
+            players.insertRow();
+        }
+        players.moveToCurrentRow();
+        return players;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Adjusts the JDBC batch size and the commit interval while REPOP runs.
+ *
+ * All workers report their batches and commits here. Every few seconds the tuner compares
+ * the rows/sec of the last window with the window before and keeps moving the batch size
+ * in the same direction while throughput improves, turning around when it drops (a simple
+ * hill climb). The commit interval grows when commits take a noticeable share of the time
+ * and shrinks when they are cheap, so transactions stay as small as throughput allows.
+ * Every batch and commit is also passed on to the load's metrics.
+ */
+public class BatchTuner {
+
+    private static final long WINDOW_NANOS = 2_000_000_000L;
+    private static final int MIN_WINDOW_BATCHES = 4;
+    private static final double STEP = 1.5;
+
+    // share of the time spent committing that makes us commit less or more often
+    private static final double SLOW_COMMITS = 0.10;
+    private static final double CHEAP_COMMITS = 0.02;
+
+    // throughput change that counts as better or worse rather than noise
+    private static final double NOISE = 0.03;
+
+    private final boolean adaptive;
+    private final int minBatch;
+    private final int maxBatch;
+    private final int minCommit;
+    private final int maxCommit;
+    private final LoadMetrics metrics;
+
+    private volatile int batchSize;
+    private volatile int commitInterval;
+
+    private long windowStart = System.nanoTime();
+    private long windowRows = 0;
+    private long windowBatches = 0;
+    private long windowBatchNanos = 0;
+    private long windowCommitNanos = 0;
+
+    private double lastThroughput = 0;
+    private int direction = 1;
+
+    public BatchTuner(boolean adaptive, int batchSize, int minBatch, int maxBatch, int commitInterval, int minCommit, int maxCommit,
+            LoadMetrics metrics) {
+        this.adaptive = adaptive;
+        this.metrics = metrics;
+        this.minBatch = minBatch;
+        this.maxBatch = Math.max(minBatch, maxBatch);
+        this.minCommit = minCommit;
+        this.maxCommit = Math.max(minCommit, maxCommit);
+        this.batchSize = adaptive ? clamp(batchSize, this.minBatch, this.maxBatch) : batchSize;
+        this.commitInterval = adaptive ? clamp(commitInterval, this.minCommit, this.maxCommit) : commitInterval;
+    }
+
+    // rows to send per executeBatch round trip
+    public int batchSize() {
+        return batchSize;
+    }
+
+    // rows per transaction
+    public int commitInterval() {
+        return commitInterval;
+    }
+
+    public void recordBatches(String table, int batches, long rows, long nanos) {
+        metrics.batch(table, batches, rows, nanos);
+        tuneBatches(batches, rows, nanos);
+    }
+
+    public void recordCommit(String table, long nanos) {
+        metrics.commit(table, nanos);
+        tuneCommit(nanos);
+    }
+
+    private synchronized void tuneBatches(int batches, long rows, long nanos) {
+        windowBatches += batches;
+        windowRows += rows;
+        windowBatchNanos += nanos;
+
+        long now = System.nanoTime();
+        if (adaptive && windowBatches >= MIN_WINDOW_BATCHES && now - windowStart >= WINDOW_NANOS) {
+            tune(now);
+        }
+    }
+
+    private synchronized void tuneCommit(long nanos) {
+        windowCommitNanos += nanos;
+    }
+
+    private void tune(long now) {
+        double seconds = (now - windowStart) / 1e9;
+        double throughput = windowRows / seconds;
+        double batchMillis = windowBatchNanos / 1e6 / windowBatches;
+        double commitShare = (double) windowCommitNanos / Math.max(1, windowBatchNanos + windowCommitNanos);
+
+        if (lastThroughput > 0 && throughput < lastThroughput * (1 - NOISE)) {
+            direction = -direction;
+        }
+
+        int oldBatch = batchSize;
+        int oldCommit = commitInterval;
+
+        int newBatch = (int) (direction > 0 ? batchSize * STEP : batchSize / STEP);
+        newBatch = clamp(newBatch, minBatch, maxBatch);
+        if (newBatch == batchSize) {
+            // hit a bound, probe the other way next time
+            direction = -direction;
+        }
+
+        int newCommit = commitInterval;
+        if (commitShare > SLOW_COMMITS) {
+            newCommit = commitInterval * 2;
+        } else if (commitShare < CHEAP_COMMITS) {
+            newCommit = commitInterval / 2;
+        }
+        newCommit = clamp(Math.max(newCommit, newBatch), minCommit, maxCommit);
+
+        batchSize = newBatch;
+        commitInterval = newCommit;
+        lastThroughput = throughput;
+
+        if (newBatch != oldBatch || newCommit != oldCommit) {
+            metrics.println(String.format("  tuner: %,.0f rows/sec, %.1f ms per batch, %.0f%% committing -> batch size %,d (was %,d), commit every %,d rows (was %,d)",
+                    throughput, batchMillis, commitShare * 100, newBatch, oldBatch, newCommit, oldCommit));
+        }
+
+        windowStart = now;
+        windowRows = 0;
+        windowBatches = 0;
+        windowBatchNanos = 0;
+        windowCommitNanos = 0;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
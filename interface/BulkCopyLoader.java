@@ -0,0 +1,133 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkData;
+import com.microsoft.sqlserver.jdbc.ISQLServerConnection;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+
+/*
+ * Loads chunk rows with the driver's bulk copy API (the same path as BULK INSERT / bcp),
+ * so rows are streamed to the server without an INSERT statement per row.
+ *
+ * Connections that are not SQL Server fall back to prepared insert batches fed from
+ * the same bulk record, so the mode can still be run against a local database.
+ */
+public class BulkCopyLoader implements SegmentLoader {
+
+    private final Connection connection;
+    private final BatchTuner tuner;
+    private final boolean tableLock;
+
+    public BulkCopyLoader(Connection connection, BatchTuner tuner, boolean tableLock) {
+        this.connection = connection;
+        this.tuner = tuner;
+        this.tableLock = tableLock;
+    }
+
+    @Override
+    public long load(String file_name, String table, LoadJournal.Checkpoint checkpoint) throws IOException, SQLException {
+        ChunkBulkRecord record = new ChunkBulkRecord(file_name, table, checkpoint.skipRows());
+
+        try {
+            connection.setAutoCommit(false);
+
+            if (record.hasMore()) {
+                record.setSchema(TableSchema.load(connection, table, record.getColumns()));
+            }
+
+            // one bulk copy per commit interval, each ends at a journal position
+            while (record.hasMore()) {
+                record.window(checkpoint.commitInterval());
+
+                if (connection.isWrapperFor(ISQLServerConnection.class)) {
+                    int batchSize = tuner.batchSize();
+                    long before = record.getRowCount();
+                    long start = System.nanoTime();
+
+                    bulkCopy(table, record, batchSize);
+
+                    long rows = record.getRowCount() - before;
+                    tuner.recordBatches(table, (int) Math.max(1, (rows + batchSize - 1) / batchSize), rows, System.nanoTime() - start);
+                } else {
+                    insertBatches(connection, table, record.getColumns(), record, tuner);
+                }
+
+                if (record.hasMore()) {
+                    checkpoint.commit(record.getPosition());
+                }
+            }
+
+            checkpoint.finish(record.getPosition());
+            return record.getRowCount();
+        } finally {
+            record.close();
+        }
+    }
+
+    private void bulkCopy(String table, ChunkBulkRecord record, int batchSize) throws SQLException {
+        SQLServerBulkCopyOptions options = new SQLServerBulkCopyOptions();
+        options.setBatchSize(batchSize);
+        options.setTableLock(tableLock);
+        // foreign keys and checks are still enforced, same as the insert modes
+        options.setCheckConstraints(true);
+        options.setBulkCopyTimeout(0);
+
+        try (SQLServerBulkCopy bulkCopy = new SQLServerBulkCopy(connection.unwrap(ISQLServerConnection.class))) {
+            bulkCopy.setBulkCopyOptions(options);
+            bulkCopy.setDestinationTableName(table);
+
+            String[] columns = record.getColumns();
+            for (int i = 0; i < columns.length; i++) {
+                bulkCopy.addColumnMapping(i + 1, columns[i]);
+            }
+
+            bulkCopy.writeToServer(record);
+        }
+    }
+
+    // local fallback: reads the bulk record and sends its rows as prepared insert batches
+    static long insertBatches(Connection connection, String table, String[] columns, ISQLServerBulkData record, BatchTuner tuner) throws SQLException {
+        long rows = 0;
+        int batchCount = 0;
+        int[] types = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            types[i] = record.getColumnType(i + 1);
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(PreparedInsertLoader.insertSQL(table, columns, 1))) {
+            while (record.next()) {
+                Object[] values = record.getRowData();
+                for (int i = 0; i < columns.length; i++) {
+                    if (values[i] == null) {
+                        statement.setNull(i + 1, types[i]);
+                    } else {
+                        statement.setObject(i + 1, values[i]);
+                    }
+                }
+
+                statement.addBatch();
+                rows++;
+
+                if (++batchCount >= tuner.batchSize()) {
+                    executeBatch(statement, table, batchCount, tuner);
+                    batchCount = 0;
+                }
+            }
+
+            if (batchCount > 0) {
+                executeBatch(statement, table, batchCount, tuner);
+            }
+        }
+
+        return rows;
+    }
+
+    private static void executeBatch(PreparedStatement statement, String table, int rows, BatchTuner tuner) throws SQLException {
+        long start = System.nanoTime();
+        statement.executeBatch();
+        tuner.recordBatches(table, 1, rows, System.nanoTime() - start);
+    }
+}
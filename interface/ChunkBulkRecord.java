@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkData;
+
+/*
+ * Streams the rows one chunk inserts into one table as a bulk copy source.
+ *
+ * Statements are found and decoded in the mapped chunk only when the bulk copy asks
+ * for the next row, so a chunk is never copied into memory.
+ */
+public class ChunkBulkRecord implements ISQLServerBulkData {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient ChunkScanner scanner;
+    private final byte[] tableBytes;
+    private final String table;
+    private transient TableSchema schema;
+
+    private String[] columns = new String[0];
+    private Object[] current;
+    private Object[] first;
+    private int position = 0;
+    private long rows = 0;
+
+    // rows handed out before next() reports the end, so a bulk copy can stop at a commit point
+    private int windowLeft = Integer.MAX_VALUE;
+
+    public ChunkBulkRecord(String file_name, String table, int skipRows) throws IOException {
+        this.scanner = ChunkScanner.chunk(file_name);
+        this.tableBytes = ChunkScanner.tableBytes(table);
+        this.table = table;
+
+        // the first row tells us the column list, rows committed by an earlier run are skipped
+        first = nextValues();
+        while (first != null && position <= skipRows) {
+            first = nextValues();
+        }
+    }
+
+    String[] getColumns() {
+        return columns;
+    }
+
+    boolean hasMore() {
+        return first != null;
+    }
+
+    // the next bulk copy gets at most 'rows' rows
+    void window(int rows) {
+        windowLeft = rows;
+    }
+
+    // inserts into the table handed out so far, counted from the start of the chunk
+    int getPosition() {
+        return first != null ? position - 1 : position;
+    }
+
+    long getRowCount() {
+        return rows;
+    }
+
+    // column types from the destination table, needed before the copy starts
+    void setSchema(TableSchema schema) {
+        this.schema = schema;
+    }
+
+    void close() throws IOException {
+        scanner.close();
+    }
+
+    private Object[] nextValues() {
+        while (scanner.next()) {
+            if (scanner.isInsertInto(tableBytes)) {
+                position++;
+                columns = scanner.columns();
+                return scanner.values(columns.length);
+            }
+        }
+        return null;
+    }
+
+    // 'first' always holds the row after the current one, so the end of a window
+    // never reads a row it does not hand out
+    @Override
+    public boolean next() throws SQLException {
+        if (windowLeft == 0 || first == null) {
+            current = null;
+            return false;
+        }
+
+        current = first;
+        windowLeft--;
+        rows++;
+
+        try {
+            first = nextValues();
+        } catch (IllegalArgumentException e) {
+            throw new SQLException("Error reading the rows for " + table, e);
+        }
+        return true;
+    }
+
+    @Override
+    public Object[] getRowData() {
+        Object[] row = current;
+
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] instanceof String) {
+                int type = schema.types[i];
+                if (type == Types.DATE) {
+                    row[i] = Date.valueOf((String) row[i]);
+                } else if (type == Types.TIMESTAMP) {
+                    row[i] = Timestamp.valueOf((String) row[i]);
+                }
+            }
+        }
+        return row;
+    }
+
+    @Override
+    public Set<Integer> getColumnOrdinals() {
+        Set<Integer> ordinals = new LinkedHashSet<>();
+        for (int i = 1; i <= columns.length; i++) {
+            ordinals.add(i);
+        }
+        return ordinals;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns[column - 1];
+    }
+
+    @Override
+    public int getColumnType(int column) {
+        return schema.types[column - 1];
+    }
+
+    @Override
+    public int getPrecision(int column) {
+        return schema.precisions[column - 1];
+    }
+
+    @Override
+    public int getScale(int column) {
+        return schema.scales[column - 1];
+    }
+}
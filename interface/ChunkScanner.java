@@ -0,0 +1,409 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Reads a sql chunk straight from a memory mapped file.
+ *
+ * Statements end at a ';' outside of a string literal ('' inside a literal is an escaped
+ * apostrophe, as written by writeSQL.py), PRINT lines end at the newline. Insert values
+ * are decoded from the mapped bytes one at a time, so walking a chunk only allocates for
+ * the values that are actually asked for as Strings.
+ */
+public class ChunkScanner implements Closeable {
+
+    // kinds of insert values
+    static final int NULL = 0;
+    static final int INT = 1;
+    static final int DOUBLE = 2;
+    static final int STRING = 3;
+
+    private static final byte[] INSERT = "INSERT INTO ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PRINT = "PRINT(".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] VALUES = ") VALUES (".getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int size;
+
+    // current statement is [start, end), end includes the ';'
+    private int start = 0;
+    private int end = 0;
+    private int valuesStart = -1;
+
+    // current value of the insert being walked
+    private int valuePos;
+    private int valueKind;
+    private long longValue;
+    private double doubleValue;
+    private int textStart;
+    private int textEnd;
+    private boolean textEscaped;
+
+    private byte[] scratch = new byte[256];
+
+    // last column list seen, the same bytes always give the same array
+    private byte[] lastColumnBytes;
+    private String[] lastColumns;
+
+    public ChunkScanner(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        long length = channel.size();
+        if (length > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Chunk too large to map: " + path);
+        }
+        size = (int) length;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    // statements already in memory, e.g. copied out of a chunk by the load pipeline
+    public ChunkScanner(byte[] bytes, int length) {
+        channel = null;
+        size = length;
+        buffer = ByteBuffer.wrap(bytes, 0, length);
+    }
+
+    public static ChunkScanner chunk(String file_name) throws IOException {
+        return new ChunkScanner(Paths.get(Populator.PATH_TO_CHUNKS, file_name));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // moves to the next statement, false at the end of the file
+    public boolean next() {
+        int pos = end;
+        while (pos < size && isSpace(buffer.get(pos))) {
+            pos++;
+        }
+        if (pos >= size) {
+            start = end = size;
+            return false;
+        }
+
+        start = pos;
+        valuesStart = -1;
+
+        if (startsWith(pos, PRINT)) {
+            while (pos < size && buffer.get(pos) != '\n') {
+                pos++;
+            }
+            end = pos;
+            return true;
+        }
+
+        boolean inString = false;
+        while (pos < size) {
+            byte b = buffer.get(pos++);
+            if (b == '\'') {
+                // '' toggles twice, so an escaped apostrophe keeps us inside the literal
+                inString = !inString;
+            } else if (b == ';' && !inString) {
+                break;
+            }
+        }
+
+        end = pos;
+        return true;
+    }
+
+    public boolean isPrint() {
+        return startsWith(start, PRINT);
+    }
+
+    public boolean isInsert() {
+        return startsWith(start, INSERT);
+    }
+
+    // true if the current statement inserts into the table, without decoding anything
+    public boolean isInsertInto(byte[] table) {
+        int pos = start + INSERT.length;
+        return isInsert() && pos + table.length < end && startsWith(pos, table) && buffer.get(pos + table.length) == ' ';
+    }
+
+    // table of the current insert, or null for any other statement
+    public String table() {
+        if (!isInsert()) {
+            return null;
+        }
+        int pos = start + INSERT.length;
+        int tableEnd = pos;
+        while (tableEnd < end && buffer.get(tableEnd) != ' ') {
+            tableEnd++;
+        }
+        return decode(pos, tableEnd, false);
+    }
+
+    // the whole statement as text, trailing whitespace removed
+    public String statement() {
+        return decode(start, trimEnd(end), false);
+    }
+
+    public int statementLength() {
+        return end - start;
+    }
+
+    // copies the raw bytes of the statement into 'target', returns the offset after them
+    public int copyStatement(byte[] target, int offset) {
+        buffer.get(start, target, offset, end - start);
+        return offset + end - start;
+    }
+
+    public String[] columns() {
+        int listStart = start + INSERT.length;
+        while (buffer.get(listStart) != '(') {
+            listStart++;
+        }
+        listStart++;
+        int listEnd = valuesStart() - VALUES.length;
+
+        // chunks are written table by table, so the last column list almost always matches
+        if (lastColumnBytes != null && lastColumnBytes.length == listEnd - listStart && startsWith(listStart, lastColumnBytes)) {
+            return lastColumns;
+        }
+
+        lastColumnBytes = new byte[listEnd - listStart];
+        buffer.get(listStart, lastColumnBytes);
+        lastColumns = new String(lastColumnBytes, StandardCharsets.US_ASCII).split(",\\s*");
+        return lastColumns;
+    }
+
+    // starts walking the values of the current insert
+    public void resetValues() {
+        valuePos = valuesStart();
+    }
+
+    // decodes the next value, false after the last one
+    public boolean nextValue() {
+        int pos = valuePos;
+        while (pos < end && (buffer.get(pos) == ' ' || buffer.get(pos) == ',')) {
+            pos++;
+        }
+        if (pos >= end || buffer.get(pos) == ')') {
+            valuePos = pos;
+            return false;
+        }
+
+        byte b = buffer.get(pos);
+        if (b == '\'') {
+            pos++;
+            textStart = pos;
+            textEscaped = false;
+            while (pos < end) {
+                if (buffer.get(pos) == '\'') {
+                    if (pos + 1 < end && buffer.get(pos + 1) == '\'') {
+                        textEscaped = true;
+                        pos += 2;
+                        continue;
+                    }
+                    break;
+                }
+                pos++;
+            }
+            textEnd = pos;
+            valuePos = pos + 1;
+            valueKind = STRING;
+            return true;
+        }
+
+        int literalEnd = pos;
+        while (literalEnd < end && buffer.get(literalEnd) != ',' && buffer.get(literalEnd) != ')') {
+            literalEnd++;
+        }
+        valuePos = literalEnd;
+        parseLiteral(pos, trimEnd(literalEnd));
+        return true;
+    }
+
+    public int valueKind() {
+        return valueKind;
+    }
+
+    public long longValue() {
+        return longValue;
+    }
+
+    public double doubleValue() {
+        return doubleValue;
+    }
+
+    public String stringValue() {
+        return decode(textStart, textEnd, textEscaped);
+    }
+
+    // current value boxed, for consumers that need objects
+    public Object value() {
+        switch (valueKind) {
+            case INT:
+                if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+                    return (int) longValue;
+                }
+                return longValue;
+            case DOUBLE:
+                return doubleValue;
+            case STRING:
+                return stringValue();
+            default:
+                return null;
+        }
+    }
+
+    // every value of the current insert
+    public Object[] values(int count) {
+        Object[] values = new Object[count];
+        resetValues();
+        int i = 0;
+        while (nextValue()) {
+            if (i == count) {
+                throw new IllegalArgumentException("More than " + count + " values in: " + statement());
+            }
+            values[i++] = value();
+        }
+        if (i != count) {
+            throw new IllegalArgumentException("Expected " + count + " values but found " + i + ": " + statement());
+        }
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private int valuesStart() {
+        if (valuesStart < 0) {
+            int pos = start + INSERT.length;
+            while (pos < end && !startsWith(pos, VALUES)) {
+                pos++;
+            }
+            if (pos >= end) {
+                throw new IllegalArgumentException("Unexpected insert shape: " + statement());
+            }
+            valuesStart = pos + VALUES.length;
+        }
+        return valuesStart;
+    }
+
+    private void parseLiteral(int from, int to) {
+        if (to - from == 4 && (buffer.get(from) == 'N' || buffer.get(from) == 'n')) {
+            valueKind = NULL;
+            return;
+        }
+
+        boolean negative = buffer.get(from) == '-';
+        long value = 0;
+        for (int pos = negative ? from + 1 : from; pos < to; pos++) {
+            byte b = buffer.get(pos);
+            if (b < '0' || b > '9') {
+                // rare (savePercentage), fine to allocate
+                doubleValue = Double.parseDouble(decode(from, to, false));
+                valueKind = DOUBLE;
+                return;
+            }
+            value = value * 10 + (b - '0');
+        }
+        longValue = negative ? -value : value;
+        valueKind = INT;
+    }
+
+    private String decode(int from, int to, boolean escaped) {
+        int length = to - from;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+
+        int n = 0;
+        boolean ascii = true;
+        for (int pos = from; pos < to; pos++) {
+            byte b = buffer.get(pos);
+            if (escaped && b == '\'' && pos + 1 < to && buffer.get(pos + 1) == '\'') {
+                pos++;
+            }
+            ascii &= b >= 0;
+            scratch[n++] = b;
+        }
+        return new String(scratch, 0, n, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    private boolean startsWith(int pos, byte[] prefix) {
+        if (pos + prefix.length > size) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(pos + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int trimEnd(int pos) {
+        while (pos > start && isSpace(buffer.get(pos - 1))) {
+            pos--;
+        }
+        return pos;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    static byte[] tableBytes(String table) {
+        return table.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // scans and decodes every chunk without a database, reports how fast the reader is
+    public static void parseOnly(int numChunks) {
+        long bytes = 0;
+        long statements = 0;
+        long values = 0;
+        int files = 0;
+        long start = System.nanoTime();
+
+        for (int i = 1; i <= numChunks; i++) {
+            String file_name = ParallelLoader.chunkName(i);
+            if (!Paths.get(Populator.PATH_TO_CHUNKS, file_name).toFile().exists()) {
+                System.out.printf("Skipping %s, file not found\n", file_name);
+                continue;
+            }
+
+            try (ChunkScanner scanner = chunk(file_name)) {
+                while (scanner.next()) {
+                    statements++;
+                    if (scanner.isInsert()) {
+                        scanner.resetValues();
+                        while (scanner.nextValue()) {
+                            if (scanner.valueKind() == STRING) {
+                                scanner.stringValue();
+                            }
+                            values++;
+                        }
+                    }
+                }
+                bytes += scanner.size();
+                files++;
+            } catch (IOException e) {
+                System.err.println("Error reading the SQL file: " + file_name);
+                e.printStackTrace();
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double mb = bytes / (1024.0 * 1024.0);
+        System.out.printf("Parsed %d chunks: %.1f MB, %,d statements, %,d values in %.3f seconds\n",
+                files, mb, statements, values, seconds);
+        if (seconds > 0) {
+            System.out.printf("Reader throughput: %.1f MB/s, %,.0f statements/sec\n", mb / seconds, statements / seconds);
+        }
+    }
+
+}
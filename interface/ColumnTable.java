@@ -0,0 +1,359 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * A table of the binary snapshot held in memory column by column, for LocalEngine.
+ *
+ * - int columns are int[], NULL marks a missing value
+ * - date and datetime columns are long[] of the digits yyyyMMddHHmmss, so a date compares
+ *   with a datetime the way the server compares them (a date is its midnight)
+ * - string columns are dictionary encoded: a code per row into the column's values
+ * Only the columns asked for are kept, the others are skipped while reading.
+ *
+ *   ColumnTable games = ColumnTable.read("games", "gameID", "homeTeamID")
+ *           .withTimes("dateTime").withTexts("season").load();
+ */
+public class ColumnTable {
+
+    static final int NULL = Integer.MIN_VALUE;
+    static final long NULL_TIME = Long.MIN_VALUE;
+
+    final String name;
+    int rows = 0;
+
+    private final Map<String, int[]> ints = new HashMap<>();
+    private final Map<String, long[]> times = new HashMap<>();
+    private final Map<String, Text> texts = new HashMap<>();
+
+    // what load() reads, column name -> kind
+    private final Map<String, Character> wanted = new HashMap<>();
+
+    private ColumnTable(String name) {
+        this.name = name;
+    }
+
+    // the table's int columns, the rest are added with withTimes() and withTexts()
+    public static ColumnTable read(String table, String... intColumns) {
+        ColumnTable columns = new ColumnTable(table);
+        for (String column : intColumns) {
+            columns.wanted.put(column.toLowerCase(), 'i');
+        }
+        return columns;
+    }
+
+    public ColumnTable withTimes(String... columns) {
+        for (String column : columns) {
+            wanted.put(column.toLowerCase(), 't');
+        }
+        return this;
+    }
+
+    public ColumnTable withTexts(String... columns) {
+        for (String column : columns) {
+            wanted.put(column.toLowerCase(), 's');
+        }
+        return this;
+    }
+
+    public ColumnTable load() throws IOException {
+        try (SnapshotReader reader = SnapshotReader.table(name)) {
+            String[] columns = reader.columns();
+            char[] kinds = new char[columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                kinds[c] = wanted.getOrDefault(columns[c].toLowerCase(), ' ');
+            }
+            for (String column : wanted.keySet()) {
+                if (!Arrays.stream(columns).anyMatch(column::equalsIgnoreCase)) {
+                    throw new IOException(String.format("The snapshot of %s has no column %s", name, column));
+                }
+            }
+
+            int capacity = 1024;
+            int[][] intData = new int[columns.length][];
+            long[][] timeData = new long[columns.length][];
+            Text[] textData = new Text[columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                if (kinds[c] == 'i') {
+                    intData[c] = new int[capacity];
+                } else if (kinds[c] == 't') {
+                    timeData[c] = new long[capacity];
+                } else if (kinds[c] == 's') {
+                    textData[c] = new Text(capacity);
+                }
+            }
+
+            while (reader.next()) {
+                if (rows == capacity) {
+                    capacity *= 2;
+                    for (int c = 0; c < columns.length; c++) {
+                        if (intData[c] != null) {
+                            intData[c] = Arrays.copyOf(intData[c], capacity);
+                        } else if (timeData[c] != null) {
+                            timeData[c] = Arrays.copyOf(timeData[c], capacity);
+                        }
+                    }
+                }
+
+                for (int c = 0; c < columns.length; c++) {
+                    if (kinds[c] == 'i') {
+                        intData[c][rows] = toInt(reader.value(c));
+                    } else if (kinds[c] == 't') {
+                        timeData[c][rows] = toTime(reader.value(c));
+                    } else if (kinds[c] == 's') {
+                        textData[c].add(rows, (String) reader.value(c));
+                    }
+                }
+                rows++;
+            }
+
+            for (int c = 0; c < columns.length; c++) {
+                String column = columns[c].toLowerCase();
+                if (intData[c] != null) {
+                    ints.put(column, Arrays.copyOf(intData[c], rows));
+                } else if (timeData[c] != null) {
+                    times.put(column, Arrays.copyOf(timeData[c], rows));
+                } else if (textData[c] != null) {
+                    textData[c].trim(rows);
+                    texts.put(column, textData[c]);
+                }
+            }
+        }
+        return this;
+    }
+
+    public int[] ints(String column) {
+        return column(ints, column);
+    }
+
+    public long[] times(String column) {
+        return column(times, column);
+    }
+
+    public Text text(String column) {
+        return column(texts, column);
+    }
+
+    // frees a column only needed while loading
+    public void drop(String column) {
+        ints.remove(column.toLowerCase());
+        times.remove(column.toLowerCase());
+        texts.remove(column.toLowerCase());
+    }
+
+    private <T> T column(Map<String, T> columns, String column) {
+        T values = columns.get(column.toLowerCase());
+        if (values == null) {
+            throw new IllegalArgumentException("Column " + column + " of " + name + " was not loaded");
+        }
+        return values;
+    }
+
+    private static int toInt(Object value) {
+        if (value == null) {
+            return NULL;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        return (int) Double.parseDouble(value.toString());
+    }
+
+    // '2016-10-19 23:00:00', '2016-10-19T23:00:00Z' or '2016-10-19' -> 20161019230000
+    static long toTime(Object value) {
+        if (value == null) {
+            return NULL_TIME;
+        }
+        String text = value.toString();
+        long time = 0;
+        int digits = 0;
+        for (int i = 0; i < text.length() && digits < 14; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                time = time * 10 + (c - '0');
+                digits++;
+            } else if (c == '.') {
+                break;
+            }
+        }
+        for (; digits < 14; digits++) {
+            time *= 10;
+        }
+        return time;
+    }
+
+    // yyyy-MM-dd, the way the driver returns a DATE
+    static String formatDate(long time) {
+        long date = time / 1000000;
+        return String.format("%04d-%02d-%02d", date / 10000, date / 100 % 100, date % 100);
+    }
+
+    /*
+     * A dictionary encoded string column. Codes are shared by equal strings, NULL is -1.
+     *
+     * fold() gives the code of the first value that is equal under the server's collation
+     * (case-insensitive, trailing spaces ignored), so comparing folded codes is comparing
+     * the strings the way the SQL does.
+     */
+    static class Text {
+        private int[] codes;
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> codeOf = new HashMap<>();
+        private final List<Integer> folded = new ArrayList<>();
+        private final Map<String, Integer> foldedOf = new HashMap<>();
+
+        Text(int capacity) {
+            codes = new int[capacity];
+        }
+
+        private void add(int row, String value) {
+            if (row == codes.length) {
+                codes = Arrays.copyOf(codes, codes.length * 2);
+            }
+            if (value == null) {
+                codes[row] = -1;
+                return;
+            }
+
+            Integer code = codeOf.get(value);
+            if (code == null) {
+                code = values.size();
+                values.add(value);
+                codeOf.put(value, code);
+                folded.add(foldedOf.computeIfAbsent(foldKey(value), key -> values.size() - 1));
+            }
+            codes[row] = code;
+        }
+
+        private void trim(int rows) {
+            codes = Arrays.copyOf(codes, rows);
+        }
+
+        String get(int row) {
+            return codes[row] < 0 ? null : values.get(codes[row]);
+        }
+
+        int code(int row) {
+            return codes[row];
+        }
+
+        // the row's folded code, -1 for NULL
+        int fold(int row) {
+            return codes[row] < 0 ? -1 : folded.get(codes[row]);
+        }
+
+        // code of exactly this string, -1 if no row has it
+        int codeOf(String value) {
+            return value == null ? -1 : codeOf.getOrDefault(value, -1);
+        }
+
+        // folded code of a literal or parameter, -1 if no row has it (or it is NULL)
+        int find(String value) {
+            if (value == null) {
+                return -1;
+            }
+            return foldedOf.getOrDefault(foldKey(value), -1);
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        String value(int code) {
+            return values.get(code);
+        }
+
+        private static String foldKey(String value) {
+            return value.toLowerCase(Locale.ROOT).stripTrailing();
+        }
+    }
+
+    /*
+     * Hash index of an int column: key -> the rows holding it, in row order. Keys are kept
+     * in an open addressing table, the rows of each key next to each other in one array.
+     */
+    static class IntIndex {
+        private final int[] keys;
+        private final int[] start;
+        private final int[] rows;
+        private final int mask;
+
+        IntIndex(int[] column) {
+            int capacity = Integer.highestOneBit(Math.max(2, column.length) * 2);
+            mask = capacity - 1;
+            keys = new int[capacity];
+            Arrays.fill(keys, NULL);
+            int[] counts = new int[capacity + 1];
+
+            for (int key : column) {
+                if (key != NULL) {
+                    counts[insert(key)]++;
+                }
+            }
+
+            start = new int[capacity + 1];
+            for (int s = 0; s < capacity; s++) {
+                start[s + 1] = start[s] + counts[s];
+            }
+
+            rows = new int[start[capacity]];
+            int[] next = Arrays.copyOf(start, capacity);
+            for (int row = 0; row < column.length; row++) {
+                if (column[row] != NULL) {
+                    rows[next[slot(column[row])]++] = row;
+                }
+            }
+        }
+
+        // slot of the key, -1 if no row has it
+        int slot(int key) {
+            if (key == NULL) {
+                return -1;
+            }
+            for (int s = hash(key); ; s = (s + 1) & mask) {
+                if (keys[s] == key) {
+                    return s;
+                }
+                if (keys[s] == NULL) {
+                    return -1;
+                }
+            }
+        }
+
+        int begin(int slot) {
+            return start[slot];
+        }
+
+        int end(int slot) {
+            return start[slot + 1];
+        }
+
+        int row(int i) {
+            return rows[i];
+        }
+
+        // the first row with the key (the only one for a primary key), -1 if none
+        int first(int key) {
+            int slot = slot(key);
+            return slot < 0 ? -1 : rows[start[slot]];
+        }
+
+        private int insert(int key) {
+            int s = hash(key);
+            while (keys[s] != NULL && keys[s] != key) {
+                s = (s + 1) & mask;
+            }
+            keys[s] = key;
+            return s;
+        }
+
+        private int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
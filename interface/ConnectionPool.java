@@ -0,0 +1,373 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Pool of connections shared by the HockeyDB commands, so queries can run side by side and
+ * a dropped connection is replaced instead of ending the session.
+ *
+ *   try (ConnectionPool.Lease lease = pool.borrow()) {
+ *       PreparedStatement pstmt = lease.prepare(sql);
+ *       ...
+ *   }
+ *
+ * - between min and max connections are open, borrow() waits for a free one when all max
+ *   are in use
+ * - a connection is validated when borrowed, a broken one is closed and another is tried
+ * - connections idle for longer than idleSeconds are closed, down to min
+ * - a lease held for longer than leakSeconds is reported once with where it was borrowed
+ * - each connection keeps its prepared statements, so the same sql is prepared once per
+ *   connection. Statements from prepare() belong to the connection and are not closed by
+ *   the caller.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    // seconds isValid may take before a connection counts as broken
+    private static final int VALIDATION_TIMEOUT = 2;
+    private static final long BORROW_TIMEOUT_SECONDS = 30;
+    private static final int STATEMENTS_PER_CONNECTION = 32;
+
+    private final ConnectionSource source;
+    private final int min;
+    private final int max;
+    private final long idleNanos;
+    private final long leakNanos;
+
+    // most recently returned first, so the extra connections of a busy moment go idle
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<Lease> leased = new HashSet<>();
+    private int open = 0;
+    private boolean closed = false;
+    private final Thread housekeeper;
+
+    public ConnectionPool(ConnectionSource source, int min, int max, int idleSeconds, int leakSeconds) {
+        this.source = source;
+        this.max = Math.max(1, max);
+        this.min = Math.max(0, Math.min(min, this.max));
+        this.idleNanos = TimeUnit.SECONDS.toNanos(idleSeconds);
+        this.leakNanos = TimeUnit.SECONDS.toNanos(leakSeconds);
+
+        housekeeper = new Thread(this::housekeeping, "connection-pool");
+        housekeeper.setDaemon(true);
+        housekeeper.start();
+    }
+
+    // opens connections until min are open
+    public void fill() throws SQLException {
+        while (true) {
+            synchronized (this) {
+                if (closed || open >= min) {
+                    return;
+                }
+                open++;
+            }
+
+            PooledConnection pooled = create();
+            synchronized (this) {
+                idle.addLast(pooled);
+                notifyAll();
+            }
+        }
+    }
+
+    public Lease borrow() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(BORROW_TIMEOUT_SECONDS);
+
+        while (true) {
+            PooledConnection pooled = null;
+            synchronized (this) {
+                while (!closed && idle.isEmpty() && open >= max) {
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) {
+                        throw new SQLException(String.format("No connection free after %d seconds, all %d are in use",
+                                BORROW_TIMEOUT_SECONDS, max));
+                    }
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a connection", e);
+                    }
+                }
+                if (closed) {
+                    throw new SQLException("The connection pool is closed");
+                }
+
+                if (!idle.isEmpty()) {
+                    pooled = idle.pollFirst();
+                } else {
+                    open++;
+                }
+            }
+
+            if (pooled == null) {
+                pooled = create();
+            } else if (!pooled.isValid()) {
+                discard(pooled);
+                continue;
+            }
+
+            Lease lease = new Lease(pooled);
+            synchronized (this) {
+                leased.add(lease);
+            }
+            return lease;
+        }
+    }
+
+    public synchronized int open() {
+        return open;
+    }
+
+    public synchronized int inUse() {
+        return leased.size();
+    }
+
+    @Override
+    public void close() {
+        List<PooledConnection> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            open -= idle.size();
+            idle.clear();
+            notifyAll();
+        }
+        housekeeper.interrupt();
+
+        // leased connections are closed when they come back
+        for (PooledConnection pooled : toClose) {
+            pooled.close();
+        }
+    }
+
+    // counted in 'open' by the caller, uncounted again if opening fails
+    private PooledConnection create() throws SQLException {
+        try {
+            return new PooledConnection(source.open());
+        } catch (SQLException | RuntimeException e) {
+            synchronized (this) {
+                open--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        synchronized (this) {
+            open--;
+            notifyAll();
+        }
+        pooled.close();
+    }
+
+    private void release(Lease lease) {
+        PooledConnection pooled = lease.pooled;
+        boolean reusable = pooled.reset();
+
+        synchronized (this) {
+            leased.remove(lease);
+            if (reusable && !closed) {
+                pooled.lastUsed = System.nanoTime();
+                idle.addFirst(pooled);
+                notifyAll();
+                return;
+            }
+        }
+        discard(pooled);
+    }
+
+    /* idle eviction, refilling to min and leak reports */
+
+    private void housekeeping() {
+        long period = Math.max(1000, TimeUnit.NANOSECONDS.toMillis(Math.min(idleNanos, leakNanos)) / 4);
+
+        while (true) {
+            try {
+                Thread.sleep(period);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+            }
+
+            evictIdle();
+            reportLeaks();
+            try {
+                fill();
+            } catch (SQLException e) {
+                // the next borrow tries again and reports the failure to its command
+            }
+        }
+    }
+
+    private void evictIdle() {
+        List<PooledConnection> evicted = new ArrayList<>();
+        long now = System.nanoTime();
+
+        synchronized (this) {
+            // the oldest idle connections are at the end
+            Iterator<PooledConnection> oldest = idle.descendingIterator();
+            while (oldest.hasNext() && open > min) {
+                PooledConnection pooled = oldest.next();
+                if (now - pooled.lastUsed < idleNanos) {
+                    break;
+                }
+                oldest.remove();
+                open--;
+                evicted.add(pooled);
+            }
+        }
+
+        for (PooledConnection pooled : evicted) {
+            pooled.close();
+        }
+    }
+
+    private void reportLeaks() {
+        List<Lease> leaks = new ArrayList<>();
+        long now = System.nanoTime();
+
+        synchronized (this) {
+            for (Lease lease : leased) {
+                if (!lease.reported && now - lease.borrowedAt > leakNanos) {
+                    lease.reported = true;
+                    leaks.add(lease);
+                }
+            }
+        }
+
+        for (Lease lease : leaks) {
+            System.err.printf("Possible connection leak: a connection has been in use for %d seconds\n",
+                    TimeUnit.NANOSECONDS.toSeconds(now - lease.borrowedAt));
+            lease.borrowedBy.printStackTrace();
+        }
+    }
+
+    // a borrowed connection, returned to the pool by close()
+    public class Lease implements AutoCloseable {
+        private final PooledConnection pooled;
+        private final long borrowedAt = System.nanoTime();
+        private final Throwable borrowedBy = new Throwable("Borrowed here");
+        private boolean reported = false;
+        private boolean returned = false;
+
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        public Connection connection() {
+            return pooled.connection;
+        }
+
+        // true if this connection has a statement for the sql already
+        public boolean isPrepared(String sql) {
+            return pooled.statements.containsKey(sql);
+        }
+
+        // the connection's statement for this sql, prepared on first use
+        public PreparedStatement prepare(String sql) throws SQLException {
+            return pooled.prepare(sql);
+        }
+
+        @Override
+        public void close() {
+            if (!returned) {
+                returned = true;
+                QueryJobs.untrack();
+                release(this);
+            }
+        }
+    }
+
+    private static class PooledConnection {
+        final Connection connection;
+        long lastUsed = System.nanoTime();
+
+        // least recently used statements are closed once there are too many
+        final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= STATEMENTS_PER_CONNECTION) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            } else {
+                statement.clearParameters();
+            }
+            return statement;
+        }
+
+        boolean isValid() {
+            try {
+                return connection.isValid(VALIDATION_TIMEOUT);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        // back to auto-commit with no open transaction, false if the connection is unusable
+        boolean reset() {
+            try {
+                if (connection.isClosed()) {
+                    return false;
+                }
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        void close() {
+            for (PreparedStatement statement : statements.values()) {
+                closeQuietly(statement);
+            }
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // closing a broken connection, nothing left to release
+            }
+        }
+
+        private static void closeQuietly(PreparedStatement statement) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // the statement dies with its connection anyway
+            }
+        }
+    }
+}
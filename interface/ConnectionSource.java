@@ -0,0 +1,9 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// hands out new connections to the same database as the main HockeyDB connection
+public interface ConnectionSource {
+
+    Connection open() throws SQLException;
+
+}
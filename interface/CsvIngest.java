@@ -0,0 +1,760 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/*
+ * Loads the database straight from the csv files in data/ ('REPOP --from-csv'), without
+ * writing the sql chunks first.
+ *
+ * Every table is built with the same rules as populate_data/writeSQL.py: games from the
+ * 2012 season on without all-star games, only Shot/Goal/Penalty plays, plays matched to the
+ * shift they happened in and only shifts with a play kept. Rows are streamed from the csv
+ * readers into multi-row prepared inserts, only what later tables join against is kept in
+ * memory (ids, game dates, the filtered plays).
+ *
+ * Team tenures (playsOn) come from one sort of all player-game rows by player and game
+ * date, then a single pass that starts a new tenure whenever the team changes.
+ */
+public class CsvIngest {
+
+    static final String PATH_TO_CSV = "../data/";
+
+    private static final String FIRST_SEASON = "2012";
+    private static final String FIRST_DAY = FIRST_SEASON + "-09-01";
+    private static final int PERIOD_DURATION = 1200;
+    private static final Set<String> VALID_PLAYS = new HashSet<>(Arrays.asList("Shot", "Goal", "Penalty"));
+
+    // the drop and create statements writeSQL.py puts in front of the inserts
+    private static final Path CREATE_TABLES = Paths.get(Populator.PATH_TO_CHUNKS, "..", "create_tables.sql");
+
+    private final Connection connection;
+    private final LoadOptions options;
+    private final String path;
+    private final LoadMetrics metrics = new LoadMetrics();
+    private final BatchTuner tuner;
+    private final PreparedInsertLoader loader;
+    private final Map<String, Double> phaseSeconds = new LinkedHashMap<>();
+    private final List<Table> tables = new ArrayList<>();
+
+    // what later tables are filtered and joined against
+    private final Set<Integer> teamIDs = new HashSet<>();
+    private final Map<String, Integer> venueIDs = new HashMap<>();
+    private final Map<String, Integer> cleanedVenueIDs = new HashMap<>();
+    private final Set<Integer> loadedVenues = new HashSet<>();
+    private final Map<Integer, String> gameDates = new HashMap<>();
+    private final Set<Integer> playerIDs = new HashSet<>();
+
+    public CsvIngest(Connection connection, LoadOptions options) {
+        this.connection = connection;
+        this.options = options;
+        this.path = options.csvPath.endsWith("/") ? options.csvPath : options.csvPath + "/";
+        this.tuner = options.createTuner(metrics);
+        this.loader = new PreparedInsertLoader(connection, tuner);
+    }
+
+    public void run() {
+        DeferredConstraints constraints = options.deferConstraints ? new DeferredConstraints() : null;
+        long start = System.nanoTime();
+        boolean loaded = false;
+
+        if (options.progress) {
+            metrics.startProgress();
+        }
+
+        try {
+            phase("create tables", () -> createTables(constraints));
+            connection.setAutoCommit(false);
+
+            phase("teams", this::loadTeams);
+            phase("venues and games", this::loadVenuesAndGames);
+            phase("players and tenures", this::loadPlayers);
+            phase("officials", this::loadOfficials);
+            phase("shifts and plays", this::loadPlays);
+            loaded = true;
+        } catch (IOException e) {
+            System.err.println("Error reading the csv files in " + path);
+            e.printStackTrace();
+        } catch (SQLException | RuntimeException e) {
+            // a bad value in a csv row too, the rows already sent are rolled back
+            System.err.println("Error loading the csv rows.");
+            e.printStackTrace();
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackFailed) {
+                // the connection is broken, the failure has been reported
+            }
+        } finally {
+            metrics.stopProgress();
+            try {
+                loader.close();
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                // statements go away with the connection anyway
+            }
+        }
+
+        if (loaded && constraints != null) {
+            constraints.build(connection, phaseSeconds);
+        }
+        if (loaded && !PlayerSeasonStats.rebuild(connection, phaseSeconds)) {
+            System.out.println("The summary table could not be built, top25, tgap and gps fail until the next REPOP.");
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long totalRows = 0;
+        System.out.println();
+        System.out.printf("%-15s%12s%12s\n", "Table", "Rows", "Skipped");
+        for (Table table : tables) {
+            totalRows += table.rows;
+            System.out.printf("%-15s%,12d%,12d\n", table.name, table.rows, table.skipped);
+        }
+        System.out.printf("\nLoaded %,d rows from the csv files in %.1f seconds (%,.0f rows/sec).\n",
+                totalRows, seconds, seconds > 0 ? totalRows / seconds : 0);
+        System.out.println("Skipped rows reference a player that is not in the players table.");
+
+        System.out.println();
+        for (Map.Entry<String, Double> phase : phaseSeconds.entrySet()) {
+            System.out.printf("%-20s%10.1f s\n", phase.getKey(), phase.getValue());
+        }
+        metrics.printLatencies();
+        metrics.writeJson(options.metricsFile, options, tuner, phaseSeconds);
+    }
+
+    private void phase(String name, Step step) throws IOException, SQLException {
+        long start = System.nanoTime();
+        step.run();
+        phaseSeconds.put(name, (System.nanoTime() - start) / 1e9);
+    }
+
+    private void createTables(DeferredConstraints constraints) throws IOException, SQLException {
+        connection.setAutoCommit(true);
+        PlayerSeasonStats.drop(connection);
+        try (Statement statement = connection.createStatement(); ChunkScanner scanner = new ChunkScanner(CREATE_TABLES)) {
+            Dialect dialect = Dialect.of(connection);
+            while (scanner.next()) {
+                String sql = scanner.statement();
+                sql = dialect.schema(constraints != null ? constraints.rewrite(sql) : sql);
+                if (sql != null) {
+                    statement.execute(sql);
+                }
+            }
+        }
+    }
+
+    /* teams: NY teams share the city New York, the Thrashers are gone */
+    private void loadTeams() throws IOException, SQLException {
+        Table teams = table("teams", "teamID", "city", "teamName");
+
+        try (CsvReader csv = new CsvReader(path + "team_info.csv")) {
+            int id = csv.column("team_id");
+            int city = csv.column("shortName");
+            int name = csv.column("teamName");
+
+            while (csv.next()) {
+                String teamName = csv.get(name);
+                if ("Thrashers".equals(teamName)) {
+                    continue;
+                }
+                String teamCity = csv.get(city);
+                if ("NY Rangers".equals(teamCity) || "NY Islanders".equals(teamCity)) {
+                    teamCity = "New York";
+                }
+                teamIDs.add(csv.getInt(id));
+                teams.add(csv.getInt(id), teamCity, teamName);
+            }
+        }
+        teams.finish();
+    }
+
+    /*
+     * venues are numbered in order of their first game over the whole file and belong to the
+     * home team of that game, games are kept from September of the first season on.
+     *
+     * writeSQL.py keys its venue lookup by the cleaned name (apostrophes doubled for the SQL
+     * string, double spaces removed) but looks games up by the name as game.csv has it, so
+     * games at a venue whose name has an apostrophe or a double space get no venueID in the
+     * chunks. The same lookup is done here, so gba answers the same however the database was
+     * loaded.
+     */
+    private void loadVenuesAndGames() throws IOException, SQLException {
+        Table venues = table("venues", "venueID", "venueName", "teamID");
+        List<Object[]> games = new ArrayList<>();
+
+        try (CsvReader csv = new CsvReader(path + "game.csv")) {
+            int gameID = csv.column("game_id");
+            int season = csv.column("season");
+            int type = csv.column("type");
+            int dateTime = csv.column("date_time_GMT");
+            int outcome = csv.column("outcome");
+            int home = csv.column("home_team_id");
+            int away = csv.column("away_team_id");
+            int venue = csv.column("venue");
+
+            while (csv.next()) {
+                String venueName = csv.get(venue);
+                Integer venueID = venueIDs.get(venueName);
+                if (venueID == null) {
+                    venueID = venueIDs.size() + 1;
+                    venueIDs.put(venueName, venueID);
+                    cleanedVenueIDs.put(venueName == null ? null : venueName.replace("'", "''").replace("  ", ""), venueID);
+
+                    // arenas of teams that are gone (Thrashers) are dropped
+                    Integer teamID = csv.getInt(home);
+                    if (teamID != null && teamIDs.contains(teamID)) {
+                        venues.add(venueID, venueName == null ? null : venueName.replace("  ", ""), teamID);
+                        loadedVenues.add(venueID);
+                    }
+                }
+
+                String date = csv.get(dateTime).replace("T", " ").replace("Z", "");
+                Integer id = csv.getInt(gameID);
+                if (id == null || !inTimeFrame(date) || "A".equals(csv.get(type)) || gameDates.containsKey(id)) {
+                    continue;
+                }
+
+                String seasonText = csv.get(season);
+                gameDates.put(id, date);
+                games.add(new Object[] { id, csv.get(type), date, csv.get(outcome),
+                        seasonText.substring(0, 4) + "-" + seasonText.substring(4),
+                        csv.getInt(home), csv.getInt(away), venueName });
+            }
+        }
+        venues.finish();
+
+        // resolved once every venue is known, as in python's dict the last venue with a cleaned name wins
+        for (Object[] game : games) {
+            Integer venueID = cleanedVenueIDs.get((String) game[7]);
+            game[7] = venueID != null && loadedVenues.contains(venueID) ? venueID : null;
+        }
+
+        // games reference venues, so they go in once every venue is known
+        Table gameTable = table("games", "gameID", "type", "dateTime", "outcome", "season", "homeTeamID", "awayTeamID", "venueID");
+        for (Object[] game : games) {
+            gameTable.add(game);
+        }
+        gameTable.finish();
+    }
+
+    private static boolean inTimeFrame(String date) {
+        String year = date.substring(0, 4);
+        return year.compareTo(FIRST_SEASON) > 0 || (year.equals(FIRST_SEASON) && date.substring(5, 7).compareTo("09") >= 0);
+    }
+
+    /*
+     * players who played a game in the time frame, their games (playsIn) and team tenures
+     * (playsOn). The stats files are read twice: once for the tenures, which decide which
+     * players are loaded, and once to stream playsIn after the players are in.
+     */
+    private void loadPlayers() throws IOException, SQLException {
+        List<Object[]> tenures = tenures();
+        Set<Integer> tenurePlayers = new HashSet<>();
+        for (Object[] tenure : tenures) {
+            tenurePlayers.add((Integer) tenure[1]);
+        }
+
+        Table players = table("players", "playerID", "firstName", "lastName", "nationality", "birthDate", "height", "weight", "playerType");
+        List<Object[]> rows = new ArrayList<>();
+        long weightSum = 0;
+        int weightCount = 0;
+
+        try (CsvReader csv = new CsvReader(path + "player_info.csv")) {
+            int id = csv.column("player_id");
+            int first = csv.column("firstName");
+            int last = csv.column("lastName");
+            int nationality = csv.column("nationality");
+            int birthDate = csv.column("birthDate");
+            int height = csv.column("height");
+            int weight = csv.column("weight");
+            int position = csv.column("primaryPosition");
+
+            while (csv.next()) {
+                Double playerWeight = csv.getDouble(weight);
+                if (playerWeight != null) {
+                    weightSum += playerWeight;
+                    weightCount++;
+                }
+                rows.add(new Object[] { csv.getInt(id), csv.get(first), csv.get(last), csv.get(nationality),
+                        csv.get(birthDate), csv.get(height), playerWeight, csv.get(position) });
+            }
+        }
+
+        // missing weight is the mean weight, missing height 6' 1", missing nationality CAN
+        double meanWeight = weightCount > 0 ? (double) weightSum / weightCount : 0;
+        for (Object[] row : rows) {
+            Integer playerID = (Integer) row[0];
+            if (row[5] == null) {
+                row[5] = "6' 1\"";
+            }
+            if (row[3] == null) {
+                row[3] = "CAN";
+            }
+            row[6] = (int) (row[6] == null ? meanWeight : (Double) row[6]);
+
+            if (Arrays.asList(row).contains(null) || !tenurePlayers.contains(playerID) || playerIDs.contains(playerID)) {
+                continue;
+            }
+
+            row[7] = row[7].equals("G") ? "Goalie" : "Skater";
+            playerIDs.add(playerID);
+            players.add(row);
+        }
+        players.finish();
+
+        loadPlaysIn();
+
+        Table playsOn = table("playsOn", "teamID", "playerID", "startDate", "endDate");
+        for (Object[] tenure : tenures) {
+            if (playerIDs.contains(tenure[1])) {
+                playsOn.add(tenure);
+            } else {
+                playsOn.skipped++;
+            }
+        }
+        playsOn.finish();
+    }
+
+    // one sort of every player-game row in the time frame, then one pass per player
+    private List<Object[]> tenures() throws IOException {
+        IntList players = new IntList();
+        IntList games = new IntList();
+        IntList teams = new IntList();
+
+        for (String file : new String[] { "game_skater_stats.csv", "game_goalie_stats.csv" }) {
+            try (CsvReader csv = new CsvReader(path + file)) {
+                int gameID = csv.column("game_id");
+                int playerID = csv.column("player_id");
+                int teamID = csv.column("team_id");
+
+                while (csv.next()) {
+                    Integer game = csv.getInt(gameID);
+                    Integer player = csv.getInt(playerID);
+                    Integer team = csv.getInt(teamID);
+                    // a row without its player or team says nothing about a tenure
+                    if (gameDates.containsKey(game) && player != null && team != null) {
+                        players.add(player);
+                        games.add(game);
+                        teams.add(team);
+                    }
+                }
+            }
+        }
+
+        // by player, then game date, rows of the same game keep their file order
+        Integer[] order = new Integer[players.size];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byPlayer = Integer.compare(players.values[a], players.values[b]);
+            if (byPlayer != 0) {
+                return byPlayer;
+            }
+            return gameDates.get(games.values[a]).compareTo(gameDates.get(games.values[b]));
+        });
+
+        List<Object[]> tenures = new ArrayList<>();
+        Object[] current = null;
+        for (int i : order) {
+            int player = players.values[i];
+            int team = teams.values[i];
+
+            if (current == null || !current[1].equals(player)) {
+                // a player's first tenure starts with the first season
+                current = new Object[] { team, player, FIRST_DAY, null };
+                tenures.add(current);
+            } else if (!current[0].equals(team)) {
+                String changed = gameDates.get(games.values[i]).substring(0, 10);
+                current[3] = changed;
+                current = new Object[] { team, player, changed, null };
+                tenures.add(current);
+            }
+        }
+        return tenures;
+    }
+
+    // skater and goalie rows of the same player and game become one playsIn row
+    private void loadPlaysIn() throws IOException, SQLException {
+        Map<Long, Double> savePercentages = new LinkedHashMap<>();
+        try (CsvReader csv = new CsvReader(path + "game_goalie_stats.csv")) {
+            int gameID = csv.column("game_id");
+            int playerID = csv.column("player_id");
+            int savePercentage = csv.column("savePercentage");
+
+            while (csv.next()) {
+                Integer game = csv.getInt(gameID);
+                Integer player = csv.getInt(playerID);
+                if (!gameDates.containsKey(game) || player == null) {
+                    continue;
+                }
+                long key = gamePlayer(game, player);
+                if (!savePercentages.containsKey(key)) {
+                    savePercentages.put(key, csv.getDouble(savePercentage));
+                }
+            }
+        }
+
+        Table playsIn = table("playsIn", "gameID", "playerID", "plusMinus", "savePercentage");
+        Set<Long> written = new HashSet<>();
+
+        try (CsvReader csv = new CsvReader(path + "game_skater_stats.csv")) {
+            int gameID = csv.column("game_id");
+            int playerID = csv.column("player_id");
+            int plusMinus = csv.column("plusMinus");
+
+            while (csv.next()) {
+                Integer game = csv.getInt(gameID);
+                Integer player = csv.getInt(playerID);
+                if (!gameDates.containsKey(game) || player == null) {
+                    continue;
+                }
+                long key = gamePlayer(game, player);
+                if (!written.add(key)) {
+                    continue;
+                }
+                if (!playerIDs.contains(player)) {
+                    playsIn.skipped++;
+                    continue;
+                }
+                playsIn.add(game, player, csv.getInt(plusMinus), savePercentages.remove(key));
+            }
+        }
+
+        // goalies without a skater row
+        for (Map.Entry<Long, Double> goalie : savePercentages.entrySet()) {
+            if (!written.add(goalie.getKey())) {
+                continue;
+            }
+            int game = (int) (goalie.getKey() >>> 32);
+            int player = (int) (long) goalie.getKey();
+            if (!playerIDs.contains(player)) {
+                playsIn.skipped++;
+                continue;
+            }
+            playsIn.add(game, player, null, goalie.getValue());
+        }
+        playsIn.finish();
+    }
+
+    private static long gamePlayer(int gameID, int playerID) {
+        return ((long) gameID << 32) | (playerID & 0xFFFFFFFFL);
+    }
+
+    /* officials are numbered by first appearance, officiatedBy only for games in the time frame */
+    private void loadOfficials() throws IOException, SQLException {
+        Map<String, Integer> officialIDs = new HashMap<>();
+        List<Object[]> officiated = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        Table officials = table("officials", "officialID", "officialName");
+
+        try (CsvReader csv = new CsvReader(path + "game_officials.csv")) {
+            int gameID = csv.column("game_id");
+            int name = csv.column("official_name");
+            int type = csv.column("official_type");
+
+            while (csv.next()) {
+                String officialName = csv.get(name);
+                Integer officialID = officialIDs.get(officialName);
+                if (officialID == null) {
+                    officialID = officialIDs.size() + 1;
+                    officialIDs.put(officialName, officialID);
+                    officials.add(officialID, officialName);
+                }
+
+                Integer game = csv.getInt(gameID);
+                if (gameDates.containsKey(game) && seen.add(gamePlayer(game, officialID))) {
+                    officiated.add(new Object[] { game, officialID, csv.get(type) });
+                }
+            }
+        }
+        officials.finish();
+
+        Table officiatedBy = table("officiatedBy", "gameID", "officialID", "officialType");
+        for (Object[] row : officiated) {
+            officiatedBy.add(row);
+        }
+        officiatedBy.finish();
+    }
+
+    /*
+     * plays are matched to the shift of the player they happened in (same game and period,
+     * periodTime between the shift's start and end), only shifts with a play are loaded
+     */
+    private void loadPlays() throws IOException, SQLException {
+        Map<String, Play> plays = new LinkedHashMap<>();
+
+        try (CsvReader csv = new CsvReader(path + "game_plays.csv")) {
+            int playID = csv.column("play_id");
+            int gameID = csv.column("game_id");
+            int event = csv.column("event");
+            int secondaryType = csv.column("secondaryType");
+            int period = csv.column("period");
+            int periodType = csv.column("periodType");
+            int periodTime = csv.column("periodTime");
+
+            while (csv.next()) {
+                Integer game = csv.getInt(gameID);
+                String playType = csv.get(event);
+                Integer time = csv.getInt(periodTime);
+                if (!VALID_PLAYS.contains(playType) || !gameDates.containsKey(game) || time == null) {
+                    continue;
+                }
+                plays.putIfAbsent(csv.get(playID), new Play(csv.get(playID), game, csv.getInt(period), csv.get(periodType),
+                        time, playType, csv.get(secondaryType)));
+            }
+        }
+
+        // who made each play, the goalie it was against and the assists
+        List<String[]> assists = new ArrayList<>();
+        try (CsvReader csv = new CsvReader(path + "game_plays_players.csv")) {
+            int playID = csv.column("play_id");
+            int playerID = csv.column("player_id");
+            int playerType = csv.column("playerType");
+
+            while (csv.next()) {
+                Play play = plays.get(csv.get(playID));
+                if (play == null) {
+                    continue;
+                }
+                String type = csv.get(playerType);
+                if ("Assist".equals(type)) {
+                    assists.add(new String[] { play.playID, csv.get(playerID) });
+                } else if ("Goalie".equals(type)) {
+                    if (play.goalieID == null) {
+                        play.goalieID = csv.getInt(playerID);
+                    }
+                } else if ("PenaltyOn".equals(type) || "Scorer".equals(type) || "Shooter".equals(type)) {
+                    play.addPlayer(csv.getInt(playerID));
+                }
+            }
+        }
+
+        // (game, player, period) -> plays that shifts of that player in that period can match
+        Map<Long, List<Play>> byShiftKey = new HashMap<>();
+        for (Play play : plays.values()) {
+            for (int player : play.players) {
+                byShiftKey.computeIfAbsent(shiftKey(play.gameID, player, play.periodNumber), key -> new ArrayList<>()).add(play);
+            }
+        }
+
+        // shift ids count every usable shift in file order, the first shift that matches wins
+        TreeMap<Integer, Object[]> usedShifts = new TreeMap<>();
+        try (CsvReader csv = new CsvReader(path + "game_shifts.csv")) {
+            int gameID = csv.column("game_id");
+            int playerID = csv.column("player_id");
+            int shiftStart = csv.column("shift_start");
+            int shiftEnd = csv.column("shift_end");
+            int shiftID = 0;
+
+            while (csv.next()) {
+                Integer game = csv.getInt(gameID);
+                Integer player = csv.getInt(playerID);
+                Integer startTime = csv.getInt(shiftStart);
+                Integer endTime = csv.getInt(shiftEnd);
+                if (!gameDates.containsKey(game) || player == null || startTime == null || endTime == null) {
+                    continue;
+                }
+                shiftID++;
+
+                int periodNumber = startTime / PERIOD_DURATION + 1;
+                int start = startTime % PERIOD_DURATION;
+                int end = endTime % PERIOD_DURATION;
+                List<Play> candidates = byShiftKey.get(shiftKey(game, player, periodNumber));
+                if (candidates == null) {
+                    continue;
+                }
+
+                for (Play play : candidates) {
+                    if (play.periodTime >= start && play.periodTime <= end && play.matchShift(player, shiftID)) {
+                        usedShifts.putIfAbsent(shiftID, new Object[] { shiftID, player, game, periodNumber, start, end });
+                    }
+                }
+            }
+        }
+
+        Table shifts = table("shifts", "shiftID", "playerID", "gameID", "periodNumber", "shiftStart", "shiftEnd");
+        Table playTable = table("plays", "playID", "playerID", "gameID", "shiftID", "periodNumber", "periodType",
+                "periodTime", "playType", "secondaryType", "goalieID");
+        Set<String> kept = new HashSet<>();
+
+        // only shifts of plays that are loaded, which needs the players table
+        List<Object[]> playRows = new ArrayList<>();
+        Set<Integer> keptShifts = new HashSet<>();
+        for (Play play : plays.values()) {
+            int chosen = play.chosen();
+            if (chosen < 0) {
+                continue;
+            }
+            if (!playerIDs.contains(play.players[chosen])) {
+                playTable.skipped++;
+                continue;
+            }
+            Integer goalie = play.goalieID != null && playerIDs.contains(play.goalieID) ? play.goalieID : null;
+            playRows.add(new Object[] { play.playID, play.players[chosen], play.gameID, play.shifts[chosen], play.periodNumber,
+                    play.periodType, play.periodTime, play.playType, play.secondaryType, goalie });
+            keptShifts.add(play.shifts[chosen]);
+            kept.add(play.playID);
+        }
+
+        for (Object[] shift : usedShifts.values()) {
+            if (keptShifts.contains(shift[0])) {
+                shifts.add(shift);
+            }
+        }
+        shifts.finish();
+
+        for (Object[] row : playRows) {
+            playTable.add(row);
+        }
+        playTable.finish();
+
+        Table assistTable = table("assists", "playID", "playerID");
+        Set<String> seen = new HashSet<>();
+        for (String[] assist : assists) {
+            if (!kept.contains(assist[0]) || assist[1] == null || !seen.add(assist[0] + " " + assist[1])) {
+                continue;
+            }
+            int player = (int) Double.parseDouble(assist[1]);
+            if (playerIDs.contains(player)) {
+                assistTable.add(assist[0], player);
+            } else {
+                assistTable.skipped++;
+            }
+        }
+        assistTable.finish();
+    }
+
+    // player ids have 7 digits, so game, player and period fit in one long
+    private static long shiftKey(int gameID, int playerID, int periodNumber) {
+        return ((long) gameID << 32) | ((long) playerID << 8) | (periodNumber & 0xFF);
+    }
+
+    private Table table(String name, String... columns) {
+        Table table = new Table(name, columns);
+        tables.add(table);
+        return table;
+    }
+
+    private interface Step {
+        void run() throws IOException, SQLException;
+    }
+
+    // rows of one table on their way into the database, committed every commit interval
+    private class Table {
+        final String name;
+        final String[] columns;
+        final long start = System.nanoTime();
+        long rows = 0;
+        long skipped = 0;
+        int sinceCommit = 0;
+
+        Table(String name, String[] columns) {
+            this.name = name;
+            this.columns = columns;
+        }
+
+        void add(Object... values) throws SQLException {
+            loader.add(name, columns, values);
+            rows++;
+            if (++sinceCommit >= tuner.commitInterval()) {
+                loader.flush(name);
+                commit();
+            }
+        }
+
+        void finish() throws SQLException {
+            loader.flush(name);
+            commit();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            metrics.println(String.format("Table %s done: %,d rows in %.1f seconds (%,.0f rows/sec)",
+                    name, rows, seconds, seconds > 0 ? rows / seconds : 0));
+        }
+
+        private void commit() throws SQLException {
+            long commitStart = System.nanoTime();
+            connection.commit();
+            tuner.recordCommit(name, System.nanoTime() - commitStart);
+            sinceCommit = 0;
+        }
+    }
+
+    // a Shot, Goal or Penalty with the players that could have made it
+    private static class Play {
+        final String playID;
+        final int gameID;
+        final int periodNumber;
+        final String periodType;
+        final int periodTime;
+        final String playType;
+        final String secondaryType;
+        Integer goalieID;
+
+        // candidate players in file order and the first shift matched for each, 0 if none
+        int[] players = new int[0];
+        int[] shifts = new int[0];
+
+        Play(String playID, int gameID, int periodNumber, String periodType, int periodTime, String playType, String secondaryType) {
+            this.playID = playID;
+            this.gameID = gameID;
+            this.periodNumber = periodNumber;
+            this.periodType = periodType;
+            this.periodTime = periodTime;
+            this.playType = playType;
+            this.secondaryType = secondaryType;
+        }
+
+        void addPlayer(Integer playerID) {
+            if (playerID == null) {
+                return;
+            }
+            players = Arrays.copyOf(players, players.length + 1);
+            shifts = Arrays.copyOf(shifts, shifts.length + 1);
+            players[players.length - 1] = playerID;
+        }
+
+        // true if this is the first shift matched for the player
+        boolean matchShift(int playerID, int shiftID) {
+            for (int i = 0; i < players.length; i++) {
+                if (players[i] == playerID && shifts[i] == 0) {
+                    shifts[i] = shiftID;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // first candidate with a shift, -1 if the play happened in no known shift
+        int chosen() {
+            for (int i = 0; i < players.length; i++) {
+                if (shifts[i] != 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    // growable int array, the player-game rows are too many to box
+    private static class IntList {
+        int[] values = new int[1024];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
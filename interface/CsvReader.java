@@ -0,0 +1,170 @@
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Streams the rows of a csv file with a header line.
+ *
+ * Fields may be quoted, a quoted field can hold commas, newlines and "" for a quote. A quote
+ * inside an unquoted field is kept as it is (heights like 6' 1").
+ * Missing values are recognised the same way pandas.read_csv does by default, so the
+ * java loader drops and fills exactly the values writeSQL.py treats as missing.
+ */
+public class CsvReader implements Closeable {
+
+    // pandas' default na_values
+    private static final Set<String> MISSING = new HashSet<>(Arrays.asList(
+            "", "#N/A", "#N/A N/A", "#NA", "-1.#IND", "-1.#QNAN", "-NaN", "-nan", "1.#IND", "1.#QNAN",
+            "<NA>", "N/A", "NA", "NULL", "NaN", "None", "n/a", "nan", "null"));
+
+    private final String file_name;
+    private final Reader reader;
+    private final char[] buffer = new char[1 << 16];
+    private int length = 0;
+    private int pos = 0;
+
+    private final Map<String, Integer> header = new HashMap<>();
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+    private long rows = 0;
+
+    public CsvReader(String file_name) throws IOException {
+        this.file_name = file_name;
+        this.reader = new InputStreamReader(new FileInputStream(file_name), StandardCharsets.UTF_8);
+
+        if (!readRecord()) {
+            reader.close();
+            throw new IOException("Empty csv file: " + file_name);
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            // a byte order mark would stick to the first column name
+            header.put(fields.get(i).replace("\uFEFF", "").trim(), i);
+        }
+    }
+
+    // moves to the next row, false at the end of the file
+    public boolean next() throws IOException {
+        while (readRecord()) {
+            // blank lines are not rows
+            if (fields.size() > 1 || !fields.get(0).isEmpty()) {
+                rows++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    public int column(String name) throws IOException {
+        Integer index = header.get(name);
+        if (index == null) {
+            throw new IOException(String.format("Column '%s' not found in %s", name, file_name));
+        }
+        return index;
+    }
+
+    // raw text of a column, null when missing
+    public String get(int column) {
+        String value = column < fields.size() ? fields.get(column) : "";
+        return MISSING.contains(value) ? null : value;
+    }
+
+    // whole numbers may be written as 8471214.0 when the column had missing values
+    public Integer getInt(int column) {
+        String value = get(column);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return (int) Double.parseDouble(value);
+        }
+    }
+
+    public Double getDouble(int column) {
+        String value = get(column);
+        return value == null ? null : Double.parseDouble(value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // reads one record into 'fields', false at the end of the file
+    private boolean readRecord() throws IOException {
+        fields.clear();
+        field.setLength(0);
+        boolean quoted = false;
+        boolean any = false;
+
+        while (true) {
+            if (pos == length) {
+                length = reader.read(buffer);
+                pos = 0;
+                if (length <= 0) {
+                    length = 0;
+                    if (!any) {
+                        return false;
+                    }
+                    fields.add(field.toString());
+                    return true;
+                }
+            }
+
+            char c = buffer[pos++];
+            any = true;
+
+            if (quoted) {
+                if (c == '"') {
+                    if (peek() == '"') {
+                        pos++;
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                // only a quote at the start of a field opens a quoted field, like python's csv
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                fields.add(field.toString());
+                return true;
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+    }
+
+    // next character without consuming it, refilling the buffer if needed
+    private int peek() throws IOException {
+        if (pos == length) {
+            length = reader.read(buffer);
+            pos = 0;
+            if (length <= 0) {
+                length = 0;
+                return -1;
+            }
+        }
+        return buffer[pos];
+    }
+}
@@ -0,0 +1,154 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Loads into bare heaps and adds the keys afterwards ('REPOP --defer-constraints').
+ *
+ * The CREATE TABLE statements from the chunks are rewritten without their PRIMARY KEY and
+ * FOREIGN KEY clauses (key columns become NOT NULL so the key can be added later). Once all
+ * rows are in, every primary key is built in one pass over its table and every foreign key
+ * is added WITH CHECK, which validates the existing rows once instead of on every insert.
+ * CHECK constraints are cheap and stay on the tables.
+ */
+public class DeferredConstraints {
+
+    private static final Pattern CREATE_TABLE = Pattern.compile("^CREATE TABLE\\s+(\\w+)\\s*\\((.*)\\)\\s*;?$", Pattern.DOTALL);
+    private static final Pattern INLINE_KEY = Pattern.compile("(?i)\\s+PRIMARY KEY\\b");
+    private static final Pattern TABLE_KEY = Pattern.compile("(?i)^PRIMARY KEY\\s*\\((.*)\\)$", Pattern.DOTALL);
+    private static final Pattern FOREIGN_KEY = Pattern.compile("(?i)^FOREIGN KEY\\s*\\(.*", Pattern.DOTALL);
+
+    // table -> primary key columns, in creation order (which is foreign key order)
+    private final Map<String, String> primaryKeys = new LinkedHashMap<>();
+    private final List<String> foreignKeys = new ArrayList<>();
+
+    // CREATE TABLE without keys, any other statement is returned unchanged
+    public String rewrite(String statement) {
+        Matcher create = CREATE_TABLE.matcher(statement.trim());
+        if (!create.matches()) {
+            return statement;
+        }
+
+        String table = create.group(1);
+        List<String> items = splitItems(create.group(2));
+        List<String> keyColumns = new ArrayList<>();
+        List<String> kept = new ArrayList<>();
+        int fkCount = 0;
+
+        for (String item : items) {
+            Matcher tableKey = TABLE_KEY.matcher(item);
+
+            if (tableKey.matches()) {
+                for (String column : tableKey.group(1).split(",")) {
+                    keyColumns.add(column.trim());
+                }
+            } else if (FOREIGN_KEY.matcher(item).matches()) {
+                fkCount++;
+                foreignKeys.add(String.format("IF OBJECT_ID('fk_%s_%d') IS NULL ALTER TABLE %s WITH CHECK ADD CONSTRAINT fk_%s_%d %s;",
+                        table, fkCount, table, table, fkCount, item.replaceAll("\\s+", " ")));
+            } else if (INLINE_KEY.matcher(item).find()) {
+                keyColumns.add(item.split("\\s+")[0]);
+                kept.add(INLINE_KEY.matcher(item).replaceFirst(" NOT NULL"));
+            } else {
+                kept.add(item);
+            }
+        }
+
+        // key columns of a composite key have to be NOT NULL before the key is added
+        for (int i = 0; i < kept.size(); i++) {
+            String item = kept.get(i);
+            String column = item.split("\\s+")[0];
+            if (keyColumns.contains(column) && !item.toUpperCase().contains("NOT NULL")) {
+                kept.set(i, item + " NOT NULL");
+            }
+        }
+
+        if (!keyColumns.isEmpty()) {
+            primaryKeys.put(table, String.join(", ", keyColumns));
+        }
+
+        return "CREATE TABLE " + table + " (\n  " + String.join(",\n  ", kept) + "\n);";
+    }
+
+    public int size() {
+        return primaryKeys.size() + foreignKeys.size();
+    }
+
+    // builds every primary key, then adds every foreign key, timing both phases. Keys that
+    // already exist are skipped, so a resumed REPOP can finish a build that failed halfway
+    public boolean build(Connection connection, Map<String, Double> phaseSeconds) {
+        boolean ok = true;
+
+        try (Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(true);
+
+            long start = System.nanoTime();
+            for (Map.Entry<String, String> key : primaryKeys.entrySet()) {
+                ok &= run(statement, String.format("IF OBJECT_ID('pk_%s') IS NULL ALTER TABLE %s ADD CONSTRAINT pk_%s PRIMARY KEY (%s);",
+                        key.getKey(), key.getKey(), key.getKey(), key.getValue()));
+            }
+            phaseSeconds.put("primary keys", (System.nanoTime() - start) / 1e9);
+            System.out.printf("Built %d primary keys in %.1f seconds\n", primaryKeys.size(), (System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            for (String foreignKey : foreignKeys) {
+                ok &= run(statement, foreignKey);
+            }
+            phaseSeconds.put("foreign keys", (System.nanoTime() - start) / 1e9);
+            System.out.printf("Validated %d foreign keys in %.1f seconds\n", foreignKeys.size(), (System.nanoTime() - start) / 1e9);
+        } catch (SQLException e) {
+            System.err.println("Error building the constraints.");
+            e.printStackTrace();
+            return false;
+        }
+
+        return ok;
+    }
+
+    private static boolean run(Statement statement, String sql) {
+        try {
+            long start = System.nanoTime();
+            statement.execute(sql);
+            System.out.printf("  %s (%.1f s)\n", sql, (System.nanoTime() - start) / 1e9);
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error running: " + sql);
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // splits a table body on the commas that are not inside parentheses
+    private static List<String> splitItems(String body) {
+        List<String> items = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                addItem(items, body.substring(start, i));
+                start = i + 1;
+            }
+        }
+        addItem(items, body.substring(start));
+        return items;
+    }
+
+    private static void addItem(List<String> items, String item) {
+        item = item.trim();
+        if (!item.isEmpty()) {
+            items.add(item);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Applies a delta set to the loaded database without a full REPOP ('INGEST [path]').
+ *
+ * A delta is one or more .sql files of INSERT statements in the same format as the chunks
+ * (e.g. writeSQL.py run over one night of games), holding the new games, playsIn, shifts,
+ * plays, assists, officiatedBy and tenure (playsOn) rows plus any new teams, venues, players
+ * or officials. The rows of each table are staged in a temp table and merged into the real
+ * table by primary key in foreign key order: new rows are inserted, existing rows updated.
+ *
+ * A new playsOn row for a player is a team change, so the player's previous open tenure
+ * gets the new startDate as its endDate, the same rule writeSQL.py uses.
+ *
+ * The playerSeasonStats rows of the seasons the delta touches are recomputed at the end.
+ *
+ * Everything runs in one transaction, a failed delta leaves the database unchanged.
+ */
+public class DeltaIngest {
+
+    static final String PATH_TO_DELTA = "../populate_data/delta/";
+
+    // sql server allows at most 1000 rows per VALUES list and 2100 parameters per statement
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+    private static final int MAX_PARAMETERS = 2000;
+
+    private static final String CLOSE_TENURES = """
+            UPDATE p SET endDate = (
+                    SELECT MIN(n.startDate) FROM playsOn n
+                    WHERE n.playerID = p.playerID AND n.startDate > p.startDate)
+            FROM playsOn p
+            WHERE p.endDate IS NULL
+              AND p.playerID IN (SELECT playerID FROM #delta_playsOn)
+              AND EXISTS (SELECT 1 FROM playsOn n WHERE n.playerID = p.playerID AND n.startDate > p.startDate);
+            """;
+
+    private final Connection connection;
+
+    // table -> rows of the delta, with the column list they were written with
+    private final Map<String, String[]> columns = new LinkedHashMap<>();
+    private final Map<String, List<Object[]>> rows = new LinkedHashMap<>();
+
+    public DeltaIngest(Connection connection) {
+        this.connection = connection;
+    }
+
+    // a .sql file, or a directory whose .sql files are read in name order
+    public void read(Path path) throws IOException {
+        File[] files;
+        if (path.toFile().isDirectory()) {
+            files = path.toFile().listFiles((dir, name) -> name.endsWith(".sql"));
+            if (files == null) {
+                throw new IOException("Cannot list " + path);
+            }
+            Arrays.sort(files);
+        } else {
+            files = new File[] { path.toFile() };
+        }
+
+        for (File file : files) {
+            readFile(file.toPath());
+        }
+    }
+
+    private void readFile(Path file) throws IOException {
+        try (ChunkScanner scanner = new ChunkScanner(file)) {
+            while (scanner.next()) {
+                if (!scanner.isInsert()) {
+                    if (!scanner.isPrint() && !scanner.statement().toUpperCase().startsWith("SET ")) {
+                        System.out.printf("Ignoring '%s' in %s, a delta only holds inserts\n", scanner.statement(), file.getFileName());
+                    }
+                    continue;
+                }
+
+                String table = scanner.table();
+                String[] tableColumns = scanner.columns();
+                String[] known = columns.get(table);
+                if (known == null) {
+                    columns.put(table, tableColumns);
+                    rows.put(table, new ArrayList<>());
+                } else if (!Arrays.equals(known, tableColumns)) {
+                    throw new IllegalArgumentException("Inserts into " + table + " use different column lists in " + file.getFileName());
+                }
+                rows.get(table).add(scanner.values(tableColumns.length));
+            }
+        }
+    }
+
+    public int tables() {
+        return rows.size();
+    }
+
+    // merges every table of the delta in foreign key order, false if it was rolled back
+    public boolean apply() {
+        long start = System.nanoTime();
+
+        for (String table : rows.keySet()) {
+            if (!isKnownTable(table)) {
+                System.out.printf("Sorry, the delta inserts into unknown table '%s'\n", table);
+                return false;
+            }
+        }
+
+        try {
+            connection.setAutoCommit(false);
+            System.out.printf("%-15s%12s%12s%12s\n", "Table", "Rows", "Inserted", "Updated");
+
+            for (String[] group : ParallelLoader.TABLE_GROUPS) {
+                for (String table : group) {
+                    if (rows.containsKey(table)) {
+                        mergeTable(table);
+                    }
+                }
+            }
+
+            refreshSeasonStats();
+            dropStaging();
+            connection.commit();
+        } catch (SQLException e) {
+            System.err.println("Error applying the delta, no changes were made.");
+            e.printStackTrace();
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackFailed) {
+                // the connection is broken, the transaction is gone with it
+            }
+            return false;
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                // the queries open their own statements and report a broken connection
+            }
+        }
+
+        System.out.printf("\nApplied the delta in %.1f seconds.\n", (System.nanoTime() - start) / 1e9);
+        return true;
+    }
+
+    private void mergeTable(String table) throws SQLException {
+        String[] tableColumns = columns.get(table);
+        List<Object[]> tableRows = rows.get(table);
+        List<String> keys = primaryKey(table, tableColumns);
+        String staging = "#delta_" + table;
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(String.format("DROP TABLE IF EXISTS %s; SELECT TOP 0 %s INTO %s FROM %s;",
+                    staging, String.join(", ", tableColumns), staging, table));
+
+            stage(table, staging, tableColumns, tableRows);
+
+            int inserted = 0;
+            int updated = 0;
+            try (ResultSet rs = statement.executeQuery(mergeSQL(table, staging, tableColumns, keys))) {
+                while (rs.next()) {
+                    if (rs.getString(1).equals("INSERT")) {
+                        inserted++;
+                    } else {
+                        updated++;
+                    }
+                }
+            }
+
+            if (table.equals("playsOn")) {
+                int closed = statement.executeUpdate(CLOSE_TENURES);
+                System.out.printf("%-15s%,12d%,12d%,12d   (%d tenures ended by a team change)\n",
+                        table, tableRows.size(), inserted, updated, closed);
+            } else {
+                System.out.printf("%-15s%,12d%,12d%,12d\n", table, tableRows.size(), inserted, updated);
+            }
+        }
+    }
+
+    // the summary rows of every season the delta has games, plays, assists or playsIn rows in
+    private void refreshSeasonStats() throws SQLException {
+        if (!PlayerSeasonStats.exists(connection)) {
+            System.out.println("\nThere is no playerSeasonStats table yet, the next REPOP builds it.");
+            return;
+        }
+
+        List<String> games = new ArrayList<>();
+        for (String table : new String[] { "games", "plays", "playsIn" }) {
+            if (rows.containsKey(table)) {
+                games.add("SELECT gameID FROM #delta_" + table);
+            }
+        }
+        if (rows.containsKey("assists")) {
+            games.add("SELECT plays.gameID FROM #delta_assists JOIN plays ON plays.playID = #delta_assists.playID");
+        }
+        if (games.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try (Statement statement = connection.createStatement()) {
+            PlayerSeasonStats.refresh(statement,
+                    "SELECT DISTINCT season FROM games WHERE gameID IN (" + String.join(" UNION ", games) + ")");
+        }
+        System.out.printf("\nRefreshed playerSeasonStats for the delta's seasons in %.1f seconds.\n", (System.nanoTime() - start) / 1e9);
+    }
+
+    // the staging tables are kept until the summary refresh has read them
+    private void dropStaging() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String table : rows.keySet()) {
+                statement.execute("DROP TABLE IF EXISTS #delta_" + table + ";");
+            }
+        }
+    }
+
+    // multi-row inserts into the temp table, which has the column types of the real table
+    private void stage(String table, String staging, String[] tableColumns, List<Object[]> tableRows) throws SQLException {
+        int rowsPerStatement = Math.min(MAX_ROWS_PER_STATEMENT, MAX_PARAMETERS / tableColumns.length);
+        int[] types = TableSchema.load(connection, table, tableColumns).types;
+
+        for (int from = 0; from < tableRows.size(); from += rowsPerStatement) {
+            int to = Math.min(tableRows.size(), from + rowsPerStatement);
+            try (PreparedStatement pstmt = connection.prepareStatement(PreparedInsertLoader.insertSQL(staging, tableColumns, to - from))) {
+                int index = 1;
+                for (int r = from; r < to; r++) {
+                    Object[] values = tableRows.get(r);
+                    for (int c = 0; c < tableColumns.length; c++) {
+                        PreparedInsertLoader.bind(pstmt, index++, values[c], types[c]);
+                    }
+                }
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    // MERGE on the primary key, OUTPUT gives one row per inserted or updated row
+    static String mergeSQL(String table, String staging, String[] tableColumns, List<String> keys) {
+        List<String> on = new ArrayList<>();
+        for (String key : keys) {
+            on.add(String.format("target.%s = source.%s", key, key));
+        }
+
+        List<String> set = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (String column : tableColumns) {
+            values.add("source." + column);
+            if (!keys.contains(column)) {
+                set.add(String.format("target.%s = source.%s", column, column));
+            }
+        }
+
+        StringBuilder sql = new StringBuilder()
+                .append("MERGE ").append(table).append(" AS target\n")
+                .append("USING ").append(staging).append(" AS source\n")
+                .append("ON ").append(String.join(" AND ", on)).append("\n");
+        if (!set.isEmpty()) {
+            sql.append("WHEN MATCHED THEN UPDATE SET ").append(String.join(", ", set)).append("\n");
+        }
+        sql.append("WHEN NOT MATCHED BY TARGET THEN INSERT (").append(String.join(", ", tableColumns)).append(")")
+                .append(" VALUES (").append(String.join(", ", values)).append(")\n")
+                .append("OUTPUT $action;");
+        return sql.toString();
+    }
+
+    // key columns from the database, every delta column if the table has no key (deferred)
+    private List<String> primaryKey(String table, String[] tableColumns) throws SQLException {
+        List<String> keys = new ArrayList<>();
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet rs = metaData.getPrimaryKeys(null, null, table)) {
+            while (rs.next()) {
+                keys.add(rs.getString("COLUMN_NAME"));
+            }
+        }
+
+        for (String key : keys) {
+            if (!Arrays.asList(tableColumns).contains(key)) {
+                throw new SQLException("The delta for " + table + " has no value for key column " + key);
+            }
+        }
+        return keys.isEmpty() ? Arrays.asList(tableColumns) : keys;
+    }
+
+    private static boolean isKnownTable(String table) {
+        for (String[] group : ParallelLoader.TABLE_GROUPS) {
+            if (Arrays.asList(group).contains(table)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Path defaultPath() {
+        return Paths.get(PATH_TO_DELTA);
+    }
+}
@@ -0,0 +1,161 @@
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+
+/*
+ * The SQL that differs between the databases HockeyDB can run on.
+ *
+ * SQLSERVER is the course server the project was written for, its queries are unchanged.
+ * H2 is an embedded database kept in a file next to the data (or in memory), so REPOP can
+ * load the same chunks and every command runs without a network. The default embedded
+ * url ignores case in string comparisons the way the server's collation does.
+ *
+ * The queries take their differing pieces from here, e.g.
+ *
+ *   "SELECT " + dialect.top(25) + "... ORDER BY numGoals DESC " + dialect.fetchFirst(25)
+ *
+ * INGEST (MERGE ... OUTPUT), --defer-constraints and --journal-table use SQL Server only
+ * statements and are refused on H2.
+ */
+public enum Dialect {
+
+    SQLSERVER {
+        @Override
+        String top(int rows) {
+            return "TOP " + rows + " ";
+        }
+
+        @Override
+        String fetchFirst(int rows) {
+            return "";
+        }
+
+        @Override
+        String ifNull(String value, String otherwise) {
+            return "ISNULL(" + value + ", " + otherwise + ")";
+        }
+
+        @Override
+        String now() {
+            return "GETDATE()";
+        }
+
+        @Override
+        String iif(String condition, String then, String otherwise) {
+            return "IIF(" + condition + ", " + then + ", " + otherwise + ")";
+        }
+
+        @Override
+        String avgInt(String value) {
+            return "AVG(" + value + ")";
+        }
+
+        @Override
+        String timeOfDay(String value) {
+            return "CONVERT(TIME(0), " + value + ")";
+        }
+
+        @Override
+        String schema(String sql) {
+            return sql;
+        }
+
+        @Override
+        boolean isSqlServer() {
+            return true;
+        }
+    },
+
+    H2 {
+        @Override
+        String top(int rows) {
+            return "";
+        }
+
+        @Override
+        String fetchFirst(int rows) {
+            return "FETCH FIRST " + rows + " ROWS ONLY";
+        }
+
+        @Override
+        String ifNull(String value, String otherwise) {
+            return "COALESCE(" + value + ", " + otherwise + ")";
+        }
+
+        @Override
+        String now() {
+            return "CURRENT_TIMESTAMP";
+        }
+
+        @Override
+        String iif(String condition, String then, String otherwise) {
+            return "CASE WHEN " + condition + " THEN " + then + " ELSE " + otherwise + " END";
+        }
+
+        // H2 averages an int column as a decimal, the server truncates to an int
+        @Override
+        String avgInt(String value) {
+            return "SUM(" + value + ") / COUNT(" + value + ")";
+        }
+
+        @Override
+        String timeOfDay(String value) {
+            return "CAST(" + value + " AS TIME(0))";
+        }
+
+        // the chunks' DDL is written for the server: no USE cs3380 (the file is the database),
+        // no NOCOUNT, no comma before a closing parenthesis
+        @Override
+        String schema(String sql) {
+            if (USE.matcher(sql).lookingAt() || NOCOUNT.matcher(sql).lookingAt()) {
+                return null;
+            }
+            return TRAILING_COMMA.matcher(sql).replaceAll(")");
+        }
+
+        @Override
+        boolean isSqlServer() {
+            return false;
+        }
+    };
+
+    // a file database in data/, created on the first connection
+    static final String EMBEDDED_URL = "jdbc:h2:file:../data/hockeydb;MODE=MSSQLServer;IGNORECASE=TRUE";
+
+    private static final Pattern USE = Pattern.compile("\\s*USE\\s", Pattern.CASE_INSENSITIVE);
+    private static final Pattern NOCOUNT = Pattern.compile("\\s*SET\\s+NOCOUNT\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TRAILING_COMMA = Pattern.compile(",\\s*\\)");
+
+    // "TOP n " before the select list, or nothing
+    abstract String top(int rows);
+
+    // the row limit after the ORDER BY, or nothing
+    abstract String fetchFirst(int rows);
+
+    abstract String ifNull(String value, String otherwise);
+
+    abstract String now();
+
+    abstract String iif(String condition, String then, String otherwise);
+
+    // AVG of an int expression, an int rounded toward zero
+    abstract String avgInt(String value);
+
+    // the time of day of a datetime, to the second
+    abstract String timeOfDay(String value);
+
+    // a drop/create/set statement of the chunks as this database runs it, null to skip it
+    abstract String schema(String sql);
+
+    abstract boolean isSqlServer();
+
+    public static Dialect of(String url) {
+        return url != null && url.startsWith("jdbc:h2:") ? H2 : SQLSERVER;
+    }
+
+    public static Dialect of(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        return metaData == null ? SQLSERVER : of(metaData.getURL());
+    }
+}
@@ -1,12 +1,16 @@
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Properties;
+import java.util.function.Supplier;
 
 /*
  * Queries Implemented:
@@ -30,9 +34,101 @@ import java.util.Properties;
  */
 
 public class HockeyDB {
-    private Connection connection;
+    private static final int NUM_CHUNKS = 36;
+
+    private final ConnectionPool pool;
+    private final StatementRegistry statements = new StatementRegistry();
+    private final ResultCache cache;
+    private final QueryMetrics metrics = new QueryMetrics();
+    private String connectionUrl;
+    private final Dialect dialect;
+
+    // with --local every command is answered by the local engine and there is no server
+    private final boolean localOnly;
+    private LocalEngine local;
+
+    // the listing of the last sAll, sp or gs, paged with 'next' and 'prev'
+    private volatile KeysetPager pager;
+
+    // the players' names for sp, the player checks and completion, null if they could not be read
+    private volatile NameIndex names;
 
     public HockeyDB() {
+        this(false);
+    }
+
+    public HockeyDB(boolean localOnly) {
+        this(localOnly, localOnly ? null : readConfig());
+    }
+
+    // the settings auth.cfg would hold, e.g. a benchmark's stand-in database
+    public HockeyDB(Properties prop) {
+        this(false, prop);
+    }
+
+    private HockeyDB(boolean localOnly, Properties prop) {
+        this.localOnly = localOnly;
+        if (localOnly) {
+            // nothing to cache, the local engine answers in milliseconds
+            pool = null;
+            cache = new ResultCache(0, 0, 0);
+            dialect = Dialect.SQLSERVER;
+            if (!SnapshotWriter.isComplete()) {
+                printBoxedText("No complete binary snapshot yet, converting the SQL chunks (needed once)");
+                SnapshotWriter.convert(NUM_CHUNKS);
+            }
+            if (!loadLocal()) {
+                System.exit(1);
+            }
+            loadNames();
+            return;
+        }
+
+        String username = (prop.getProperty("username"));
+        String password = (prop.getProperty("password"));
+        String url = prop.getProperty("db.url");
+
+        if (url != null) {
+            // another database than the course server, db.url=embedded is the H2 file in data/
+            connectionUrl = url.equals("embedded") ? Dialect.EMBEDDED_URL : url;
+        } else {
+            if (username == null || password == null) {
+                System.out.println("Username or password not provided.");
+                System.exit(1);
+            }
+
+            connectionUrl = "jdbc:sqlserver://uranium.cs.umanitoba.ca:1433;"
+                    + "database=cs3380;"
+                    + "user=" + username + ";"
+                    + "password=" + password + ";"
+                    + "encrypt=false;"
+                    + "trustServerCertificate=false;"
+                    + "loginTimeout=30;";
+        }
+        dialect = Dialect.of(connectionUrl);
+
+        // optional pool settings in auth.cfg
+        pool = new ConnectionPool(this::openConnection,
+                Integer.parseInt(prop.getProperty("pool.min", "1")),
+                Integer.parseInt(prop.getProperty("pool.max", "8")),
+                Integer.parseInt(prop.getProperty("pool.idleSeconds", "300")),
+                Integer.parseInt(prop.getProperty("pool.leakSeconds", "120")));
+        cache = new ResultCache(
+                Integer.parseInt(prop.getProperty("cache.maxEntries", "64")),
+                Long.parseLong(prop.getProperty("cache.maxCells", "2000000")),
+                Integer.parseInt(prop.getProperty("cache.ttlSeconds", "1800")));
+
+        try {
+            // open the first connections to the database
+            pool.fill();
+
+        } catch (SQLException e) {
+            e.printStackTrace(System.out);
+        }
+        loadNames();
+    }
+
+    private static Properties readConfig() {
         Properties prop = new Properties();
         String fileName = "../data/auth.cfg";
         try {
@@ -46,52 +142,228 @@ public class HockeyDB {
             System.out.println("Error reading config file.");
             System.exit(1);
         }
-        String username = (prop.getProperty("username"));
-        String password = (prop.getProperty("password"));
+        return prop;
+    }
 
-        if (username == null || password == null) {
-            System.out.println("Username or password not provided.");
-            System.exit(1);
+    public void close() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    // one read of the players into the name index. Without it (no players table yet, or the
+    // server is down) sp and the player checks ask the database
+    private void loadNames() {
+        if (localOnly) {
+            names = new NameIndex(local.players());
+            return;
+        }
+        try {
+            String sql = """
+                        SELECT firstName, lastName, playerType, nationality, birthDate, height, weight
+                        FROM players
+                        ORDER BY playerID;
+                    """;
+            names = new NameIndex(queryRows("names", sql));
+        } catch (SQLException e) {
+            names = null;
+            System.out.println("Player names not indexed, sp and the name checks use the database: " + e.getMessage());
+        }
+    }
+
+    // the name index, read again once it is as old as a cached result may get, in case another
+    // session reloaded the players
+    private NameIndex names() {
+        NameIndex index = names;
+        if (index != null && !localOnly && cache.expired(index.built)) {
+            loadNames();
+            index = names;
         }
+        return index;
+    }
+
+    // first names starting with the prefix for the console to complete, none without the index
+    public List<String> completeFirstName(String prefix) {
+        NameIndex index = names;
+        return index == null ? List.of() : index.completeFirst(prefix);
+    }
 
-        String connectionUrl = "jdbc:sqlserver://uranium.cs.umanitoba.ca:1433;"
-                + "database=cs3380;"
-                + "user=" + username + ";"
-                + "password=" + password + ";"
-                + "encrypt=false;"
-                + "trustServerCertificate=false;"
-                + "loginTimeout=30;";
+    // last names of the players with this first name starting with the prefix
+    public List<String> completeLastName(String first, String prefix) {
+        NameIndex index = names;
+        return index == null ? List.of() : index.completeLast(first, prefix);
+    }
 
+    // reads the binary snapshot into the local engine, false if it is missing or damaged
+    private boolean loadLocal() {
         try {
-            // create a connection to the database
-            connection = DriverManager.getConnection(connectionUrl);
+            local = LocalEngine.load();
+            return true;
+        } catch (IOException e) {
+            System.out.println("Could not read the binary snapshot: " + e.getMessage());
+            return false;
+        }
+    }
 
-        } catch (SQLException e) {
-            e.printStackTrace(System.out);
+    // REPOP, INGEST and DELETE change the server's tables, which a --local session has none of
+    private boolean needsServer(String command) {
+        if (localOnly) {
+            System.out.printf("\nSorry, '%s' needs the database server and this session was started with --local\n", command);
         }
+        return localOnly;
+    }
+
+    public void cacheStats() {
+        printBoxedText("Result cache");
+        cache.printStats();
+    }
+
+    public void clearCache() {
+        cache.clear();
+        printBoxedText("Result cache cleared");
+    }
+
+    public QueryMetrics queryMetrics() {
+        return metrics;
+    }
+
+    public void queryStats() {
+        printBoxedText("Query latency of this session");
+        metrics.printStats();
+    }
+
+    public void clearQueryStats() {
+        metrics.clear();
+        printBoxedText("Query timings cleared");
+    }
 
+    // how often each query found its statement already prepared
+    public void statementStats() {
+        if (needsServer("stmts")) {
+            return;
+        }
+        printBoxedText(String.format("Prepared statements (%d connections open)", pool.open()));
+        statements.printStats();
     }
 
-    public void repopulate() {
+    public void repopulate(LoadOptions options) {
+        dataChanged();
+
+        if (options.writeSnapshot) {
+            printBoxedText("Converting the SQL chunks to the binary snapshot");
+            SnapshotWriter.convert(NUM_CHUNKS);
+            if (localOnly) {
+                loadLocal();
+                loadNames();
+            }
+            return;
+        }
+
+        if (options.parseOnly) {
+            if (options.fromSnapshot) {
+                printBoxedText("Reading the binary snapshot without loading it");
+                SnapshotReader.parseOnly();
+            } else {
+                printBoxedText("Parsing the SQL chunks without loading them");
+                ChunkScanner.parseOnly(NUM_CHUNKS);
+            }
+            return;
+        }
+
+        if (needsServer("REPOP")) {
+            return;
+        }
+
+        if (!dialect.isSqlServer() && (options.deferConstraints || options.journalTable)) {
+            System.out.println("\nSorry, --defer-constraints and --journal-table need SQL Server, the embedded database loads without them");
+            return;
+        }
+        if (dialect.isSqlServer() && !options.fileJournalOnly) {
+            options.journalTable = true;
+        }
+
+        // a load holds its connection for minutes, so it opens its own instead of taking one from the pool
+        try (Connection connection = openConnection()) {
+            if (options.fromCsv) {
+                printBoxedText("Repopulating Database straight from the csv files in " + options.csvPath);
+                new CsvIngest(connection, options).run();
+                return;
+            }
+
+            if (options.fromSnapshot) {
+                printBoxedText("Repopulating Database from the binary snapshot");
+                Populator.loadSnapshot(connection, options);
+                return;
+            }
 
-        final int NUM_CHUNKS = 36;
+            printBoxedText(String.format("Repopulating Database with %d workers (%s mode) - Estimated Time: 5-30 minutes.",
+                    options.workers, options.mode.name().toLowerCase()));
 
-        printBoxedText("Repopulating Database - Estimated Time: 10-30 minutes.");
+            ParallelLoader loader = new ParallelLoader(this::openConnection, options, NUM_CHUNKS);
+            loader.load(connection);
+        } catch (SQLException e) {
+            e.printStackTrace(System.out);
+        } finally {
+            dataChanged();
+            loadNames();
+        }
+    }
 
-        for (int i = 1; i <= NUM_CHUNKS; i++) {
+    // merges a delta set of new games into the loaded tables, see DeltaIngest
+    public void ingest(String path) {
+        if (needsServer("INGEST")) {
+            return;
+        }
+        if (!dialect.isSqlServer()) {
+            System.out.println("\nSorry, INGEST merges with SQL Server's MERGE ... OUTPUT, on the embedded database run REPOP instead");
+            return;
+        }
+        dataChanged();
+        Path deltaPath = path.isEmpty() ? DeltaIngest.defaultPath() : Paths.get(path);
+        printBoxedText("Ingesting the delta in " + deltaPath);
+
+        try (Connection connection = openConnection()) {
+            DeltaIngest delta = new DeltaIngest(connection);
+            try {
+                delta.read(deltaPath);
+            } catch (IOException e) {
+                System.err.println("Error reading the delta: " + deltaPath);
+                e.printStackTrace();
+                return;
+            } catch (IllegalArgumentException e) {
+                System.out.println("Sorry, the delta could not be parsed: " + e.getMessage());
+                return;
+            }
 
-            String file_name = String.format("sql_chunk_%s.sql", i);
-            System.out.printf("Starting execution of sql chunk %d of %d...\n", i, NUM_CHUNKS);
-            Populator.repopulateDB(connection, file_name);
-            System.out.printf("Chunk %d done.\n", i);
+            if (delta.tables() == 0) {
+                System.out.println("The delta has no inserts, nothing to do.");
+                return;
+            }
 
+            if (delta.apply()) {
+                printBoxedText("Delta ingested successfully!");
+            }
+        } catch (SQLException e) {
+            e.printStackTrace(System.out);
+        } finally {
+            dataChanged();
+            loadNames();
         }
     }
 
+    // new connection with the same settings as the pool's, used by the pool and by REPOP/INGEST
+    Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(connectionUrl);
+    }
+
     public void removeAll() {
+        if (needsServer("DELETE")) {
+            return;
+        }
+        dataChanged();
         printBoxedText("Deleting the Database...");
         int n = -1;
-        try {
+        try (ConnectionPool.Lease lease = pool.borrow()) {
             
             String sql = """
                         DROP TABLE IF EXISTS assists;
@@ -105,17 +377,21 @@ public class HockeyDB {
                         DROP TABLE IF EXISTS teams; 
                         DROP TABLE IF EXISTS players;
                         DROP TABLE IF EXISTS officials;
+                        DROP TABLE IF EXISTS loadJournal;
+                        DROP TABLE IF EXISTS playerSeasonStats;
                     """;
-                PreparedStatement pstmt = connection.prepareStatement(sql);
+                PreparedStatement pstmt = statements.prepare(lease, "DELETE", sql);
                 n = pstmt.executeUpdate();
         
             } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
 
         if (n == 0) {
             printBoxedText("Database deleted successfully!");
         }
+        dataChanged();
+        loadNames();
     }
 
     public void example() {
@@ -152,7 +428,7 @@ public class HockeyDB {
                                     WHEN p.playType = 'Goal' 
                                         AND (
                                             po.teamID = g.awayTeamID
-                                            AND g.dateTime BETWEEN po.startDate AND ISNULL(po.endDate, GETDATE())
+                                            AND g.dateTime BETWEEN po.startDate AND %1$s
                                         )
                                     THEN 1 
                                     ELSE NULL 
@@ -173,7 +449,7 @@ public class HockeyDB {
                                     WHEN p.playType = 'Goal' 
                                         AND (
                                             po.teamID = g.homeTeamID
-                                            AND g.dateTime BETWEEN po.startDate AND ISNULL(po.endDate, GETDATE())
+                                            AND g.dateTime BETWEEN po.startDate AND %1$s
                                         )
                                     THEN 1 
                                     ELSE NULL 
@@ -190,25 +466,13 @@ public class HockeyDB {
 						SELECT teamName, sum(numGoals) goalTotal FROM 
 						(SELECT teamName, numGoals FROM homeGoals UNION ALL SELECT teamName, numGoals FROM awayGoals) x 
 						GROUP BY teamName ORDER BY goalTotal DESC;
-                    """;
-
-            PreparedStatement pstmt = connection.prepareStatement(sql);
-            pstmt.setString(1, first);
-            pstmt.setString(2, last);
-            pstmt.setString(3, first);
-            pstmt.setString(4, last);
+                    """.formatted(dialect.ifNull("po.endDate", dialect.now()));
 
-            ResultSet rs = pstmt.executeQuery();
-
-            
-            printBoxedText(String.format("Goals against each team for %s %s", first, last));
             String[] titles = { "Team Name", "Goals Scored" };
-            TablePrinter.printResultSet(rs, titles);
-
-            rs.close();
-            pstmt.close();
+            printQuery("tgbt", sql, String.format("Goals against each team for %s %s", first, last), titles,
+                    () -> local.totalGoalsByTeam(first, last), first, last, first, last);
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
     }
 
@@ -222,47 +486,19 @@ public class HockeyDB {
         try {
 
             String sql = """
-                        with allGoals AS (
-                            SELECT players.playerID, players.firstName, players.lastName, season,
-                            count(plays.playID) as totalGoals
-                            FROM plays
-                            JOIN games ON games.gameID = plays.gameID
-                            JOIN players ON plays.playerID = players.playerID
-                            WHERE playType = 'Goal'
-                            Group by players.playerID, players.firstName, players.lastName, season
-                        ),
-                        allAssists AS (
-                            select assists.playerID, season, count(assists.playerID) as totalAssists
-                            FROM assists
-                            join plays on plays.playid = assists.playID
-                            JOIN games on games.gameID = plays.gameID
-                            where playType = 'Goal'
-                            Group by assists.playerID, season
-                        )
-                        SELECT allGoals.playerID, allGoals.season, totalGoals, totalAssists,
-                        sum(totalGoals + totalAssists) as totalPoints
-                        from allAssists join allGoals on allAssists.playerID = allgoals.playerID
-                        AND allAssists.season = allGoals.season
-                        WHERE firstName = ? And lastName = ?
-                        group by allGoals.playerID, firstName, lastName, totalGoals, totalAssists, allGoals.season
-                        order by allGoals.playerID, allGoals.season desc;
+                        SELECT playerSeasonStats.playerID, season, goals, assists, points
+                        FROM playerSeasonStats
+                        JOIN players ON players.playerID = playerSeasonStats.playerID
+                        WHERE firstName = ? AND lastName = ?
+                        AND goals > 0 AND assists > 0
+                        ORDER BY playerSeasonStats.playerID, season DESC;
                     """;
 
-            PreparedStatement pstmt = connection.prepareStatement(sql);
-            pstmt.setString(1, first);
-            pstmt.setString(2, last);
-
-            ResultSet rs = pstmt.executeQuery();
-
-            printBoxedText(String.format("Total Goals, Assists, and Points for %s %s", first, last));
-
             String[] titles = { "Player ID", "Season", "Goals", "Assists", "Points" };
-            TablePrinter.printResultSet(rs, titles);
-
-            rs.close();
-            pstmt.close();
+            printQuery("tgap", sql, String.format("Total Goals, Assists, and Points for %s %s", first, last), titles,
+                    () -> local.totalGAP(first, last), first, last);
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
 
     }
@@ -272,23 +508,19 @@ public class HockeyDB {
         try {
 
             String sql = """
-                        SELECT plays.playType, AVG(shiftEnd - shiftStart) avgShiftLength
+                        SELECT plays.playType, %s avgShiftLength
                         FROM plays
                         JOIN shifts ON shifts.shiftID = plays.shiftID
                         GROUP BY plays.playType;
-                    """;
+                    """.formatted(dialect.avgInt("shiftEnd - shiftStart"));
 
-            PreparedStatement pstmt = connection.prepareStatement(sql);
-            ResultSet rs = pstmt.executeQuery();
+            List<List<String>> rows = localOnly ? localRows(() -> local.avgShiftByPlay()) : cachedRows("asl", sql);
 
             printBoxedText("Avg. shift length for each play type");
             String[] titles = { "Play Type", "Shift Length (in seconds)" };
-            TablePrinter.printResultSet(rs, titles);
-
-            rs.close();
-            pstmt.close();
+            TablePrinter.printRows(rows, titles);
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
 
     }
@@ -307,18 +539,13 @@ public class HockeyDB {
                         ORDER BY numGoals DESC;
                     """;
 
-            PreparedStatement pstmt = connection.prepareStatement(sql);
-            pstmt.setString(1, season);
-            ResultSet rs = pstmt.executeQuery();
+            List<List<String>> rows = localOnly ? localRows(() -> local.goalsByVenue(season)) : cachedRows("gba", sql, season);
 
             printBoxedText(String.format("Total goals scored at each venue for the year %s", season));
             String[] titles = { "Venue Name", "Total Goals" };
-            TablePrinter.printResultSet(rs, titles);
-
-            rs.close();
-            pstmt.close();
+            TablePrinter.printRows(rows, titles);
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
 
     }
@@ -343,21 +570,17 @@ public class HockeyDB {
                         JOIN allAwayTeamPenalties ON allAwayTeamPenalties.gameID = officiatedBy.gameID
                         WHERE officiatedBy.officialType = 'Referee'
                         GROUP BY officials.officialID, officials.officialName
-                        ORDER BY numPenalties DESC;
+                        ORDER BY numPenalties DESC
+                        OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY;
                     """;
 
-            PreparedStatement pstmt = connection.prepareStatement(sql);
-
-            ResultSet rs = pstmt.executeQuery();
+            List<List<String>> rows = localOnly ? localRows(() -> local.topNOfficialPenalties()) : cachedRows("topNO", sql, numRows);
 
             printBoxedText(String.format("Top %d officials who call the most penalites against away teams", numRows));
             String[] titles = {"Rank", "Name", "Penalties Called" };
-            TablePrinter.printResultSetWithRank(rs, titles, numRows);
-
-            rs.close();
-            pstmt.close();
+            TablePrinter.printRowsWithRank(rows, titles, numRows);
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
     }
 
@@ -370,21 +593,17 @@ public class HockeyDB {
                         FROM playsOn  
                         JOIN players ON playsOn.playerID = players.playerID 
                         GROUP BY players.playerID, firstName, lastName 
-                        ORDER BY numTeams DESC; 
+                        ORDER BY numTeams DESC
+                        OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY;
                     """;
 
-            PreparedStatement pstmt = connection.prepareStatement(sql);
-
-            ResultSet rs = pstmt.executeQuery();
+            List<List<String>> rows = localOnly ? localRows(() -> local.topTeamsPlayedFor()) : cachedRows("mt", sql, numRows);
 
             printBoxedText(String.format("Top %d players who have played for the most teams", numRows));
             String[] titles = { "Rank", "First", "Last", "No. Teams" };
-            TablePrinter.printResultSetWithRank(rs, titles, numRows);
-
-            rs.close();
-            pstmt.close();
+            TablePrinter.printRowsWithRank(rows, titles, numRows);
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
     }
 
@@ -398,21 +617,17 @@ public class HockeyDB {
                         JOIN plays ON players.playerID = plays.playerID 
                         WHERE plays.playType = 'Penalty' 
                         GROUP BY players.firstname, players.lastname, players.weight, players.height 
-                        ORDER BY numberOfPenalties DESC; 
+                        ORDER BY numberOfPenalties DESC
+                        OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY;
                     """;
 
-            PreparedStatement pstmt = connection.prepareStatement(sql);
-
-            ResultSet rs = pstmt.executeQuery();
+            List<List<String>> rows = localOnly ? localRows(() -> local.topPlayersPenalties()) : cachedRows("tpp", sql, numRows);
 
             printBoxedText(String.format("Top %d players who have taken the most penalites", numRows));
             String[] titles = { "Rank", "First", "Last" , "Height", "Weight", "No. Penalties"};
-            TablePrinter.printResultSetWithRank(rs, titles, numRows);
-
-            rs.close();
-            pstmt.close();
+            TablePrinter.printRowsWithRank(rows, titles, numRows);
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
     }
 
@@ -421,24 +636,20 @@ public class HockeyDB {
         try {
 
             String sql = """
-                        SELECT periodNumber, AVG(shiftEnd - shiftStart) as shiftLength
+                        SELECT periodNumber, %s as shiftLength
                         FROM shifts
                         GROUP BY periodNumber
                         ORDER BY periodNumber ASC
-                    """;
+                    """.formatted(dialect.avgInt("shiftEnd - shiftStart"));
 
 
-            PreparedStatement pstmt = connection.prepareStatement(sql);
-            ResultSet rs = pstmt.executeQuery();
+            List<List<String>> rows = localOnly ? localRows(() -> local.avgShiftLengthByPeriod()) : cachedRows("aslp", sql);
 
             printBoxedText(String.format("Average shift length by period"));
             String[] titles = { "Period", "Shift Length (in seconds)" };
-            TablePrinter.printResultSet(rs, titles);
-
-            rs.close();
-            pstmt.close();
+            TablePrinter.printRows(rows, titles);
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
     }
 
@@ -485,24 +696,11 @@ public class HockeyDB {
                     SELECT COUNT(*) as totalPlayoffWins, 16 as max_possible FROM HomeAwayPloffWins;
                     """;
 
-            PreparedStatement pstmt = connection.prepareStatement(sql);
-            pstmt.setString(1, teamName);
-            pstmt.setString(2, season);
-            pstmt.setString(3, teamName);
-            pstmt.setString(4, season);
-
-            ResultSet rs = pstmt.executeQuery();
-
-            printBoxedText(String.format("Total playoff wins for the %s in the %s season", teamName, season));
-
             String[] titles = { "Wins", "Maximum" };
-            TablePrinter.printResultSet(rs, titles);
-
-            rs.close();
-            pstmt.close();
-
+            printQuery("pw", sql, String.format("Total playoff wins for the %s in the %s season", teamName, season), titles,
+                    () -> local.totalPlayoffWins(teamName, season), teamName, season, teamName, season);
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
     }
 
@@ -511,7 +709,7 @@ public class HockeyDB {
         try {
 
             String sql = """
-                        SELECT firstName, lastName  
+                        SELECT firstName, lastName, players.playerID AS pageKey
                         FROM players 
                         WHERE NOT EXISTS (  
                         
@@ -526,26 +724,21 @@ public class HockeyDB {
 
                         UNION  
                         -- all teams this player has scored against 
-                        SELECT DISTINCT IIF(games.homeTeamID = playsOn.teamID, games.awayTeamID, games.homeTeamID) AS teamID -- teams that player has scored against  
+                        SELECT DISTINCT %s AS teamID -- teams that player has scored against  
                         FROM plays  
                         JOIN games ON plays.gameID = games.gameID  
                         JOIN playsOn ON plays.playerID = playsOn.playerID 
-                        WHERE plays.playType = 'goal' AND (games.dateTime >= playsOn.startdate AND (playsOn.endDate IS NULL OR games.dateTime <= playsOn.endDate)) AND plays.playerID = players.playerID)); 
-                    """;
+                        WHERE plays.playType = 'goal' AND (games.dateTime >= playsOn.startdate AND (playsOn.endDate IS NULL OR games.dateTime <= playsOn.endDate)) AND plays.playerID = players.playerID))
+                    """.formatted(dialect.iif("games.homeTeamID = playsOn.teamID", "games.awayTeamID", "games.homeTeamID"));
 
 
-            PreparedStatement pstmt = connection.prepareStatement(sql);
-            ResultSet rs = pstmt.executeQuery();
-
-            printBoxedText(String.format("Players who have scored against all teams"));
             String[] titles = { "First", "Last" };
-            TablePrinter.printResultSet(rs, titles);
-            
-
-            rs.close();
-            pstmt.close();
+            TablePrinter.Heading heading = heading("Players who have scored against all teams");
+            printFirstPage(localOnly
+                    ? new KeysetPager("sAll", localRows(() -> local.playersScoredAgainstAllTeams()), titles, heading)
+                    : new KeysetPager("sAll", "", sql, titles, heading));
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
     }
 
@@ -554,59 +747,23 @@ public class HockeyDB {
         try {
 
             String sql = """
-                    		WITH allGoals AS (
-                    			SELECT playerID, COUNT(*) as numGoals
-                    			FROM plays
-                    			JOIN games ON plays.gameID = games.gameID
-                    			WHERE plays.playType = 'goal'
-                    			AND games.season = ?
-                    			GROUP BY playerID
-                    		),
-                    		allAssists AS (
-                    			SELECT assists.playerID, COUNT(*) as numAssists
-                    			FROM assists
-                    			JOIN plays ON assists.playID = plays.playID
-                    			JOIN games ON games.gameID = plays.gameID
-                    			AND games.season = ?
-                    			GROUP BY assists.playerID
-
-                    		),
-                    		totalPlusMinus AS (
-                    			SELECT playsIn.playerID, SUM(playsIn.plusMinus) as plusMinus
-                    			FROM playsIn
-                    			JOIN games ON games.gameID = playsIn.gameID
-                    			WHERE games.season = ?
-                    			GROUP BY playsIn.playerID
-                    		),
-                    		totals AS (
-                    			SELECT allGoals.playerID, numGoals, numAssists, (numGoals + numAssists) AS numPoints, plusMinus
-                    			FROM allGoals
-                    			JOIN allAssists ON allGoals.playerID = allAssists.playerID
-                    			JOIN totalPlusMinus ON allGoals.playerID = totalPlusMinus.playerID
-                    		)
-                    		SELECT TOP 25 players.firstName, players.lastName, numGoals, numAssists, numPoints, plusMinus
-                    		FROM totals
-                    		JOIN players ON totals.playerID = players.playerID
-                    """;
-            sql += "ORDER BY " + getStatSQL(statType) + " DESC;";
-
-            PreparedStatement pstmt = connection.prepareStatement(sql);
+                        SELECT %splayers.firstName, players.lastName, goals AS numGoals, assists AS numAssists,
+                            points AS numPoints, plusMinus
+                        FROM playerSeasonStats
+                        JOIN players ON playerSeasonStats.playerID = players.playerID
+                        WHERE season = ?
+                        AND goals > 0 AND assists > 0 AND gamesPlayed > 0
+                    """.formatted(dialect.top(25));
+            sql += "ORDER BY " + getStatSQL(statType) + " DESC " + dialect.fetchFirst(25) + ";";
 
-            for (int i = 1; i <= 3; i++)
-                pstmt.setString(i, season);
-
-            ResultSet rs = pstmt.executeQuery();
+            List<List<String>> rows = localOnly ? localRows(() -> local.top25byStat(statType, season)) : cachedRows("top25", sql, season);
 
             final int NUM_ROWS = 25;
             printBoxedText(String.format("Top 25 Players ordered by %s", getStat(statType)));
             String[] titles = { "Rank", "First", "Last", "Goals", "Assists", "Points", "Plus Minus" };
-            TablePrinter.printResultSetWithRank(rs, titles, NUM_ROWS);
-            
-
-            rs.close();
-            pstmt.close();
+            TablePrinter.printRowsWithRank(rows, titles, NUM_ROWS);
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
     }
 
@@ -619,44 +776,23 @@ public class HockeyDB {
 
         try {
 
+            // NULLIF: H2 works out the select list before HAVING drops the players without shots,
+            // the outer CAST keeps H2's quotient a REAL as the server's is
             String sql = """
-                        WITH playerGoals AS (  
-                            SELECT players.playerID, firstname, lastname, COUNT(plays.playID) AS goals  
-                            FROM players  
-                            LEFT JOIN plays ON players.playerID = plays.playerID   
-                            WHERE playType = 'Goal' 
-                            GROUP BY players.playerID, players.firstname, players.lastname 
-                        ),  
-                        
-                        playerShots AS (  
-                            SELECT players.playerID, firstname as fName, lastname as lName, COUNT(plays.playID) AS shots  
-                            FROM players  
-                            LEFT JOIN plays ON players.playerID = plays.playerID  
-                            WHERE playType = 'Shot' 
-                            GROUP BY players.playerID, firstname, lastname 
-                        )  
-                            
-                        SELECT firstName, lastName, ROUND((CAST(goals AS REAL) / shots), 4) AS goals_per_shot_average  
-                        FROM playerGoals  
-                        JOIN playerShots ON playerGoals.playerID = playerShots.playerID  
-                        WHERE firstName = ? And lastName = ?;
+                        SELECT firstName, lastName, CAST(ROUND((CAST(SUM(goals) AS REAL) / NULLIF(SUM(shots), 0)), 4) AS REAL) AS goals_per_shot_average
+                        FROM playerSeasonStats
+                        JOIN players ON players.playerID = playerSeasonStats.playerID
+                        WHERE firstName = ? AND lastName = ?
+                        GROUP BY players.playerID, firstName, lastName
+                        HAVING SUM(goals) > 0 AND SUM(shots) > 0;
                     """;
 
 
-            PreparedStatement pstmt = connection.prepareStatement(sql);
-            pstmt.setString(1, first);
-            pstmt.setString(2, last);
-
-            ResultSet rs = pstmt.executeQuery();
-
-            printBoxedText(String.format("Career goals per shot average for %s %s", first, last));
             String[] titles = { "First", "Last", "Goals Per Shot" };
-            TablePrinter.printResultSet(rs, titles);
-
-            rs.close();
-            pstmt.close();
+            printQuery("gps", sql, String.format("Career goals per shot average for %s %s", first, last), titles,
+                    () -> local.goalsPerShotAllPlayers(first, last), first, last);
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
     }
 
@@ -669,19 +805,14 @@ public class HockeyDB {
                     FROM teams;
                     """;
 
-            PreparedStatement statement = connection.prepareStatement(sql);
-            ResultSet resultSet = statement.executeQuery();
+            List<List<String>> rows = localOnly ? localRows(() -> local.allTeams()) : cachedRows("teams", sql);
 
             printBoxedText("All NHL Teams");
 
             String[] titles = { "ID", "City", "Team Name" };
-            TablePrinter.printResultSet(resultSet, titles);
-           
-
-            resultSet.close();
-            statement.close();
+            TablePrinter.printRows(rows, titles);
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
     }
 
@@ -691,36 +822,32 @@ public class HockeyDB {
         try {
 
             String sql = """
-                        SELECT firstName, lastName, playerType, nationality, birthDate, height, weight 
+                        SELECT firstName, lastName, playerType, nationality, birthDate, height, weight, playerID AS pageKey
                         FROM players 
                         WHERE firstname LIKE ?  
                         OR lastname LIKE ?  
                         OR CONCAT(firstname, ' ', lastName) LIKE ? 
                     """;
 
-            PreparedStatement pstmt = connection.prepareStatement(sql);
-            pstmt.setString(1, "%" + name + "%");
-            pstmt.setString(2, "%" + name + "%");
-            pstmt.setString(3, "%" + name + "%");
-
-            ResultSet rs = pstmt.executeQuery();
+            String pattern = "%" + name + "%";
+            String[] titles = { "First", "Last", "Player Type", "Nationality", "Date of Birth", "Height", "Weight" };
 
             // added to print out alternative message if no matches are found
-            if (!rs.isBeforeFirst()) {
-                printBoxedText(String.format("Sorry there are no players matching the name '%s'", name));
-            } else {
-        
-                printBoxedText(String.format("Players with a name matching '%s'", name));
-
-                String[] titles = { "First", "Last", "Player Type", "Nationality", "Date of Birth", "Height", "Weight" };
-                TablePrinter.printResultSet(rs, titles);
-
-            }
-
-            rs.close();
-            pstmt.close();
+            TablePrinter.Heading heading = empty -> {
+                if (empty) {
+                    printBoxedText(String.format("Sorry there are no players matching the name '%s'", name));
+                } else {
+                    printBoxedText(String.format("Players with a name matching '%s'", name));
+                }
+                return !empty;
+            };
+            // the name index answers in memory, see NameIndex
+            NameIndex index = names();
+            printFirstPage(index != null
+                    ? new KeysetPager("sp", localRows(() -> index.search(name)), titles, heading)
+                    : new KeysetPager("sp", "", sql, titles, heading, pattern, pattern, pattern));
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
 
     }
@@ -738,7 +865,7 @@ public class HockeyDB {
             String firstHalfSeasonStart = years[0]+"-09-01"; //Early september
             String lastHalfSeasonEnd =  years[1]+"-07-01"; //Early Juner
 
-            String sql = """
+            String with = """
                     WITH homeTeamGames AS (
                         SELECT * FROM teams JOIN games ON teams.teamID = games.homeTeamID 
                         WHERE teams.teamName = ? AND games.dateTime between ? AND ?  AND games.type = 'R'
@@ -756,34 +883,22 @@ public class HockeyDB {
                         SELECT teams.teamName homeTeam, awayTeamGames.teamName awayTeam, awayTeamGames.dateTime
                         FROM awayTeamGames JOIN teams ON awayTeamGames.homeTeamID = teams.teamID
                     )
-
-                    SELECT homeTeam, awayTeam, CAST(DATEADD(HOUR, -6, [dateTime]) AS DATE) AS date, CONVERT(TIME(0), DATEADD(HOUR, -6, [dateTime])) AS time FROM seasonGames 
-                    ORDER BY dateTime;
                     """;
 
-            PreparedStatement pstmt = connection.prepareStatement(sql);
-            pstmt.setString(1, teamName);
-            pstmt.setString(2, firstHalfSeasonStart);
-            pstmt.setString(3, lastHalfSeasonEnd);
-            pstmt.setString(4, teamName);
-            pstmt.setString(5, firstHalfSeasonStart);
-            pstmt.setString(6, lastHalfSeasonEnd);
-  
-
-            ResultSet rs = pstmt.executeQuery();
-
-
-            printBoxedText(String.format("%s schedule for the %s season", teamName, season));
+            // a team plays one game at a time, its start time orders the games and keys the pages
+            String sql = """
+                    SELECT homeTeam, awayTeam, CAST(DATEADD(HOUR, -6, dateTime) AS DATE) AS date, %s AS time,
+                    dateTime AS pageKey FROM seasonGames
+                    """.formatted(dialect.timeOfDay("DATEADD(HOUR, -6, dateTime)"));
 
             String[] titles = { "Home Team", "Away Team", "Date", "Time (CST)" };
-            TablePrinter.printResultSet(rs, titles);
-
-
-            rs.close();
-            pstmt.close();
-
+            TablePrinter.Heading heading = heading(String.format("%s schedule for the %s season", teamName, season));
+            printFirstPage(localOnly
+                    ? new KeysetPager("gs", localRows(() -> local.schedule(teamName, season)), titles, heading)
+                    : new KeysetPager("gs", with, sql, titles, heading, teamName, firstHalfSeasonStart,
+                            lastHalfSeasonEnd, teamName, firstHalfSeasonStart, lastHalfSeasonEnd));
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
     }
 
@@ -814,21 +929,18 @@ public class HockeyDB {
                 SELECT firstname, lastname, COUNT(*) as numGordHats
                 FROM gordHats
                 GROUP BY playerID, firstname, lastname
-                ORDER BY numGordHats DESC;
+                ORDER BY numGordHats DESC
+                OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY;
             """;
 
 
-            PreparedStatement pstmt = connection.prepareStatement(sql);
-            ResultSet rs = pstmt.executeQuery();
+            List<List<String>> rows = localOnly ? localRows(() -> local.gordieHoweHatTrick()) : cachedRows("ghh", sql, numRows);
 
             printBoxedText(String.format("Top %d players with the most Gordie Howe Hat Tricks", numRows));
             String[] titles = { "Rank", "First", "Last", "No. Hat Tricks" };
-            TablePrinter.printResultSetWithRank(rs, titles, numRows);
-
-            rs.close();
-            pstmt.close();
+            TablePrinter.printRowsWithRank(rows, titles, numRows);
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
     }
 
@@ -838,19 +950,8 @@ public class HockeyDB {
 
     // box formatting output
     private void printBoxedText(String text) {
-        int width = text.length() + 4;
-        System.out.println();
-        printBorder(width);
-        System.out.println("| " + text + " |");
-        printBorder(width);
-        System.out.println();
-    }
-
-    private static void printBorder(int width) {
-        for (int i = 0; i < width; i++) {
-            System.out.print("-");
-        }
-        System.out.println();
+        String border = "-".repeat(text.length() + 4);
+        System.out.print("\n" + border + "\n| " + text + " |\n" + border + "\n\n");
     }
 
     private String getStat(String line) {
@@ -881,42 +982,241 @@ public class HockeyDB {
         }
     }
 
-    private boolean playerExists(String first, String last) {
+    // rows of a query, read from the server
+    private List<List<String>> queryRows(String id, String sql, Object... params) throws SQLException {
+        long start = System.nanoTime();
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            PreparedStatement pstmt = prepare(lease, id, sql, params);
+            start = QueryMetrics.phase(QueryMetrics.Phase.PREPARE, start);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                start = QueryMetrics.phase(QueryMetrics.Phase.EXECUTE, start);
+                List<List<String>> rows = TablePrinter.readRows(rs);
+                QueryMetrics.phase(QueryMetrics.Phase.FETCH, start);
+                QueryMetrics.read("server", rows);
+                return rows;
+            }
+        }
+    }
+
+    // prints the query's rows while they are read, no more than TablePrinter's window is held at
+    // once. For the commands whose results are not cached
+    private void printQuery(String id, String sql, TablePrinter.Heading heading, String[] titles,
+            Supplier<List<List<String>>> localQuery, Object... params) throws SQLException {
+        if (localOnly) {
+            List<List<String>> rows = localRows(localQuery);
+            if (heading.print(rows.isEmpty())) {
+                TablePrinter.printRows(rows, titles);
+            }
+            return;
+        }
+
+        long start = System.nanoTime();
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            PreparedStatement pstmt = prepare(lease, id, sql, params);
+            start = QueryMetrics.phase(QueryMetrics.Phase.PREPARE, start);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                QueryMetrics.phase(QueryMetrics.Phase.EXECUTE, start);
+                TablePrinter.Stream table = TablePrinter.stream(rs, titles);
+                if (heading.print(table.isEmpty())) {
+                    table.print();
+                }
+                QueryMetrics.read("server", table.rows(), table.bytes());
+            }
+        }
+    }
+
+    private void printQuery(String id, String sql, String heading, String[] titles,
+            Supplier<List<List<String>>> localQuery, Object... params) throws SQLException {
+        printQuery(id, sql, heading(heading), titles, localQuery, params);
+    }
+
+    // a heading that boxes the text above the table
+    private TablePrinter.Heading heading(String text) {
+        return empty -> {
+            printBoxedText(text);
+            return true;
+        };
+    }
+
+    // prints the first page of a listing, 'next' and 'prev' page through it from then on
+    private void printFirstPage(KeysetPager listing) throws SQLException {
+        pager = listing;
+        printPage(listing, KeysetPager.Direction.FIRST);
+    }
+
+    public void nextPage() {
+        turnPage(KeysetPager.Direction.NEXT);
+    }
+
+    public void prevPage() {
+        turnPage(KeysetPager.Direction.PREV);
+    }
+
+    private void turnPage(KeysetPager.Direction direction) {
+        KeysetPager listing = pager;
+        if (listing == null) {
+            System.out.println("\nNothing to page through, 'next' and 'prev' follow sAll, sp and gs");
+            return;
+        }
+        String refusal = listing.refuse(direction);
+        if (refusal != null) {
+            System.out.println("\n" + refusal);
+            return;
+        }
         try {
+            printPage(listing, direction);
+        } catch (SQLException e) {
+            QueryJobs.report(e);
+        }
+    }
+
+    // one page of the listing, read from the server from the key of the page shown before it
+    private void printPage(KeysetPager listing, KeysetPager.Direction direction) throws SQLException {
+        long shown;
+        if (listing.isLocal()) {
+            List<List<String>> rows = listing.localPage(direction);
+            listing.moved(direction);
+            if (!listing.heading.print(rows.isEmpty())) {
+                return;
+            }
+            TablePrinter.printRows(rows, listing.titles);
+            shown = rows.size();
+        } else {
+            long start = System.nanoTime();
+            try (ConnectionPool.Lease lease = pool.borrow()) {
+                PreparedStatement pstmt = prepare(lease, listing.id, listing.sql(direction), listing.params(direction));
+                start = QueryMetrics.phase(QueryMetrics.Phase.PREPARE, start);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    QueryMetrics.phase(QueryMetrics.Phase.EXECUTE, start);
+                    TablePrinter.Stream table = TablePrinter.streamPage(rs, listing.titles, KeysetPager.PAGE_ROWS);
+                    boolean printed = listing.heading.print(table.isEmpty());
+                    shown = printed ? table.print() : 0;
+                    listing.moved(direction, table.firstKey(), table.lastKey(), printed && table.hasMore());
+                    QueryMetrics.read("server", table.rows(), table.bytes());
+                    if (!printed) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        String footer = listing.footer((int) shown);
+        if (footer != null) {
+            System.out.println(footer);
+        }
+    }
+
+    // the lease's statement for the query with its parameters bound
+    private PreparedStatement prepare(ConnectionPool.Lease lease, String id, String sql, Object[] params)
+            throws SQLException {
+        PreparedStatement pstmt = statements.prepare(lease, id, sql);
+        for (int i = 0; i < params.length; i++) {
+            pstmt.setObject(i + 1, params[i]);
+        }
+        // the driver reads a window's worth of rows at a time
+        pstmt.setFetchSize(TablePrinter.WINDOW);
+        return pstmt;
+    }
+
+    // the local engine's (or the name index's) answer, its time is the command's execute phase
+    private List<List<String>> localRows(Supplier<List<List<String>>> query) {
+        long start = System.nanoTime();
+        List<List<String>> rows = query.get();
+        QueryMetrics.phase(QueryMetrics.Phase.EXECUTE, start);
+        QueryMetrics.read("local", rows);
+        return rows;
+    }
+
+    // after a load or delete, cached results and the listing being paged are out of date.
+    // Called again once the tables are final, a background job that read the cache version
+    // while they were changing has cached half-loaded rows under it
+    private void dataChanged() {
+        cache.invalidate();
+        pager = null;
+    }
+
+    // rows of a query whose result only changes with the data, from the cache when possible
+    private List<List<String>> cachedRows(String id, String sql, Object... params) throws SQLException {
+        ResultCache.Key key = new ResultCache.Key(id, sql, params);
+        long version = cache.version();
+        List<List<String>> rows = cache.get(key);
+        if (rows != null) {
+            QueryMetrics.cacheHit();
+            return rows;
+        }
+
+        rows = queryRows(id, sql, params);
+        cache.put(key, version, rows);
+        return rows;
+    }
+
+    // a miss in the name index is checked in the database, which another session may have reloaded
+    private boolean playerExists(String first, String last) {
+        NameIndex index = names();
+        if (index != null && index.contains(first, last)) {
+            return true;
+        }
+        if (localOnly) {
+            return found(local.playerExists(first, last), String.format("Error: '%s %s' was not found.", first, last));
+        }
+        try (ConnectionPool.Lease lease = pool.borrow()) {
             String sql = "SELECT * from players WHERE firstName = ? AND lastName = ?;";
-            PreparedStatement pstmt = connection.prepareStatement(sql);
+            PreparedStatement pstmt = statements.prepare(lease, "playerExists", sql);
+            pstmt.setMaxRows(1);
             pstmt.setString(1, first);
             pstmt.setString(2, last);
-            ResultSet rs = pstmt.executeQuery();
-
-            if (rs.next()) {
-                return true;
-            } else {
-                printBoxedText(String.format("Error: '%s %s' was not found.", first, last));
-                return false;
+            // the result set used to be left open, holding a server cursor per check
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    if (index != null) {
+                        // another session loaded players since the index was read, the cached
+                        // results are just as old
+                        cache.invalidate();
+                        loadNames();
+                    }
+                    return true;
+                } else {
+                    printBoxedText(String.format("Error: '%s %s' was not found.", first, last));
+                    return false;
+                }
             }
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
         return false;
     }
 
     private boolean teamExists(String teamName) {
-        try {
+        if (localOnly) {
+            return found(local.teamExists(teamName), String.format("Error: the team '%s' was not found.", teamName));
+        }
+        try (ConnectionPool.Lease lease = pool.borrow()) {
             String sql = "SELECT * from teams WHERE teamName = ?;";
-            PreparedStatement pstmt = connection.prepareStatement(sql);
+            PreparedStatement pstmt = statements.prepare(lease, "teamExists", sql);
+            pstmt.setMaxRows(1);
             pstmt.setString(1, teamName);
-            ResultSet rs = pstmt.executeQuery();
-
-            if (rs.next()) {
-                return true;
-            } else {
-                printBoxedText(String.format("Error: the team '%s' was not found.", teamName));
-                return false;
+            // the result set used to be left open, holding a server cursor per check
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return true;
+                } else {
+                    printBoxedText(String.format("Error: the team '%s' was not found.", teamName));
+                    return false;
+                }
             }
         } catch (SQLException e) {
-            e.printStackTrace(System.out);
+            QueryJobs.report(e);
         }
         return false;
     }
+
+    private boolean found(boolean exists, String notFound) {
+        if (!exists) {
+            printBoxedText(notFound);
+        }
+        return exists;
+    }
 }
@@ -1,14 +1,24 @@
 
+import java.util.List;
 import java.util.Scanner;
+import java.util.function.Function;
 
 public class HockeyDBInterface {
 
+	private static final String PROMPT = "\nEnter a command (h for help) > ";
+
+	// names listed when a player name could be completed several ways
+	private static final int MAX_COMPLETIONS = 12;
+
 	private static final String[] SEASONS = {"2012-2013", "2013-2014", "2014-2015", "2015-2016", "2016-2017", "2017-2018", "2018-2019", "2019-2020"};
 
 	public static void main(String[] args) throws Exception {
-		
-		HockeyDB db = new HockeyDB();
+
+		// --local answers every command in memory from the binary snapshot, without the server
+		boolean local = args.length > 0 && args[0].equals("--local");
+		HockeyDB db = new HockeyDB(local);
 		runConsole(db);
+		db.close();
 		
 		System.out.println("\nThank you for using the NHL database!\n");
 	}
@@ -17,14 +27,22 @@ public class HockeyDBInterface {
 	public static void runConsole(HockeyDB db) {
 
 		Scanner console = new Scanner(System.in);
+		QueryJobs jobs = new QueryJobs(PROMPT, db.queryMetrics());
+		jobs.handleInterrupt();
 		welcomeMsg();
-		System.out.print("\nEnter a command (h for help) > ");
+		System.out.print(PROMPT);
 		String line = console.nextLine();
 		String[] parts;
 		String arg = "";
 
 		while (line != null && !line.equals("q")) {
+			// a trailing '&' runs the query in the background
+			boolean background = line.trim().endsWith("&");
+			if (background)
+				line = line.substring(0, line.lastIndexOf('&')).trim();
+
 			parts = line.split("\\s+");
+			arg = "";
 			if (line.indexOf(" ") > 0)
 				arg = line.substring(line.indexOf(" ")).trim();
 
@@ -42,27 +60,27 @@ public class HockeyDBInterface {
 			
 			// (13) all Teams
 			else if (parts[0].equals("teams")) {
-				db.allTeams();
+				jobs.run(parts[0], background, () -> db.allTeams());
 			} 
 
 			// (14) search for a player by name
 			else if (parts[0].equals("sp")) { 
 				String name = getTextInput(console, "\nEnter a player name (first, last, or both): ");
-				db.searchPlayer(name);
+				jobs.run(parts[0], background, () -> db.searchPlayer(name));
 			} 
 
 			// (2) total goals, assists, points for player
 			else if (parts[0].equals("tgap")) {
-				String firstName = getTextInput(console, "\nEnter the players first name: " );
-				String lastName = getTextInput(console, "\nEnter the players last name: " );
-				db.totalGAP(firstName, lastName);
+				String firstName = getPlayerName(console, "\nEnter the players first name: ", prefix -> db.completeFirstName(prefix));
+				String lastName = getPlayerName(console, "\nEnter the players last name: ", prefix -> db.completeLastName(firstName, prefix));
+				jobs.run(parts[0], background, () -> db.totalGAP(firstName, lastName));
 			}
 
 			// (1) total goals against each team for a player
 			else if (parts[0].equals("tgbt")) { 
-				String firstName = getTextInput(console, "\nEnter the players first name: " );
-				String lastName = getTextInput(console, "\nEnter the players last name: " );
-				db.totalGoalsByTeam(firstName, lastName);
+				String firstName = getPlayerName(console, "\nEnter the players first name: ", prefix -> db.completeFirstName(prefix));
+				String lastName = getPlayerName(console, "\nEnter the players last name: ", prefix -> db.completeLastName(firstName, prefix));
+				jobs.run(parts[0], background, () -> db.totalGoalsByTeam(firstName, lastName));
 			}
 
 			// (11) top25 player by goals/assists/points/plusMinus
@@ -86,8 +104,9 @@ public class HockeyDBInterface {
 				}
 
 				String season = getSeason(console);
-				
-				db.top25byStat(statType, season);
+				String stat = statType;
+
+				jobs.run(parts[0], background, () -> db.top25byStat(stat, season));
 			}
 
 			// (15) a team's game schedule
@@ -95,7 +114,7 @@ public class HockeyDBInterface {
 				String teamName = getTextInput(console, "\nEnter the team name: ");
 				String season = getSeason(console);
 
-				db.schedule(teamName, season);
+				jobs.run(parts[0], background, () -> db.schedule(teamName, season));
 			}
 
 			// (9) total play off wins for a team X in season Y
@@ -103,63 +122,121 @@ public class HockeyDBInterface {
 				String teamName = getTextInput(console, "\nEnter the team name: ");
 				String season = getSeason(console);
 				
-				db.totalPlayoffWins(teamName, season);
+				jobs.run(parts[0], background, () -> db.totalPlayoffWins(teamName, season));
 			} 
 
 			// (4) total goals score at all venues
 			else if (parts[0].equals("gba")) {
 				String season = getSeason(console);
-				db.goalsByVenue(season);
+				jobs.run(parts[0], background, () -> db.goalsByVenue(season));
 			}
 
 			// (6) Top N players having played on the most teams 
 			else if (parts[0].equals("mt")) {
 				int numRows = getValidInt("players", console); // "players" is the type we want to list
-				db.topTeamsPlayedFor(numRows);
+				jobs.run(parts[0], background, () -> db.topTeamsPlayedFor(numRows));
 			}
 
 			// (7) top N players who have taken the most penalities
 			else if(parts[0].equals("tpp")) {
 				int numRows = getValidInt("players", console); // "refs" is the type we want to list
-				db.topPlayersPenalties(numRows);
+				jobs.run(parts[0], background, () -> db.topPlayersPenalties(numRows));
 			}
 
 			// (5) top N officials calling most penalties against away teams
 			else if (parts[0].equals("topNO")) { //Top N Officials
 				int numRows = getValidInt("refs", console); // "refs" is the type we want to list
-				db.topNOfficialPenalties(numRows);
+				jobs.run(parts[0], background, () -> db.topNOfficialPenalties(numRows));
 			}
 
 			// (12) goals per shot for all players, descending order
 			else if(parts[0].equals("gps")) {
-				String firstName = getTextInput(console, "\nEnter the players first name: " );
-				String lastName = getTextInput(console, "\nEnter the players last name: " );
-				db.goalsPerShotAllPlayers(firstName, lastName);
+				String firstName = getPlayerName(console, "\nEnter the players first name: ", prefix -> db.completeFirstName(prefix));
+				String lastName = getPlayerName(console, "\nEnter the players last name: ", prefix -> db.completeLastName(firstName, prefix));
+				jobs.run(parts[0], background, () -> db.goalsPerShotAllPlayers(firstName, lastName));
 			}
 
 			// (16) players with the most gordie howe hat tricks
 			else if(parts[0].equals("ghh")) {
 				int numRows = getValidInt("players", console); // "refs" is the type we want to list
-				db.gordieHoweHatTrick(numRows);
+				jobs.run(parts[0], background, () -> db.gordieHoweHatTrick(numRows));
 			}
 
 			// (10) players who have scored against all teams except their current team
 			else if(parts[0].equals("sAll")) {
-				db.playersScoredAgainstAllTeams();
+				jobs.run(parts[0], background, () -> db.playersScoredAgainstAllTeams());
 			}
 
 			// (8) average shift length per period
 			else if (parts[0].equals("aslp")) {
-				db.avgShiftLengthByPeriod();
+				jobs.run(parts[0], background, () -> db.avgShiftLengthByPeriod());
 			}
 
 			// (3) avg shift length before the player scores, gets shot, or penalty
 			else if (parts[0].equals("asl")) {
-				db.avgShiftByPlay();
+				jobs.run(parts[0], background, () -> db.avgShiftByPlay());
+			}
+
+			// pages of the last sAll, sp or gs listing
+			else if (parts[0].equals("next")) {
+				jobs.run(parts[0], background, () -> db.nextPage());
+			}
+
+			else if (parts[0].equals("prev")) {
+				jobs.run(parts[0], background, () -> db.prevPage());
+			}
+
+			else if (parts[0].equals("jobs")) {
+				jobs.list();
+			}
+
+			else if (parts[0].equals("cancel")) {
+				try {
+					jobs.cancel(Integer.parseInt(arg));
+				} catch (NumberFormatException e) {
+					System.out.println("Sorry, 'cancel' needs a job number (see 'jobs')");
+				}
+			}
+
+			else if (parts[0].equals("timeout")) {
+				try {
+					jobs.setTimeout(Integer.parseInt(arg));
+				} catch (NumberFormatException e) {
+					System.out.println("Sorry, 'timeout' needs a number of seconds (0 for no limit)");
+				}
+			}
+
+			else if (parts[0].equals("cache")) {
+				if (arg.equals("clear"))
+					db.clearCache();
+				else
+					db.cacheStats();
+			}
+
+			else if (parts[0].equals("stmts")) {
+				db.statementStats();
+			}
+
+			else if (parts[0].equals("stats")) {
+				if (arg.equals("clear"))
+					db.clearQueryStats();
+				else
+					db.queryStats();
+			}
+
+			else if (parts[0].equals("plain")) {
+				TablePrinter.setPlain(!arg.equals("off"));
+				System.out.println(TablePrinter.isPlain()
+						? "\nTables print as tab separated values, 'plain off' pads them again"
+						: "\nTables print padded into columns");
 			}
 
 			else if (parts[0].equals("REPOP")) {
-				db.repopulate();
+				db.repopulate(LoadOptions.parse(arg));
+			}
+
+			else if (parts[0].equals("INGEST")) {
+				db.ingest(arg);
 			}
 
 			else if (parts[0].equals("DELETE")) {
@@ -169,11 +246,12 @@ public class HockeyDBInterface {
 			else
 				System.out.printf("\nSorry, '%s' is an unknown command\n", line);
 
-			System.out.print("\nEnter a command (h for help) > ");
+			System.out.print(PROMPT);
 
 			line = console.nextLine();
 		}
 
+		jobs.shutdown();
 		console.close();
 	}
 
@@ -232,8 +310,46 @@ public class HockeyDBInterface {
 		System.out.println("----------------+----------------------------------------------------+---------------------------------------------------------------");
 		System.out.println("  teams         |  Displays all teams in the NHL                     |  none");	  
 		System.out.println("----------------+----------------------------------------------------+---------------------------------------------------------------");
-		System.out.println("  REPOP         |  Repopulates the database                          |  none       ");
-		System.out.println("                |  *Process may take up to 30 mins, usually faster*  |           ");	  
+		System.out.println("  <command> &   |  Runs a query command in the background, its      |  e.g. 'sAll &'");
+		System.out.println("                |  result is printed when it finishes                |");
+		System.out.println("----------------+----------------------------------------------------+---------------------------------------------------------------");
+		System.out.println("  next / prev   |  The next or previous page of the last sAll, sp    |  none");
+		System.out.println("                |  or gs listing (50 rows a page)                    |");
+		System.out.println("----------------+----------------------------------------------------+---------------------------------------------------------------");
+		System.out.println("  jobs          |  Lists running queries with their elapsed time     |  none");
+		System.out.println("----------------+----------------------------------------------------+---------------------------------------------------------------");
+		System.out.println("  cancel        |  Cancels a running query (Ctrl-C cancels the       |  job number from 'jobs'");
+		System.out.println("                |  one in the foreground)                            |");
+		System.out.println("----------------+----------------------------------------------------+---------------------------------------------------------------");
+		System.out.println("  timeout       |  Seconds a query may run before it is stopped     |  seconds, 0 for no limit (default 60, longer for sAll/ghh)");
+		System.out.println("----------------+----------------------------------------------------+---------------------------------------------------------------");
+		System.out.println("  cache         |  Result cache hits, misses and evictions           |  clear: empty the cache");
+		System.out.println("----------------+----------------------------------------------------+---------------------------------------------------------------");
+		System.out.println("  stmts         |  Prepared statement reuse per query (hits/misses)  |  none");
+		System.out.println("----------------+----------------------------------------------------+---------------------------------------------------------------");
+		System.out.println("  stats         |  Query latency of this session (p50/p95/max) and  |  clear: forget the timings so far");
+		System.out.println("                |  where it went: prepare, execute, fetch, render    |");
+		System.out.println("----------------+----------------------------------------------------+---------------------------------------------------------------");
+		System.out.println("  plain         |  Prints tables as tab separated values, faster    |  off: pad tables into columns again");
+		System.out.println("                |  and easier to pipe into other tools              |");
+		System.out.println("----------------+----------------------------------------------------+---------------------------------------------------------------");
+		System.out.println("  REPOP         |  Repopulates the database                          |  --workers N: number of parallel loader connections (default 4)");
+		System.out.println("                |  *Process may take up to 30 mins, usually faster*  |  --mode batch|prepared|bulk: text inserts, bound parameters or bulk copy");
+		System.out.println("                |                                                    |  --batch-size N: starting rows per batch, --table-lock: bulk copy lock");
+		System.out.println("                |                                                    |  --parse-only: only read the chunks and report reader MB/s");
+		System.out.println("                |                                                    |  --resume: continue an interrupted REPOP from its last commit");
+		System.out.println("                |                                                    |  --commit-every N: rows per commit, --no-journal-table: file journal only");
+		System.out.println("                |                                                    |  --min-batch/--max-batch/--min-commit/--max-commit N: tuner bounds");
+		System.out.println("                |                                                    |  --no-tune: keep the batch size and commit interval fixed");	  
+		System.out.println("                |                                                    |  --defer-constraints: load without keys, build them at the end");
+		System.out.println("                |                                                    |  --write-snapshot: convert the chunks to the binary snapshot");
+		System.out.println("                |                                                    |  --snapshot: load from the snapshot (with --parse-only: read it)");
+		System.out.println("                |                                                    |  --pipeline [--queue-depth N]: reader/parser/writer stages");
+		System.out.println("                |                                                    |  --from-csv [--csv-dir D]: load straight from the csv files");
+		System.out.println("                |                                                    |  --no-progress, --metrics-file F: progress line, JSON summary");
+		System.out.println("----------------+----------------------------------------------------+---------------------------------------------------------------");
+		System.out.println("  INGEST        |  Merges a delta of new games into the database     |  path: .sql file or folder of inserts      ");
+		System.out.println("                |  (new rows inserted, changed rows updated)         |  (default ../populate_data/delta/)");
 		System.out.println("----------------+----------------------------------------------------+---------------------------------------------------------------");
 		System.out.println("  DELETE        |  Delete the entire database                        |  none       ");
 		System.out.println("                |                                                    |           ");	  
@@ -367,6 +483,26 @@ public class HockeyDBInterface {
 		return name;
 	}
 
+	// a player's first or last name, the start of it is enough: one name starting with the
+	// input is taken, several are listed to choose from. Names the index does not know are
+	// taken as typed, the command reports them
+	private static String getPlayerName(Scanner console, String prompt, Function<String, List<String>> complete) {
+		while (true) {
+			String name = getTextInput(console, prompt).trim();
+			List<String> names = complete.apply(name);
+			if (names.isEmpty() || names.contains(name)) {
+				return name;
+			}
+			if (names.size() == 1) {
+				System.out.println("  -> " + names.get(0));
+				return names.get(0);
+			}
+			int shown = Math.min(names.size(), MAX_COMPLETIONS);
+			System.out.printf("\n%d names start with '%s': %s%s\n", names.size(), name,
+					String.join(", ", names.subList(0, shown)), shown < names.size() ? ", ..." : "");
+		}
+	}
+
 	private static int getValidInt(String type, Scanner console) {
 		int n = 0;
 		String line = "";
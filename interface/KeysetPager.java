@@ -0,0 +1,137 @@
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * The listing of the last sAll, sp or gs, printed a page at a time with 'next' and 'prev'.
+ *
+ * Pages are found by their sort key instead of an offset: the next page is the rows after
+ * the last key shown, the previous one the rows before the first key shown, e.g.
+ *
+ *   SELECT * FROM (<listing>) page WHERE pageKey > ? ORDER BY pageKey
+ *   OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY;
+ *
+ * so the server seeks to the key and reads one page, never the rows of the pages before it.
+ * The key is unique within a listing (playerID for the players, the start time for a
+ * team's games) and is the listing's last column, named pageKey; it is not printed. A page
+ * reads one row more than it shows to know if there is a next page.
+ *
+ * With --local the whole listing is already in memory and a page is a slice of it.
+ */
+public class KeysetPager {
+
+    static final int PAGE_ROWS = 50;
+
+    enum Direction {
+        FIRST, NEXT, PREV
+    }
+
+    final String id;
+    final String[] titles;
+    final TablePrinter.Heading heading;
+
+    private final String with;
+    private final String listing;
+    private final Object[] params;
+    private final List<List<String>> localRows;
+
+    private int page = 0;
+    private Object firstKey;
+    private Object lastKey;
+    private boolean more = false;
+
+    // with is the query's WITH clause ("" if none), listing a SELECT whose last column is pageKey
+    KeysetPager(String id, String with, String listing, String[] titles, TablePrinter.Heading heading, Object... params) {
+        this.id = id;
+        this.with = with;
+        this.listing = listing;
+        this.titles = titles;
+        this.heading = heading;
+        this.params = params;
+        this.localRows = null;
+    }
+
+    // the local engine's whole listing
+    KeysetPager(String id, List<List<String>> localRows, String[] titles, TablePrinter.Heading heading) {
+        this.id = id;
+        this.with = "";
+        this.listing = null;
+        this.titles = titles;
+        this.heading = heading;
+        this.params = new Object[0];
+        this.localRows = localRows;
+    }
+
+    boolean isLocal() {
+        return localRows != null;
+    }
+
+    // why the page cannot be shown, null if it can
+    synchronized String refuse(Direction direction) {
+        if (direction == Direction.NEXT && !more) {
+            return "Sorry, this is the last page of the " + id + " listing";
+        }
+        if (direction == Direction.PREV && page <= 1) {
+            return "Sorry, this is the first page of the " + id + " listing";
+        }
+        return null;
+    }
+
+    synchronized String sql(Direction direction) {
+        String rows = "SELECT * FROM (" + listing + ") page ";
+        switch (direction) {
+            case NEXT:
+                return with + rows + "WHERE pageKey > ? ORDER BY pageKey OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY;";
+            case PREV:
+                // the page before, read backwards from the first key and put back in order
+                return with + "SELECT * FROM (" + rows
+                        + "WHERE pageKey < ? ORDER BY pageKey DESC OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY) previous ORDER BY pageKey;";
+            default:
+                return with + rows + "ORDER BY pageKey OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY;";
+        }
+    }
+
+    // the listing's parameters, then the key and the rows to read
+    synchronized Object[] params(Direction direction) {
+        Object[] bound = Arrays.copyOf(params, params.length + (direction == Direction.FIRST ? 1 : 2));
+        int next = params.length;
+        if (direction != Direction.FIRST) {
+            bound[next++] = direction == Direction.NEXT ? lastKey : firstKey;
+        }
+        bound[next] = direction == Direction.PREV ? PAGE_ROWS : PAGE_ROWS + 1;
+        return bound;
+    }
+
+    // the rows of the page in the local listing
+    synchronized List<List<String>> localPage(Direction direction) {
+        int from = Math.min((target(direction) - 1) * PAGE_ROWS, localRows.size());
+        return localRows.subList(from, Math.min(from + PAGE_ROWS, localRows.size()));
+    }
+
+    // the page shown, its first and last keys and whether rows follow it
+    synchronized void moved(Direction direction, Object first, Object last, boolean rowsAfter) {
+        page = target(direction);
+        firstKey = first;
+        lastKey = last;
+        more = direction == Direction.PREV || rowsAfter;
+    }
+
+    // the page of the local listing shown
+    synchronized void moved(Direction direction) {
+        page = target(direction);
+        more = page * PAGE_ROWS < localRows.size();
+    }
+
+    private int target(Direction direction) {
+        return direction == Direction.FIRST ? 1 : direction == Direction.NEXT ? page + 1 : page - 1;
+    }
+
+    // the line under a page, rows shown and how to move on
+    synchronized String footer(int rows) {
+        if (page == 1 && !more) {
+            return null;
+        }
+        int from = (page - 1) * PAGE_ROWS + 1;
+        String moves = more && page > 1 ? "'next' or 'prev' for more" : more ? "'next' for more" : "'prev' to go back";
+        return String.format("\nRows %,d-%,d of the %s listing (page %d), %s", from, from + rows - 1, id, page, moves);
+    }
+}
@@ -0,0 +1,239 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Records how far REPOP got so an interrupted load can be resumed with 'REPOP --resume'.
+ *
+ * Every commit of a worker writes (chunk, table, rows committed) to a local journal file,
+ * one line per commit:
+ *
+ *   schema
+ *   commit sql_chunk_23.sql plays 40000
+ *   done sql_chunk_23.sql plays 47311
+ *   complete
+ *
+ * On SQL Server the same position is also written to the loadJournal table inside the
+ * transaction being committed, so the database itself knows exactly what was committed, and
+ * resume reads it from there. 'REPOP --no-journal-table' (and the embedded database) keep only
+ * the file, which is best-effort: its line is written after the commit, so a crash between the
+ * two leaves rows in the database the file does not know about, and --resume then fails on
+ * their primary keys. Start such a load over instead of resuming it.
+ */
+public class LoadJournal {
+
+    static final Path JOURNAL_FILE = Paths.get(Populator.PATH_TO_CHUNKS, "..", "repop.journal");
+
+    private static final String CREATE_TABLE = """
+            IF OBJECT_ID('loadJournal') IS NULL
+            CREATE TABLE loadJournal (
+                chunk varchar(30),
+                tableName varchar(30),
+                committedRows INT NOT NULL,
+                done BIT NOT NULL,
+                PRIMARY KEY (chunk, tableName)
+            );
+            """;
+
+    private final boolean useTable;
+    private final Map<String, int[]> positions = new HashMap<>();
+    private boolean schemaDone = false;
+    private boolean complete = false;
+    private BufferedWriter writer;
+
+    private LoadJournal(boolean useTable) {
+        this.useTable = useTable;
+    }
+
+    // fresh load: forget any earlier journal
+    public static LoadJournal start(Connection connection, boolean useTable) throws IOException, SQLException {
+        LoadJournal journal = new LoadJournal(useTable);
+        journal.writer = new BufferedWriter(new FileWriter(JOURNAL_FILE.toFile(), false));
+
+        if (useTable) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_TABLE);
+                statement.execute("DELETE FROM loadJournal;");
+            }
+        }
+        return journal;
+    }
+
+    // resumed load: read what was committed before, from the table when it is used
+    public static LoadJournal resume(Connection connection, boolean useTable) throws IOException, SQLException {
+        LoadJournal journal = new LoadJournal(useTable);
+
+        if (Files.exists(JOURNAL_FILE)) {
+            journal.readFile(Files.readAllLines(JOURNAL_FILE));
+        }
+        if (useTable) {
+            journal.readTable(connection);
+        }
+
+        journal.writer = new BufferedWriter(new FileWriter(JOURNAL_FILE.toFile(), true));
+        return journal;
+    }
+
+    public boolean isSchemaDone() {
+        return schemaDone;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public synchronized boolean isDone(String file_name, String table) {
+        int[] position = positions.get(key(file_name, table));
+        return position != null && position[1] == 1;
+    }
+
+    // rows of this segment committed by an earlier run
+    public synchronized int committedRows(String file_name, String table) {
+        int[] position = positions.get(key(file_name, table));
+        return position == null ? 0 : position[0];
+    }
+
+    public synchronized void schemaCreated() throws IOException {
+        schemaDone = true;
+        writeLine("schema");
+    }
+
+    public synchronized void loadComplete() throws IOException {
+        complete = true;
+        writeLine("complete");
+    }
+
+    public Checkpoint checkpoint(Connection connection, String file_name, String table, BatchTuner tuner) {
+        return new Checkpoint(connection, file_name, table, committedRows(file_name, table), tuner);
+    }
+
+    public synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            // every line was flushed when it was written
+        }
+    }
+
+    private synchronized void committed(String file_name, String table, int rows, boolean done) throws IOException {
+        positions.put(key(file_name, table), new int[] { rows, done ? 1 : 0 });
+        writeLine(String.format("%s %s %s %d", done ? "done" : "commit", file_name, table, rows));
+    }
+
+    private void writeLine(String line) throws IOException {
+        writer.write(line);
+        writer.newLine();
+        writer.flush();
+    }
+
+    private void readFile(List<String> lines) {
+        for (String line : lines) {
+            String[] parts = line.trim().split(" ");
+
+            if (parts[0].equals("schema")) {
+                schemaDone = true;
+            } else if (parts[0].equals("complete")) {
+                complete = true;
+            } else if (parts.length == 4 && (parts[0].equals("commit") || parts[0].equals("done"))) {
+                positions.put(key(parts[1], parts[2]), new int[] { Integer.parseInt(parts[3]), parts[0].equals("done") ? 1 : 0 });
+            }
+        }
+    }
+
+    // the table is written in the same transaction as the rows, so it wins over the file
+    private void readTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE);
+            try (ResultSet rs = statement.executeQuery("SELECT chunk, tableName, committedRows, done FROM loadJournal;")) {
+                while (rs.next()) {
+                    positions.put(key(rs.getString(1), rs.getString(2)), new int[] { rs.getInt(3), rs.getBoolean(4) ? 1 : 0 });
+                }
+            }
+        }
+    }
+
+    private static String key(String file_name, String table) {
+        return file_name + " " + table;
+    }
+
+    /*
+     * Commit point of one segment. Loaders skip the first skipRows() inserts (already
+     * committed by an earlier run) and call commit() every commitInterval() rows.
+     */
+    public class Checkpoint {
+        private final Connection connection;
+        private final String file_name;
+        private final String table;
+        private final int skipRows;
+        private final BatchTuner tuner;
+
+        Checkpoint(Connection connection, String file_name, String table, int skipRows, BatchTuner tuner) {
+            this.connection = connection;
+            this.file_name = file_name;
+            this.table = table;
+            this.skipRows = skipRows;
+            this.tuner = tuner;
+        }
+
+        public int skipRows() {
+            return skipRows;
+        }
+
+        public int commitInterval() {
+            return tuner.commitInterval();
+        }
+
+        // commits everything sent so far, 'rows' counts the segment's inserts from the start of the chunk
+        public void commit(int rows) throws SQLException, IOException {
+            commit(rows, false);
+        }
+
+        public void finish(int rows) throws SQLException, IOException {
+            commit(rows, true);
+        }
+
+        private void commit(int rows, boolean done) throws SQLException, IOException {
+            long start = System.nanoTime();
+            if (useTable) {
+                record(rows, done);
+            }
+            connection.commit();
+            tuner.recordCommit(table, System.nanoTime() - start);
+            committed(file_name, table, rows, done);
+        }
+
+        private void record(int rows, boolean done) throws SQLException {
+            String update = "UPDATE loadJournal SET committedRows = ?, done = ? WHERE chunk = ? AND tableName = ?;";
+            try (PreparedStatement pstmt = connection.prepareStatement(update)) {
+                pstmt.setInt(1, rows);
+                pstmt.setBoolean(2, done);
+                pstmt.setString(3, file_name);
+                pstmt.setString(4, table);
+
+                if (pstmt.executeUpdate() > 0) {
+                    return;
+                }
+            }
+
+            String insert = "INSERT INTO loadJournal (chunk, tableName, committedRows, done) VALUES (?, ?, ?, ?);";
+            try (PreparedStatement pstmt = connection.prepareStatement(insert)) {
+                pstmt.setString(1, file_name);
+                pstmt.setString(2, table);
+                pstmt.setInt(3, rows);
+                pstmt.setBoolean(4, done);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+}
@@ -0,0 +1,340 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Live metrics of a REPOP: rows and batches per table, executeBatch and commit latency
+ * histograms and bytes read from the chunks.
+ *
+ * While the load runs a progress line is redrawn every second with the overall rate, the
+ * table being loaded fastest right now, batch latency percentiles and an ETA. At the end
+ * the whole summary is written as JSON so runs of different loader settings can be compared.
+ */
+public class LoadMetrics {
+
+    static final String DEFAULT_FILE = "../populate_data/repop-metrics.json";
+
+    private static final long PROGRESS_MILLIS = 1000;
+
+    // smoothing of the rate used for the ETA, higher follows the latest second more closely
+    private static final double RATE_WEIGHT = 0.3;
+
+    private final long start = System.nanoTime();
+    private final Instant startedAt = Instant.now();
+    private final Map<String, TableMetrics> tables = new ConcurrentSkipListMap<>();
+    private final Histogram batchLatency = new Histogram();
+    private final Histogram commitLatency = new Histogram();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final Set<String> chunksRead = ConcurrentHashMap.newKeySet();
+
+    private volatile long expectedRows = 0;
+    private Thread progress;
+    private volatile boolean stopped = false;
+
+    public void batch(String table, int batches, long batchRows, long nanos) {
+        table(table).batch(batches, batchRows, nanos);
+        rows.addAndGet(batchRows);
+        // a bulk copy call covers several server batches, count it at its average latency
+        for (int i = 0; i < batches; i++) {
+            batchLatency.record(nanos / batches);
+        }
+    }
+
+    public void commit(String table, long nanos) {
+        table(table).commits.incrementAndGet();
+        commitLatency.record(nanos);
+    }
+
+    // a chunk is read once per table it holds, its size only counts the first time
+    public void bytesRead(String file_name, long bytes) {
+        if (chunksRead.add(file_name)) {
+            bytesRead.addAndGet(bytes);
+        }
+    }
+
+    // rows this run still has to load, for the ETA
+    public void expectRows(long count) {
+        expectedRows = count;
+    }
+
+    public long rows() {
+        return rows.get();
+    }
+
+    // prints a message over the progress line, which is redrawn below it
+    public void println(String message) {
+        synchronized (System.out) {
+            System.out.println(progress != null && !stopped ? String.format("\r%-120s", message) : message);
+        }
+    }
+
+    private TableMetrics table(String table) {
+        return tables.computeIfAbsent(table, name -> new TableMetrics());
+    }
+
+    /* progress line */
+
+    public void startProgress() {
+        progress = new Thread(this::runProgress, "repop-progress");
+        progress.setDaemon(true);
+        progress.start();
+    }
+
+    public void stopProgress() {
+        if (progress != null && !stopped) {
+            stopped = true;
+            progress.interrupt();
+            try {
+                progress.join(PROGRESS_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            System.out.println();
+        }
+    }
+
+    private void runProgress() {
+        long lastRows = 0;
+        long lastTime = System.nanoTime();
+        double rate = 0;
+        Map<String, Long> lastTableRows = new ConcurrentHashMap<>();
+
+        while (!stopped) {
+            try {
+                Thread.sleep(PROGRESS_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            long current = rows.get();
+            double seconds = (now - lastTime) / 1e9;
+            double latest = (current - lastRows) / seconds;
+            rate = rate == 0 ? latest : RATE_WEIGHT * latest + (1 - RATE_WEIGHT) * rate;
+
+            // table that gained the most rows in the last second
+            String busiest = null;
+            long busiestRows = 0;
+            for (Map.Entry<String, TableMetrics> entry : tables.entrySet()) {
+                long tableRows = entry.getValue().rows.get();
+                long gained = tableRows - lastTableRows.getOrDefault(entry.getKey(), 0L);
+                lastTableRows.put(entry.getKey(), tableRows);
+                if (gained > busiestRows) {
+                    busiest = entry.getKey();
+                    busiestRows = gained;
+                }
+            }
+
+            synchronized (System.out) {
+                System.out.print("\r" + progressLine(current, rate, busiest, busiestRows / seconds));
+            }
+            lastRows = current;
+            lastTime = now;
+        }
+    }
+
+    private String progressLine(long current, double rate, String busiest, double busiestRate) {
+        StringBuilder line = new StringBuilder();
+        long expected = expectedRows;
+
+        if (expected > 0) {
+            line.append(String.format("[%3.0f%%] %,d of %,d rows", 100.0 * Math.min(current, expected) / expected, current, expected));
+        } else {
+            line.append(String.format("%,d rows", current));
+        }
+        line.append(String.format(" | %,.0f rows/s", rate));
+        if (busiest != null) {
+            line.append(String.format(" | %s %,.0f rows/s", busiest, busiestRate));
+        }
+        if (batchLatency.count() > 0) {
+            line.append(String.format(" | batch p50 %s p99 %s", millis(batchLatency.percentile(0.50)), millis(batchLatency.percentile(0.99))));
+        }
+        if (expected > 0 && rate > 0) {
+            line.append(" | ETA ").append(duration(Math.max(0, expected - current) / rate));
+        }
+
+        // pad so a shorter line fully covers the last one
+        return String.format("%-120s", line);
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.0f ms", nanos / 1e6);
+    }
+
+    private static String duration(double seconds) {
+        long s = Math.round(seconds);
+        return String.format("%d:%02d:%02d", s / 3600, s / 60 % 60, s % 60);
+    }
+
+    /* summary */
+
+    public void printLatencies() {
+        System.out.println();
+        System.out.printf("%-15s%10s%10s%10s%10s%10s%12s\n", "Latency (ms)", "Count", "Mean", "p50", "p90", "p99", "Max");
+        batchLatency.print("executeBatch");
+        commitLatency.print("commit");
+        System.out.printf("\nRead %.1f MB of chunks.\n", bytesRead.get() / 1048576.0);
+    }
+
+    // writes the summary as JSON, 'phases' are the phase times of the loader
+    public void writeJson(String path, LoadOptions options, BatchTuner tuner, Map<String, Double> phases) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        StringBuilder json = new StringBuilder("{\n");
+
+        json.append(field("startedAt", quote(startedAt.toString()))).append(",\n");
+        json.append(field("seconds", number(seconds))).append(",\n");
+        json.append(field("mode", quote(options.mode.name().toLowerCase()))).append(",\n");
+        json.append(field("workers", String.valueOf(options.workers))).append(",\n");
+        json.append(field("pipeline", String.valueOf(options.pipeline))).append(",\n");
+        json.append(field("finalBatchSize", String.valueOf(tuner.batchSize()))).append(",\n");
+        json.append(field("finalCommitInterval", String.valueOf(tuner.commitInterval()))).append(",\n");
+        json.append(field("rows", String.valueOf(rows.get()))).append(",\n");
+        json.append(field("rowsPerSecond", number(seconds > 0 ? rows.get() / seconds : 0))).append(",\n");
+        json.append(field("bytesRead", String.valueOf(bytesRead.get()))).append(",\n");
+
+        json.append("  \"phases\": {");
+        String separator = "\n";
+        for (Map.Entry<String, Double> phase : phases.entrySet()) {
+            json.append(separator).append("  ").append(field(phase.getKey(), number(phase.getValue())));
+            separator = ",\n";
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"tables\": {");
+        separator = "\n";
+        for (Map.Entry<String, TableMetrics> entry : tables.entrySet()) {
+            json.append(separator).append("    ").append(quote(entry.getKey())).append(": ").append(entry.getValue().toJson());
+            separator = ",\n";
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"batchLatency\": ").append(batchLatency.toJson()).append(",\n");
+        json.append("  \"commitLatency\": ").append(commitLatency.toJson()).append("\n");
+        json.append("}\n");
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(path))) {
+            writer.write(json.toString());
+            System.out.println("Wrote the load metrics to " + path);
+        } catch (IOException e) {
+            System.err.println("Error writing the load metrics to " + path);
+            e.printStackTrace();
+        }
+    }
+
+    private static String field(String name, String value) {
+        return "  " + quote(name) + ": " + value;
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static class TableMetrics {
+        final AtomicLong rows = new AtomicLong();
+        final AtomicLong batches = new AtomicLong();
+        final AtomicLong batchNanos = new AtomicLong();
+        final AtomicLong commits = new AtomicLong();
+        final AtomicLong first = new AtomicLong();
+        final AtomicLong last = new AtomicLong();
+
+        void batch(int count, long batchRows, long nanos) {
+            long now = System.nanoTime();
+            first.compareAndSet(0, now - nanos);
+            last.set(now);
+            rows.addAndGet(batchRows);
+            batches.addAndGet(count);
+            batchNanos.addAndGet(nanos);
+        }
+
+        // wall time from the first batch sent to the last one finished
+        double seconds() {
+            return first.get() > 0 ? (last.get() - first.get()) / 1e9 : 0;
+        }
+
+        String toJson() {
+            double seconds = seconds();
+            return String.format(Locale.ROOT,
+                    "{\"rows\": %d, \"seconds\": %.3f, \"rowsPerSecond\": %.1f, \"batches\": %d, \"batchSeconds\": %.3f, \"commits\": %d}",
+                    rows.get(), seconds, seconds > 0 ? rows.get() / seconds : 0, batches.get(), batchNanos.get() / 1e9, commits.get());
+        }
+    }
+
+    // power of two buckets from 1 microsecond up, bucket i holds latencies below 2^i us
+    static class Histogram {
+        private static final int BUCKETS = 32;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(1, nanos / 1000);
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            counts.incrementAndGet(bucket);
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        long count() {
+            return count.get();
+        }
+
+        // upper bound of the bucket holding the p-th latency, in nanos
+        long percentile(double p) {
+            long target = (long) Math.ceil(p * count.get());
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= target && seen > 0) {
+                    return Math.min(upperNanos(i), maxNanos.get());
+                }
+            }
+            return maxNanos.get();
+        }
+
+        private static long upperNanos(int bucket) {
+            return (1L << bucket) * 1000;
+        }
+
+        void print(String name) {
+            long n = count.get();
+            System.out.printf("%-15s%,10d%10.1f%10.1f%10.1f%10.1f%12.1f\n", name, n,
+                    n > 0 ? totalNanos.get() / 1e6 / n : 0, percentile(0.50) / 1e6, percentile(0.90) / 1e6,
+                    percentile(0.99) / 1e6, maxNanos.get() / 1e6);
+        }
+
+        String toJson() {
+            long n = count.get();
+            StringBuilder json = new StringBuilder();
+            json.append(String.format(Locale.ROOT,
+                    "{\"count\": %d, \"meanMs\": %.3f, \"p50Ms\": %.3f, \"p90Ms\": %.3f, \"p99Ms\": %.3f, \"maxMs\": %.3f, \"buckets\": [",
+                    n, n > 0 ? totalNanos.get() / 1e6 / n : 0, percentile(0.50) / 1e6, percentile(0.90) / 1e6,
+                    percentile(0.99) / 1e6, maxNanos.get() / 1e6));
+
+            String separator = "";
+            for (int i = 0; i < BUCKETS; i++) {
+                if (counts.get(i) > 0) {
+                    json.append(separator).append(String.format(Locale.ROOT, "{\"belowMs\": %.3f, \"count\": %d}",
+                            upperNanos(i) / 1e6, counts.get(i)));
+                    separator = ", ";
+                }
+            }
+            return json.append("]}").toString();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.sql.Connection;
+
+/*
+ * Options for the REPOP command, e.g. 'REPOP --workers 8 --mode bulk --batch-size 5000 --table-lock'
+ *
+ * Batch size and commit interval are starting points, the tuner moves them between the
+ * --min/--max bounds while the load runs unless --no-tune is given.
+ */
+public class LoadOptions {
+
+    private static final int DEFAULT_WORKERS = 4;
+
+    enum Mode {
+        BATCH,      // each insert sent as text in a Statement batch
+        PREPARED,   // inserts parsed and bound to cached multi-row prepared statements
+        BULK        // rows streamed through the driver's bulk copy API
+    }
+
+    int workers = DEFAULT_WORKERS;
+    Mode mode = Mode.BATCH;
+
+    // rows per executeBatch round trip, 0 means the default of the mode
+    int batchSize = 0;
+    int minBatch = 50;
+    int maxBatch = 50000;
+    boolean tune = true;
+
+    // bulk mode only
+    boolean tableLock = false;
+
+    // only read and decode the chunks, no database work
+    boolean parseOnly = false;
+
+    // rows per commit, each commit is a resume point in the journal
+    int commitInterval = 10000;
+    int minCommit = 1000;
+    int maxCommit = 200000;
+    boolean resume = false;
+
+    // the loadJournal table, on by default on SQL Server, --no-journal-table keeps only the file
+    boolean journalTable = false;
+    boolean fileJournalOnly = false;
+
+    // create the tables without keys and add them after the rows are in
+    boolean deferConstraints = false;
+
+    // convert the chunks to the binary snapshot, or load from it instead of the chunks
+    boolean writeSnapshot = false;
+    boolean fromSnapshot = false;
+
+    // load straight from the csv files in this directory instead of the chunks
+    boolean fromCsv = false;
+    String csvPath = CsvIngest.PATH_TO_CSV;
+
+    // reader, parser and writer stages connected by queues of this many batches
+    boolean pipeline = false;
+    int queueDepth = 8;
+
+    // live progress line and where the JSON summary goes
+    boolean progress = true;
+    String metricsFile = LoadMetrics.DEFAULT_FILE;
+
+    public static LoadOptions parse(String args) {
+        LoadOptions options = new LoadOptions();
+        String[] parts = args.trim().split("\\s+");
+
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+
+            if (part.isEmpty()) {
+                continue;
+            }
+
+            if (part.equals("--workers") && i + 1 < parts.length) {
+                options.workers = parsePositive(part, parts[++i], DEFAULT_WORKERS);
+            } else if (part.equals("--mode") && i + 1 < parts.length) {
+                options.mode = parseMode(parts[++i], options.mode);
+            } else if (part.equals("--batch-size") && i + 1 < parts.length) {
+                options.batchSize = parsePositive(part, parts[++i], options.batchSize);
+            } else if (part.equals("--min-batch") && i + 1 < parts.length) {
+                options.minBatch = parsePositive(part, parts[++i], options.minBatch);
+            } else if (part.equals("--max-batch") && i + 1 < parts.length) {
+                options.maxBatch = parsePositive(part, parts[++i], options.maxBatch);
+            } else if (part.equals("--min-commit") && i + 1 < parts.length) {
+                options.minCommit = parsePositive(part, parts[++i], options.minCommit);
+            } else if (part.equals("--max-commit") && i + 1 < parts.length) {
+                options.maxCommit = parsePositive(part, parts[++i], options.maxCommit);
+            } else if (part.equals("--no-tune")) {
+                options.tune = false;
+            } else if (part.equals("--table-lock")) {
+                options.tableLock = true;
+            } else if (part.equals("--parse-only")) {
+                options.parseOnly = true;
+            } else if (part.equals("--commit-every") && i + 1 < parts.length) {
+                options.commitInterval = parsePositive(part, parts[++i], options.commitInterval);
+            } else if (part.equals("--resume")) {
+                options.resume = true;
+            } else if (part.equals("--journal-table")) {
+                options.journalTable = true;
+            } else if (part.equals("--no-journal-table")) {
+                options.fileJournalOnly = true;
+            } else if (part.equals("--defer-constraints")) {
+                options.deferConstraints = true;
+            } else if (part.equals("--write-snapshot")) {
+                options.writeSnapshot = true;
+            } else if (part.equals("--snapshot")) {
+                options.fromSnapshot = true;
+            } else if (part.equals("--from-csv")) {
+                options.fromCsv = true;
+            } else if (part.equals("--csv-dir") && i + 1 < parts.length) {
+                options.fromCsv = true;
+                options.csvPath = parts[++i];
+            } else if (part.equals("--pipeline")) {
+                options.pipeline = true;
+            } else if (part.equals("--queue-depth") && i + 1 < parts.length) {
+                options.queueDepth = parsePositive(part, parts[++i], options.queueDepth);
+            } else if (part.equals("--no-progress")) {
+                options.progress = false;
+            } else if (part.equals("--metrics-file") && i + 1 < parts.length) {
+                options.metricsFile = parts[++i];
+            } else {
+                System.out.printf("Ignoring unknown REPOP option '%s'\n", part);
+            }
+        }
+
+        // the pipeline's writers bind the parsed rows to prepared inserts
+        if (options.pipeline) {
+            options.mode = Mode.PREPARED;
+        }
+
+        return options;
+    }
+
+    // one segment loader per worker connection for the chosen mode
+    SegmentLoader createLoader(Connection connection, BatchTuner tuner) {
+        switch (mode) {
+            case PREPARED:
+                return new PreparedInsertLoader(connection, tuner);
+            case BULK:
+                return new BulkCopyLoader(connection, tuner, tableLock);
+            default:
+                return (file_name, table, checkpoint) -> Populator.loadSegment(connection, file_name, table, checkpoint, tuner);
+        }
+    }
+
+    // one tuner shared by all workers of a load
+    BatchTuner createTuner(LoadMetrics metrics) {
+        return new BatchTuner(tune, initialBatchSize(), minBatch, maxBatch, commitInterval, minCommit, maxCommit, metrics);
+    }
+
+    private int initialBatchSize() {
+        if (batchSize > 0) {
+            return batchSize;
+        }
+        switch (mode) {
+            case PREPARED:
+                return 1000;
+            case BULK:
+                return 10000;
+            default:
+                return 50; // optimal text batch size according to oracle
+        }
+    }
+
+    private static Mode parseMode(String value, Mode fallback) {
+        for (Mode mode : Mode.values()) {
+            if (mode.name().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        System.out.printf("Sorry, '%s' is not a loader mode, using %s\n", value, fallback.name().toLowerCase());
+        return fallback;
+    }
+
+    private static int parsePositive(String option, String value, int fallback) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException nfe) {
+            // fall through to the warning
+        }
+        System.out.printf("Sorry, '%s' is not a valid value for %s, using %d\n", value, option, fallback);
+        return fallback;
+    }
+}
@@ -0,0 +1,409 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/*
+ * Loads segments as a pipeline of stages connected by bounded queues ('REPOP --pipeline'):
+ *
+ *   reader -> parser -> writer 1..N
+ *
+ * The reader copies the inserts of each segment out of the mapped chunk into slabs, the
+ * parser decodes the slabs into rows and every writer binds rows to multi-row prepared
+ * inserts on its own connection. A full queue blocks the stage in front of it (backpressure)
+ * and an empty one blocks the stage behind it. Each stage counts the time it spends working
+ * and waiting on either side, so the summary shows which stage limits the load.
+ *
+ * Every segment is owned by one writer and its slabs arrive in order, so the commit positions
+ * in the journal stay contiguous and 'REPOP --resume' works as in the other modes. The reader
+ * takes one slab from each writer's segment in turn so a slow writer does not starve the others.
+ */
+public class LoadPipeline {
+
+    private static final int SLAB_BYTES = 256 * 1024;
+    private static final long POLL_MILLIS = 100;
+
+    private final List<Connection> connections;
+    private final List<PreparedInsertLoader> loaders;
+    private final LoadJournal journal;
+    private final BatchTuner tuner;
+    private final LoadMetrics metrics;
+    private final int queueDepth;
+
+    // counters are kept over all groups of a load
+    private final StageStats readerStats = new StageStats("reader", "MB");
+    private final StageStats parserStats = new StageStats("parser", "rows");
+    private final List<StageStats> writerStats = new ArrayList<>();
+
+    private volatile boolean failed;
+
+    public LoadPipeline(List<Connection> connections, List<PreparedInsertLoader> loaders, LoadJournal journal, BatchTuner tuner,
+            LoadMetrics metrics, int queueDepth) {
+        this.connections = connections;
+        this.loaders = loaders;
+        this.journal = journal;
+        this.tuner = tuner;
+        this.metrics = metrics;
+        this.queueDepth = queueDepth;
+
+        for (int i = 1; i <= connections.size(); i++) {
+            writerStats.add(new StageStats("writer " + i, "rows"));
+        }
+    }
+
+    // loads the segments, 'done' is called as each one is committed, false if any stage failed
+    public boolean load(List<Segment> segments, BiConsumer<String, Long> done) {
+        if (segments.isEmpty()) {
+            return true;
+        }
+
+        int writers = connections.size();
+        BlockingQueue<Slab> slabs = new ArrayBlockingQueue<>(queueDepth);
+        List<BlockingQueue<RowBatch>> batches = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            batches.add(new ArrayBlockingQueue<>(queueDepth));
+        }
+
+        failed = false;
+        ExecutorService pool = Executors.newFixedThreadPool(writers + 2);
+        List<Future<?>> stages = new ArrayList<>();
+
+        stages.add(pool.submit(() -> stage(readerStats, () -> read(segments, slabs, writers))));
+        stages.add(pool.submit(() -> stage(parserStats, () -> parse(slabs, batches))));
+        for (int i = 0; i < writers; i++) {
+            int writer = i;
+            stages.add(pool.submit(() -> stage(writerStats.get(writer), () -> write(writer, batches.get(writer), done))));
+        }
+
+        for (Future<?> stage : stages) {
+            try {
+                stage.get();
+            } catch (Exception e) {
+                failed = true;
+            }
+        }
+        pool.shutdown();
+
+        return !failed;
+    }
+
+    public void printUtilisation() {
+        System.out.println();
+        System.out.printf("%-12s%8s%14s%14s%14s\n", "Stage", "Busy", "Input wait", "Output wait", "Work");
+        readerStats.print();
+        parserStats.print();
+        for (StageStats stats : writerStats) {
+            stats.print();
+        }
+    }
+
+    // runs one stage on the current thread, any failure stops every stage
+    private void stage(StageStats stats, StageBody body) {
+        stats.started();
+        try {
+            body.run();
+        } catch (IOException e) {
+            failed = true;
+            System.err.printf("Pipeline %s stage failed reading a chunk.\n", stats.name);
+            e.printStackTrace();
+        } catch (SQLException | IllegalArgumentException e) {
+            failed = true;
+            System.err.printf("Pipeline %s stage failed.\n", stats.name);
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            failed = true;
+            Thread.currentThread().interrupt();
+        } finally {
+            stats.finished();
+        }
+    }
+
+    /* reader: copies one slab of statements from each writer's current segment in turn */
+    private void read(List<Segment> segments, BlockingQueue<Slab> slabs, int writers) throws IOException, InterruptedException {
+        Deque<Segment> waiting = new ArrayDeque<>(segments);
+        ReadState[] active = new ReadState[writers];
+        int open = 0;
+
+        try {
+            while (!waiting.isEmpty() || open > 0) {
+                for (int w = 0; w < writers; w++) {
+                    if (active[w] == null && !waiting.isEmpty()) {
+                        Segment segment = waiting.poll();
+                        segment.writer = w;
+                        active[w] = new ReadState(segment, journal.committedRows(segment.file_name, segment.table));
+                        open++;
+                    }
+                    if (active[w] == null) {
+                        continue;
+                    }
+
+                    Slab slab = active[w].nextSlab();
+                    readerStats.work += slab.length;
+                    if (slab.last) {
+                        metrics.bytesRead(active[w].segment.file_name, active[w].scanner.size());
+                        active[w].scanner.close();
+                        active[w] = null;
+                        open--;
+                    }
+                    if (!readerStats.put(slabs, slab)) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            for (ReadState state : active) {
+                if (state != null) {
+                    state.scanner.close();
+                }
+            }
+            // the parser stops at the end marker, or sooner if the pipeline failed
+            readerStats.put(slabs, Slab.END);
+        }
+    }
+
+    /* parser: decodes each slab into the rows of one batch for the segment's writer */
+    private void parse(BlockingQueue<Slab> slabs, List<BlockingQueue<RowBatch>> batches) throws InterruptedException {
+        try {
+            Slab slab;
+            while ((slab = parserStats.take(slabs)) != null && slab != Slab.END) {
+                RowBatch batch = new RowBatch(slab.segment, slab.endPosition, slab.last);
+                ChunkScanner scanner = new ChunkScanner(slab.bytes, slab.length);
+
+                while (scanner.next()) {
+                    if (batch.columns == null) {
+                        batch.columns = scanner.columns();
+                    }
+                    batch.rows.add(scanner.values(batch.columns.length));
+                }
+                parserStats.work += batch.rows.size();
+
+                if (!parserStats.put(batches.get(slab.segment.writer), batch)) {
+                    return;
+                }
+            }
+        } finally {
+            for (BlockingQueue<RowBatch> queue : batches) {
+                parserStats.put(queue, RowBatch.END);
+            }
+        }
+    }
+
+    /* writer: inserts the rows and commits at the journal's commit points */
+    private void write(int writer, BlockingQueue<RowBatch> batches, BiConsumer<String, Long> done)
+            throws SQLException, IOException, InterruptedException {
+        StageStats stats = writerStats.get(writer);
+        Connection connection = connections.get(writer);
+        PreparedInsertLoader loader = loaders.get(writer);
+        connection.setAutoCommit(false);
+
+        try {
+            RowBatch batch;
+            while ((batch = stats.take(batches)) != null && batch != RowBatch.END) {
+                Segment segment = batch.segment;
+                if (segment.checkpoint == null) {
+                    segment.checkpoint = journal.checkpoint(connection, segment.file_name, segment.table, tuner);
+                }
+
+                for (Object[] row : batch.rows) {
+                    loader.add(segment.table, batch.columns, row);
+                }
+                segment.rows += batch.rows.size();
+                segment.sinceCommit += batch.rows.size();
+                stats.work += batch.rows.size();
+
+                if (batch.last) {
+                    loader.flush(segment.table);
+                    segment.checkpoint.finish(batch.endPosition);
+                    done.accept(segment.table, segment.rows);
+                } else if (segment.sinceCommit >= segment.checkpoint.commitInterval()) {
+                    loader.flush(segment.table);
+                    segment.checkpoint.commit(batch.endPosition);
+                    segment.sinceCommit = 0;
+                }
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            loader.reset();
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackFailed) {
+                // the connection is already broken, the failure is reported by the stage
+            }
+            throw e;
+        }
+    }
+
+    // one chunk's inserts into one table, as in ParallelLoader
+    public static class Segment {
+        final String file_name;
+        final String table;
+
+        // set by the reader, then only touched by the owning writer
+        int writer;
+        LoadJournal.Checkpoint checkpoint;
+        long rows;
+        int sinceCommit;
+
+        public Segment(String file_name, String table) {
+            this.file_name = file_name;
+            this.table = table;
+        }
+    }
+
+    // position of the reader in one segment
+    private static class ReadState {
+        final Segment segment;
+        final ChunkScanner scanner;
+        final byte[] tableBytes;
+        final int skipRows;
+        int position = 0;
+        boolean pending = false;
+
+        ReadState(Segment segment, int skipRows) throws IOException {
+            this.segment = segment;
+            this.scanner = ChunkScanner.chunk(segment.file_name);
+            this.tableBytes = ChunkScanner.tableBytes(segment.table);
+            this.skipRows = skipRows;
+        }
+
+        // the next SLAB_BYTES of inserts (at least one statement), last at the end of the chunk
+        Slab nextSlab() {
+            Slab slab = new Slab(segment, SLAB_BYTES);
+
+            while (pending || scanner.next()) {
+                if (!pending && (!scanner.isInsertInto(tableBytes) || ++position <= skipRows)) {
+                    continue;
+                }
+
+                // the statement that did not fit goes first into the next slab
+                int needed = scanner.statementLength() + 1;
+                if (slab.length > 0 && slab.length + needed > slab.bytes.length) {
+                    pending = true;
+                    slab.endPosition = position - 1;
+                    return slab;
+                }
+                pending = false;
+
+                if (needed > slab.bytes.length) {
+                    slab.bytes = Arrays.copyOf(slab.bytes, needed);
+                }
+                slab.length = scanner.copyStatement(slab.bytes, slab.length);
+                slab.bytes[slab.length++] = '\n';
+            }
+
+            slab.endPosition = position;
+            slab.last = true;
+            return slab;
+        }
+    }
+
+    // raw insert statements of one segment
+    private static class Slab {
+        static final Slab END = new Slab(null, 0);
+
+        final Segment segment;
+        byte[] bytes;
+        int length = 0;
+        int endPosition;
+        boolean last = false;
+
+        Slab(Segment segment, int capacity) {
+            this.segment = segment;
+            this.bytes = new byte[capacity];
+        }
+    }
+
+    // decoded rows of one slab
+    private static class RowBatch {
+        static final RowBatch END = new RowBatch(null, 0, true);
+
+        final Segment segment;
+        final int endPosition;
+        final boolean last;
+        final List<Object[]> rows = new ArrayList<>();
+        String[] columns;
+
+        RowBatch(Segment segment, int endPosition, boolean last) {
+            this.segment = segment;
+            this.endPosition = endPosition;
+            this.last = last;
+        }
+    }
+
+    private interface StageBody {
+        void run() throws IOException, SQLException, InterruptedException;
+    }
+
+    // time one stage spent working and blocked on its input and output queues
+    private class StageStats {
+        final String name;
+        final String unit;
+        long work;
+        long runNanos;
+        long inputWaitNanos;
+        long outputWaitNanos;
+        private long start;
+
+        StageStats(String name, String unit) {
+            this.name = name;
+            this.unit = unit;
+        }
+
+        void started() {
+            start = System.nanoTime();
+        }
+
+        void finished() {
+            runNanos += System.nanoTime() - start;
+        }
+
+        // next item, or null once the pipeline has failed
+        <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+            long waitStart = System.nanoTime();
+            try {
+                T item;
+                while ((item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                    if (failed) {
+                        return null;
+                    }
+                }
+                return item;
+            } finally {
+                inputWaitNanos += System.nanoTime() - waitStart;
+            }
+        }
+
+        // false once the pipeline has failed
+        <T> boolean put(BlockingQueue<T> queue, T item) throws InterruptedException {
+            long waitStart = System.nanoTime();
+            try {
+                while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (failed) {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                outputWaitNanos += System.nanoTime() - waitStart;
+            }
+        }
+
+        void print() {
+            double run = Math.max(1, runNanos);
+            long busy = runNanos - inputWaitNanos - outputWaitNanos;
+            String amount = unit.equals("MB") ? String.format("%.1f MB", work / 1048576.0) : String.format("%,d %s", work, unit);
+            System.out.printf("%-12s%7.0f%%%13.0f%%%13.0f%%%14s\n",
+                    name, 100 * busy / run, 100 * inputWaitNanos / run, 100 * outputWaitNanos / run, amount);
+        }
+    }
+}
@@ -0,0 +1,803 @@
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/*
+ * Answers the 16 commands in memory, for sessions started with --local that have no
+ * database server at all.
+ *
+ * The tables are read once from the binary snapshot (REPOP --write-snapshot builds it from
+ * the sql chunks without a server) into ColumnTables: primitive arrays per column,
+ * dictionary encoded strings and hash indexes on the join keys. The assists are joined to
+ * their plays and the playerSeasonStats rows are summed while loading.
+ *
+ * Each query returns the rows its SQL in HockeyDB returns, as the strings the driver's
+ * getString gives. Names and literals compare the way the server's case-insensitive
+ * collation does. Where the SQL leaves the order open (ties of an ORDER BY, no ORDER BY)
+ * the rows come in primary key order.
+ */
+public class LocalEngine {
+
+    private static final int NULL = ColumnTable.NULL;
+    private static final long NULL_TIME = ColumnTable.NULL_TIME;
+
+    private final ColumnTable teams;
+    private final ColumnTable venues;
+    private final ColumnTable games;
+    private final ColumnTable players;
+    private final ColumnTable playsOn;
+    private final ColumnTable officials;
+    private final ColumnTable officiatedBy;
+    private final ColumnTable shifts;
+    private final ColumnTable plays;
+    private final ColumnTable assists;
+
+    // primary key -> row
+    private final ColumnTable.IntIndex teamRows;
+    private final ColumnTable.IntIndex venueRows;
+    private final ColumnTable.IntIndex gameRows;
+    private final ColumnTable.IntIndex playerRows;
+    private final ColumnTable.IntIndex officialRows;
+    private final ColumnTable.IntIndex shiftRows;
+
+    // foreign key -> rows
+    private final ColumnTable.IntIndex playsByPlayer;
+    private final ColumnTable.IntIndex playsOnByPlayer;
+
+    // joins resolved while loading: the games row of each play, the plays row of each assist
+    private final int[] playGame;
+    private final int[] assistPlay;
+
+    // folded codes of the play types, -1 if no play has the type
+    private final int goal;
+    private final int shot;
+    private final int penalty;
+
+    // players in playerID order, the order of the players table's clustered key
+    private final int[] playerOrder;
+
+    private final List<SeasonLine> seasonLines = new ArrayList<>();
+    private final Map<Integer, List<SeasonLine>> linesByPlayer = new HashMap<>();
+
+    private LocalEngine() throws IOException {
+        teams = ColumnTable.read("teams", "teamID").withTexts("city", "teamName").load();
+        venues = ColumnTable.read("venues", "venueID").withTexts("venueName").load();
+        games = ColumnTable.read("games", "gameID", "homeTeamID", "awayTeamID", "venueID")
+                .withTimes("dateTime").withTexts("type", "outcome", "season").load();
+        players = ColumnTable.read("players", "playerID", "weight").withTimes("birthDate")
+                .withTexts("firstName", "lastName", "nationality", "height", "playerType").load();
+        ColumnTable playsIn = ColumnTable.read("playsIn", "gameID", "playerID", "plusMinus").load();
+        playsOn = ColumnTable.read("playsOn", "playerID", "teamID").withTimes("startDate", "endDate").load();
+        officials = ColumnTable.read("officials", "officialID").withTexts("officialName").load();
+        officiatedBy = ColumnTable.read("officiatedBy", "gameID", "officialID").withTexts("officialType").load();
+        shifts = ColumnTable.read("shifts", "shiftID", "periodNumber", "shiftStart", "shiftEnd").load();
+        plays = ColumnTable.read("plays", "playerID", "gameID", "shiftID").withTexts("playID", "playType").load();
+        assists = ColumnTable.read("assists", "playerID").withTexts("playID").load();
+
+        teamRows = new ColumnTable.IntIndex(teams.ints("teamID"));
+        venueRows = new ColumnTable.IntIndex(venues.ints("venueID"));
+        gameRows = new ColumnTable.IntIndex(games.ints("gameID"));
+        playerRows = new ColumnTable.IntIndex(players.ints("playerID"));
+        officialRows = new ColumnTable.IntIndex(officials.ints("officialID"));
+        shiftRows = new ColumnTable.IntIndex(shifts.ints("shiftID"));
+        playsByPlayer = new ColumnTable.IntIndex(plays.ints("playerID"));
+        playsOnByPlayer = new ColumnTable.IntIndex(playsOn.ints("playerID"));
+
+        int[] playGameIDs = plays.ints("gameID");
+        playGame = new int[plays.rows];
+        for (int r = 0; r < plays.rows; r++) {
+            playGame[r] = gameRows.first(playGameIDs[r]);
+        }
+
+        // playID is the primary key of plays, so each of its codes belongs to one row
+        ColumnTable.Text playIDs = plays.text("playID");
+        int[] playOfCode = new int[playIDs.size()];
+        for (int r = 0; r < plays.rows; r++) {
+            playOfCode[playIDs.code(r)] = r;
+        }
+        ColumnTable.Text assistPlayIDs = assists.text("playID");
+        assistPlay = new int[assists.rows];
+        for (int a = 0; a < assists.rows; a++) {
+            int code = playIDs.codeOf(assistPlayIDs.get(a));
+            assistPlay[a] = code < 0 ? -1 : playOfCode[code];
+        }
+        // the play ids are only needed for this join
+        plays.drop("playID");
+        assists.drop("playID");
+
+        ColumnTable.Text playTypes = plays.text("playType");
+        goal = playTypes.find("Goal");
+        shot = playTypes.find("Shot");
+        penalty = playTypes.find("Penalty");
+
+        int[] playerIDs = players.ints("playerID");
+        playerOrder = sortedRows(playerIDs);
+
+        sumSeasons(playsIn);
+    }
+
+    // reads every table of the snapshot, IOException if a table is missing or damaged
+    public static LocalEngine load() throws IOException {
+        if (!SnapshotWriter.isComplete()) {
+            throw new IOException("the snapshot is incomplete, run 'REPOP --write-snapshot' once every chunk is in "
+                    + Populator.PATH_TO_CHUNKS);
+        }
+        long start = System.nanoTime();
+        LocalEngine engine = new LocalEngine();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Loaded the snapshot into memory: %,d plays, %,d shifts, %,d games in %.1f seconds\n",
+                engine.plays.rows, engine.shifts.rows, engine.games.rows, seconds);
+        return engine;
+    }
+
+    /* the rows of playerSeasonStats, see PlayerSeasonStats.INSERT_SEASONS */
+
+    private void sumSeasons(ColumnTable playsIn) {
+        ColumnTable.Text seasons = games.text("season");
+        Map<Long, SeasonLine> lines = new LinkedHashMap<>();
+
+        int[] playPlayers = plays.ints("playerID");
+        ColumnTable.Text playTypes = plays.text("playType");
+        for (int r = 0; r < plays.rows; r++) {
+            int g = playGame[r];
+            if (g < 0) {
+                continue;
+            }
+            SeasonLine line = line(lines, playPlayers[r], seasons.fold(g));
+            int type = playTypes.fold(r);
+            if (type == goal) {
+                line.goals++;
+            } else if (type == shot) {
+                line.shots++;
+            } else if (type == penalty) {
+                line.penalties++;
+            }
+        }
+
+        int[] assistPlayers = assists.ints("playerID");
+        for (int a = 0; a < assists.rows; a++) {
+            int r = assistPlay[a];
+            if (r < 0 || playGame[r] < 0 || playTypes.fold(r) != goal) {
+                continue;
+            }
+            line(lines, assistPlayers[a], seasons.fold(playGame[r])).assists++;
+        }
+
+        int[] gameIDs = playsIn.ints("gameID");
+        int[] inPlayers = playsIn.ints("playerID");
+        int[] plusMinus = playsIn.ints("plusMinus");
+        for (int r = 0; r < playsIn.rows; r++) {
+            int g = gameRows.first(gameIDs[r]);
+            if (g < 0) {
+                continue;
+            }
+            SeasonLine line = line(lines, inPlayers[r], seasons.fold(g));
+            line.gamesPlayed++;
+            if (plusMinus[r] != NULL) {
+                line.plusMinus = (line.plusMinus == null ? 0 : line.plusMinus) + plusMinus[r];
+            }
+        }
+
+        for (SeasonLine line : lines.values()) {
+            seasonLines.add(line);
+            linesByPlayer.computeIfAbsent(line.playerID, id -> new ArrayList<>()).add(line);
+        }
+    }
+
+    // the line of the player and season, by the season's folded code
+    private SeasonLine line(Map<Long, SeasonLine> lines, int playerID, int season) {
+        long key = ((long) playerID << 32) | (season & 0xFFFFFFFFL);
+        return lines.computeIfAbsent(key, k -> new SeasonLine(playerID, season));
+    }
+
+    /* the commands, numbered as in HockeyDB */
+
+    // (1)
+    public List<List<String>> totalGoalsByTeam(String first, String last) {
+        long now = ColumnTable.toTime(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        int[] homeTeams = games.ints("homeTeamID");
+        int[] awayTeams = games.ints("awayTeamID");
+        long[] dateTimes = games.times("dateTime");
+        int[] playTeams = playsOn.ints("teamID");
+        long[] starts = playsOn.times("startDate");
+        long[] ends = playsOn.times("endDate");
+        ColumnTable.Text playTypes = plays.text("playType");
+        ColumnTable.Text teamNames = teams.text("teamName");
+
+        // teamName -> goals, a team is listed once the player has a play in one of its games
+        Map<Integer, Long> goals = new LinkedHashMap<>();
+        for (int p : playersNamed(first, last)) {
+            int tenures = playsOnByPlayer.slot(players.ints("playerID")[p]);
+            int played = playsByPlayer.slot(players.ints("playerID")[p]);
+            for (int i = played < 0 ? 0 : playsByPlayer.begin(played); played >= 0 && i < playsByPlayer.end(played); i++) {
+                int r = playsByPlayer.row(i);
+                int g = playGame[r];
+                if (g < 0) {
+                    continue;
+                }
+
+                // the home team's goals against come from the away side and the other way around
+                for (int side = 0; side < 2; side++) {
+                    int t = teamRows.first(side == 0 ? homeTeams[g] : awayTeams[g]);
+                    if (t < 0) {
+                        continue;
+                    }
+                    int opponent = side == 0 ? awayTeams[g] : homeTeams[g];
+
+                    long count = 0;
+                    for (int j = tenures < 0 ? 0 : playsOnByPlayer.begin(tenures); tenures >= 0 && j < playsOnByPlayer.end(tenures); j++) {
+                        int po = playsOnByPlayer.row(j);
+                        long end = ends[po] == NULL_TIME ? now : ends[po];
+                        if (playTypes.fold(r) == goal && playTeams[po] == opponent
+                                && dateTimes[g] >= starts[po] && dateTimes[g] <= end) {
+                            count++;
+                        }
+                    }
+                    goals.merge(teamNames.fold(t), count, Long::sum);
+                }
+            }
+        }
+
+        List<Ranked> ranked = new ArrayList<>();
+        for (Map.Entry<Integer, Long> team : goals.entrySet()) {
+            ranked.add(new Ranked(team.getValue(), teamNames.value(team.getKey()), "" + team.getValue()));
+        }
+        return highestFirst(ranked);
+    }
+
+    // (2)
+    public List<List<String>> totalGAP(String first, String last) {
+        ColumnTable.Text seasons = games.text("season");
+        List<SeasonLine> found = new ArrayList<>();
+        for (int p : playersNamed(first, last)) {
+            for (SeasonLine line : linesByPlayer.getOrDefault(players.ints("playerID")[p], List.of())) {
+                if (line.goals > 0 && line.assists > 0) {
+                    found.add(line);
+                }
+            }
+        }
+
+        found.sort(Comparator.comparingInt((SeasonLine line) -> line.playerID)
+                .thenComparing(line -> seasons.value(line.season), Comparator.reverseOrder()));
+
+        List<List<String>> rows = new ArrayList<>();
+        for (SeasonLine line : found) {
+            rows.add(List.of("" + line.playerID, seasons.value(line.season), "" + line.goals, "" + line.assists,
+                    "" + line.points()));
+        }
+        return rows;
+    }
+
+    // (3)
+    public List<List<String>> avgShiftByPlay() {
+        int[] shiftIDs = plays.ints("shiftID");
+        int[] starts = shifts.ints("shiftStart");
+        int[] ends = shifts.ints("shiftEnd");
+        ColumnTable.Text playTypes = plays.text("playType");
+
+        Map<Integer, long[]> lengths = new HashMap<>();
+        for (int r = 0; r < plays.rows; r++) {
+            int s = shiftRows.first(shiftIDs[r]);
+            if (s < 0) {
+                continue;
+            }
+            long[] sum = lengths.computeIfAbsent(playTypes.fold(r), type -> new long[2]);
+            sum[0] += ends[s] - starts[s];
+            sum[1]++;
+        }
+
+        List<List<String>> rows = new ArrayList<>();
+        for (Map.Entry<Integer, long[]> type : lengths.entrySet()) {
+            String name = type.getKey() < 0 ? null : playTypes.value(type.getKey());
+            rows.add(Arrays.asList(name, average(type.getValue())));
+        }
+        rows.sort(Comparator.comparing(row -> String.valueOf(row.get(0))));
+        return rows;
+    }
+
+    // (4)
+    public List<List<String>> goalsByVenue(String season) {
+        ColumnTable.Text seasons = games.text("season");
+        ColumnTable.Text playTypes = plays.text("playType");
+        int[] venueIDs = games.ints("venueID");
+        int wanted = seasons.find(season);
+
+        long[] goals = new long[venues.rows];
+        for (int r = 0; wanted >= 0 && r < plays.rows; r++) {
+            int g = playGame[r];
+            if (g < 0 || playTypes.fold(r) != goal || seasons.fold(g) != wanted) {
+                continue;
+            }
+            int v = venueRows.first(venueIDs[g]);
+            if (v >= 0) {
+                goals[v]++;
+            }
+        }
+
+        List<Ranked> ranked = new ArrayList<>();
+        for (int v : sortedRows(venues.ints("venueID"))) {
+            if (goals[v] > 0) {
+                ranked.add(new Ranked(goals[v], venues.text("venueName").get(v), "" + goals[v]));
+            }
+        }
+        return highestFirst(ranked);
+    }
+
+    // (5)
+    public List<List<String>> topNOfficialPenalties() {
+        int[] playPlayers = plays.ints("playerID");
+        int[] awayTeams = games.ints("awayTeamID");
+        int[] playTeams = playsOn.ints("teamID");
+        ColumnTable.Text playTypes = plays.text("playType");
+
+        // rows of allAwayTeamPenalties per game: a penalty for each tenure on the away team
+        long[] awayPenalties = new long[games.rows];
+        for (int r = 0; r < plays.rows; r++) {
+            int g = playGame[r];
+            if (g < 0 || playTypes.fold(r) != penalty) {
+                continue;
+            }
+            int tenures = playsOnByPlayer.slot(playPlayers[r]);
+            for (int j = tenures < 0 ? 0 : playsOnByPlayer.begin(tenures); tenures >= 0 && j < playsOnByPlayer.end(tenures); j++) {
+                if (playTeams[playsOnByPlayer.row(j)] == awayTeams[g]) {
+                    awayPenalties[g]++;
+                }
+            }
+        }
+
+        int[] gameIDs = officiatedBy.ints("gameID");
+        int[] officialIDs = officiatedBy.ints("officialID");
+        ColumnTable.Text types = officiatedBy.text("officialType");
+        int referee = types.find("Referee");
+
+        long[] called = new long[officials.rows];
+        for (int o = 0; referee >= 0 && o < officiatedBy.rows; o++) {
+            int official = officialRows.first(officialIDs[o]);
+            int g = gameRows.first(gameIDs[o]);
+            if (types.fold(o) == referee && official >= 0 && g >= 0) {
+                called[official] += awayPenalties[g];
+            }
+        }
+
+        List<Ranked> ranked = new ArrayList<>();
+        for (int official : sortedRows(officials.ints("officialID"))) {
+            if (called[official] > 0) {
+                ranked.add(new Ranked(called[official], officials.text("officialName").get(official), "" + called[official]));
+            }
+        }
+        return highestFirst(ranked);
+    }
+
+    // (6)
+    public List<List<String>> topTeamsPlayedFor() {
+        int[] tenurePlayers = playsOn.ints("playerID");
+        long[] teamCounts = new long[players.rows];
+        for (int r = 0; r < playsOn.rows; r++) {
+            int p = playerRows.first(tenurePlayers[r]);
+            if (p >= 0) {
+                teamCounts[p]++;
+            }
+        }
+
+        List<Ranked> ranked = new ArrayList<>();
+        for (int p : playerOrder) {
+            if (teamCounts[p] > 0) {
+                ranked.add(new Ranked(teamCounts[p], firstName(p), lastName(p), "" + teamCounts[p]));
+            }
+        }
+        return highestFirst(ranked);
+    }
+
+    // (7)
+    public List<List<String>> topPlayersPenalties() {
+        int[] playPlayers = plays.ints("playerID");
+        int[] weights = players.ints("weight");
+        ColumnTable.Text playTypes = plays.text("playType");
+        ColumnTable.Text heights = players.text("height");
+
+        // grouped on the name, height and weight rather than the player, as the SQL does
+        Map<List<Integer>, long[]> penalties = new HashMap<>();
+        Map<List<Integer>, Integer> firstRow = new HashMap<>();
+        for (int r = 0; r < plays.rows; r++) {
+            int p = playerRows.first(playPlayers[r]);
+            if (p < 0 || playTypes.fold(r) != penalty) {
+                continue;
+            }
+            List<Integer> key = Arrays.asList(players.text("firstName").fold(p), players.text("lastName").fold(p),
+                    weights[p], heights.fold(p));
+            penalties.computeIfAbsent(key, k -> new long[1])[0]++;
+            firstRow.putIfAbsent(key, p);
+        }
+
+        List<Ranked> ranked = new ArrayList<>();
+        for (int p : playerOrder) {
+            List<Integer> key = Arrays.asList(players.text("firstName").fold(p), players.text("lastName").fold(p),
+                    weights[p], heights.fold(p));
+            if (firstRow.getOrDefault(key, -1) == p) {
+                long count = penalties.get(key)[0];
+                ranked.add(new Ranked(count, firstName(p), lastName(p), heights.get(p), number(weights[p]), "" + count));
+            }
+        }
+        return highestFirst(ranked);
+    }
+
+    // (8)
+    public List<List<String>> avgShiftLengthByPeriod() {
+        int[] periods = shifts.ints("periodNumber");
+        int[] starts = shifts.ints("shiftStart");
+        int[] ends = shifts.ints("shiftEnd");
+
+        Map<Integer, long[]> lengths = new HashMap<>();
+        for (int s = 0; s < shifts.rows; s++) {
+            long[] sum = lengths.computeIfAbsent(periods[s], period -> new long[2]);
+            sum[0] += ends[s] - starts[s];
+            sum[1]++;
+        }
+
+        List<Integer> order = new ArrayList<>(lengths.keySet());
+        order.sort(null);
+        List<List<String>> rows = new ArrayList<>();
+        for (int period : order) {
+            rows.add(List.of("" + period, average(lengths.get(period))));
+        }
+        return rows;
+    }
+
+    // (9)
+    public List<List<String>> totalPlayoffWins(String teamName, String season) {
+        ColumnTable.Text names = teams.text("teamName");
+        ColumnTable.Text types = games.text("type");
+        ColumnTable.Text seasons = games.text("season");
+        ColumnTable.Text outcomes = games.text("outcome");
+        int[] homeTeams = games.ints("homeTeamID");
+        int[] awayTeams = games.ints("awayTeamID");
+        int team = names.find(teamName);
+        int playoffs = types.find("P");
+        int wanted = seasons.find(season);
+        List<Integer> homeWins = List.of(outcomes.find("home win reg"), outcomes.find("home win ot"));
+        List<Integer> awayWins = List.of(outcomes.find("away win reg"), outcomes.find("away win ot"));
+
+        long wins = 0;
+        for (int g = 0; team >= 0 && g < games.rows; g++) {
+            if (types.fold(g) != playoffs || seasons.fold(g) != wanted || outcomes.fold(g) < 0) {
+                continue;
+            }
+            int home = teamRows.first(homeTeams[g]);
+            int away = teamRows.first(awayTeams[g]);
+            if (home >= 0 && names.fold(home) == team && homeWins.contains(outcomes.fold(g))) {
+                wins++;
+            }
+            if (away >= 0 && names.fold(away) == team && awayWins.contains(outcomes.fold(g))) {
+                wins++;
+            }
+        }
+        return List.of(List.of("" + wins, "16"));
+    }
+
+    // (10)
+    public List<List<String>> playersScoredAgainstAllTeams() {
+        int[] homeTeams = games.ints("homeTeamID");
+        int[] awayTeams = games.ints("awayTeamID");
+        long[] dateTimes = games.times("dateTime");
+        int[] playTeams = playsOn.ints("teamID");
+        long[] starts = playsOn.times("startDate");
+        long[] ends = playsOn.times("endDate");
+        ColumnTable.Text playTypes = plays.text("playType");
+
+        List<List<String>> rows = new ArrayList<>();
+        BitSet covered = new BitSet(teams.rows);
+        for (int p : playerOrder) {
+            int playerID = players.ints("playerID")[p];
+            int tenures = playsOnByPlayer.slot(playerID);
+            if (tenures < 0) {
+                // no current team and no goals with a team, only a league without teams is covered
+                if (teams.rows == 0) {
+                    rows.add(List.of(firstName(p), lastName(p)));
+                }
+                continue;
+            }
+            covered.clear();
+
+            // the player's current team
+            for (int j = playsOnByPlayer.begin(tenures); j < playsOnByPlayer.end(tenures); j++) {
+                int po = playsOnByPlayer.row(j);
+                if (ends[po] == NULL_TIME) {
+                    setTeam(covered, playTeams[po]);
+                }
+            }
+
+            // the teams the player scored against, with the team of each tenure the game falls in
+            int played = playsByPlayer.slot(playerID);
+            for (int i = played < 0 ? 0 : playsByPlayer.begin(played); played >= 0 && i < playsByPlayer.end(played); i++) {
+                int r = playsByPlayer.row(i);
+                int g = playGame[r];
+                if (g < 0 || playTypes.fold(r) != goal) {
+                    continue;
+                }
+                for (int j = playsOnByPlayer.begin(tenures); j < playsOnByPlayer.end(tenures); j++) {
+                    int po = playsOnByPlayer.row(j);
+                    if (dateTimes[g] >= starts[po] && (ends[po] == NULL_TIME || dateTimes[g] <= ends[po])) {
+                        setTeam(covered, homeTeams[g] != NULL && homeTeams[g] == playTeams[po] ? awayTeams[g] : homeTeams[g]);
+                    }
+                }
+            }
+
+            if (covered.cardinality() == teams.rows) {
+                rows.add(List.of(firstName(p), lastName(p)));
+            }
+        }
+        return rows;
+    }
+
+    private void setTeam(BitSet covered, int teamID) {
+        int t = teamRows.first(teamID);
+        if (t >= 0) {
+            covered.set(t);
+        }
+    }
+
+    // (11)
+    public List<List<String>> top25byStat(String statType, String season) {
+        int wanted = games.text("season").find(season);
+        List<SeasonLine> found = new ArrayList<>();
+        for (SeasonLine line : seasonLines) {
+            if (wanted >= 0 && line.season == wanted && playerRows.first(line.playerID) >= 0
+                    && line.goals > 0 && line.assists > 0 && line.gamesPlayed > 0) {
+                found.add(line);
+            }
+        }
+
+        // NULLs sort lowest, so a plusMinus of NULL comes last
+        Comparator<SeasonLine> order;
+        if (statType.equals("g")) {
+            order = Comparator.comparingLong(line -> line.goals);
+        } else if (statType.equals("a")) {
+            order = Comparator.comparingLong(line -> line.assists);
+        } else if (statType.equals("+")) {
+            order = Comparator.comparingLong(line -> line.plusMinus == null ? Long.MIN_VALUE : line.plusMinus);
+        } else {
+            order = Comparator.comparingLong(SeasonLine::points);
+        }
+        found.sort(order.reversed());
+
+        List<List<String>> rows = new ArrayList<>();
+        for (SeasonLine line : found.subList(0, Math.min(25, found.size()))) {
+            int p = playerRows.first(line.playerID);
+            rows.add(Arrays.asList(firstName(p), lastName(p), "" + line.goals, "" + line.assists, "" + line.points(),
+                    line.plusMinus == null ? null : "" + line.plusMinus));
+        }
+        return rows;
+    }
+
+    // (12)
+    public List<List<String>> goalsPerShotAllPlayers(String first, String last) {
+        List<List<String>> rows = new ArrayList<>();
+        for (int p : playersNamed(first, last)) {
+            long goals = 0;
+            long shots = 0;
+            for (SeasonLine line : linesByPlayer.getOrDefault(players.ints("playerID")[p], List.of())) {
+                goals += line.goals;
+                shots += line.shots;
+            }
+            if (goals > 0 && shots > 0) {
+                // ROUND(CAST(goals AS REAL) / shots, 4), a REAL comes back as a float's string
+                float average = (float) goals / shots;
+                rows.add(List.of(firstName(p), lastName(p), "" + (float) (Math.round(average * 10000.0) / 10000.0)));
+            }
+        }
+        return rows;
+    }
+
+    // (13)
+    public List<List<String>> allTeams() {
+        List<List<String>> rows = new ArrayList<>();
+        for (int t : sortedRows(teams.ints("teamID"))) {
+            rows.add(Arrays.asList("" + teams.ints("teamID")[t], teams.text("city").get(t), teams.text("teamName").get(t)));
+        }
+        return rows;
+    }
+
+    // (14) every player as sp lists them, in playerID order. NameIndex does the matching
+    public List<List<String>> players() {
+        ColumnTable.Text firstNames = players.text("firstName");
+        ColumnTable.Text lastNames = players.text("lastName");
+
+        List<List<String>> rows = new ArrayList<>(playerOrder.length);
+        for (int p : playerOrder) {
+            long birthDate = players.times("birthDate")[p];
+            rows.add(Arrays.asList(firstNames.get(p), lastNames.get(p), players.text("playerType").get(p),
+                    players.text("nationality").get(p), birthDate == NULL_TIME ? null : ColumnTable.formatDate(birthDate),
+                    players.text("height").get(p), number(players.ints("weight")[p])));
+        }
+        return rows;
+    }
+
+    // (15)
+    public List<List<String>> schedule(String teamName, String season) {
+        String[] years = season.split("-");
+        long from = ColumnTable.toTime(years[0] + "-09-01");
+        long to = ColumnTable.toTime(years[1] + "-07-01");
+
+        ColumnTable.Text names = teams.text("teamName");
+        ColumnTable.Text types = games.text("type");
+        int[] homeTeams = games.ints("homeTeamID");
+        int[] awayTeams = games.ints("awayTeamID");
+        long[] dateTimes = games.times("dateTime");
+        int team = names.find(teamName);
+        int regular = types.find("R");
+
+        // UNION keeps one row per home team, away team and start time
+        Set<List<Long>> seen = new HashSet<>();
+        List<long[]> found = new ArrayList<>();
+        for (int g : sortedRows(games.ints("gameID"))) {
+            if (team < 0 || types.fold(g) != regular || dateTimes[g] == NULL_TIME || dateTimes[g] < from || dateTimes[g] > to) {
+                continue;
+            }
+            int home = teamRows.first(homeTeams[g]);
+            int away = teamRows.first(awayTeams[g]);
+            if (home < 0 || away < 0 || (names.fold(home) != team && names.fold(away) != team)) {
+                continue;
+            }
+            if (seen.add(List.of((long) names.fold(home), (long) names.fold(away), dateTimes[g]))) {
+                found.add(new long[] { home, away, dateTimes[g] });
+            }
+        }
+        found.sort(Comparator.comparingLong(game -> game[2]));
+
+        List<List<String>> rows = new ArrayList<>();
+        for (long[] game : found) {
+            // the games are stored in GMT, shown 6 hours earlier in CST
+            LocalDateTime start = LocalDateTime.parse(String.format("%014d", game[2]), DateTimeFormatter.ofPattern("yyyyMMddHHmmss"))
+                    .minusHours(6);
+            rows.add(List.of(names.get((int) game[0]), names.get((int) game[1]), start.toLocalDate().toString(),
+                    start.toLocalTime().format(DateTimeFormatter.ofPattern("HH:mm:ss"))));
+        }
+        return rows;
+    }
+
+    // (16)
+    public List<List<String>> gordieHoweHatTrick() {
+        int[] playPlayers = plays.ints("playerID");
+        int[] gameIDs = plays.ints("gameID");
+        int[] assistPlayers = assists.ints("playerID");
+        ColumnTable.Text playTypes = plays.text("playType");
+
+        // (player, game) pairs with a penalty and with an assist
+        Set<Long> penalties = new HashSet<>();
+        for (int r = 0; r < plays.rows; r++) {
+            if (playTypes.fold(r) == penalty) {
+                penalties.add(pair(playPlayers[r], gameIDs[r]));
+            }
+        }
+        Set<Long> assisted = new HashSet<>();
+        for (int a = 0; a < assists.rows; a++) {
+            if (assistPlay[a] >= 0) {
+                assisted.add(pair(assistPlayers[a], gameIDs[assistPlay[a]]));
+            }
+        }
+
+        // one per goal in such a game
+        long[] hatTricks = new long[players.rows];
+        for (int r = 0; r < plays.rows; r++) {
+            int p = playerRows.first(playPlayers[r]);
+            long key = pair(playPlayers[r], gameIDs[r]);
+            if (p >= 0 && playTypes.fold(r) == goal && penalties.contains(key) && assisted.contains(key)) {
+                hatTricks[p]++;
+            }
+        }
+
+        List<Ranked> ranked = new ArrayList<>();
+        for (int p : playerOrder) {
+            if (hatTricks[p] > 0) {
+                ranked.add(new Ranked(hatTricks[p], firstName(p), lastName(p), "" + hatTricks[p]));
+            }
+        }
+        return highestFirst(ranked);
+    }
+
+    public boolean playerExists(String first, String last) {
+        return !playersNamed(first, last).isEmpty();
+    }
+
+    public boolean teamExists(String teamName) {
+        return teams.text("teamName").find(teamName) >= 0;
+    }
+
+    /* helpers */
+
+    // rows of the players with this first and last name, in playerID order
+    private List<Integer> playersNamed(String first, String last) {
+        ColumnTable.Text firstNames = players.text("firstName");
+        ColumnTable.Text lastNames = players.text("lastName");
+        int firstCode = firstNames.find(first);
+        int lastCode = lastNames.find(last);
+
+        List<Integer> found = new ArrayList<>();
+        for (int p : playerOrder) {
+            if (firstCode >= 0 && lastCode >= 0 && firstNames.fold(p) == firstCode && lastNames.fold(p) == lastCode) {
+                found.add(p);
+            }
+        }
+        return found;
+    }
+
+    private String firstName(int p) {
+        return players.text("firstName").get(p);
+    }
+
+    private String lastName(int p) {
+        return players.text("lastName").get(p);
+    }
+
+    // rows ordered by the key column, e.g. a primary key
+    private static int[] sortedRows(int[] keys) {
+        return IntStream.range(0, keys.length).boxed()
+                .sorted(Comparator.comparingInt(row -> keys[row]))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    // AVG of an int column is an int, truncated
+    private static String average(long[] sumAndCount) {
+        return "" + sumAndCount[0] / sumAndCount[1];
+    }
+
+    private static String number(int value) {
+        return value == NULL ? null : "" + value;
+    }
+
+    private static long pair(int playerID, int gameID) {
+        return ((long) playerID << 32) | (gameID & 0xFFFFFFFFL);
+    }
+
+    // rows sorted on their count, highest first, ties in the order they were added
+    private static List<List<String>> highestFirst(List<Ranked> ranked) {
+        ranked.sort(Comparator.comparingLong((Ranked entry) -> entry.count).reversed());
+        List<List<String>> rows = new ArrayList<>(ranked.size());
+        for (Ranked entry : ranked) {
+            rows.add(entry.row);
+        }
+        return rows;
+    }
+
+    private static class Ranked {
+        final long count;
+        final List<String> row;
+
+        Ranked(long count, String... row) {
+            this.count = count;
+            this.row = Arrays.asList(row);
+        }
+    }
+
+    // one row of playerSeasonStats
+    private static class SeasonLine {
+        final int playerID;
+        final int season;
+        long goals;
+        long assists;
+        long shots;
+        long penalties;
+        Long plusMinus;
+        long gamesPlayed;
+
+        SeasonLine(int playerID, int season) {
+            this.playerID = playerID;
+            this.season = season;
+        }
+
+        long points() {
+            return goals + assists;
+        }
+    }
+}
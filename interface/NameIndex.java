@@ -0,0 +1,221 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/*
+ * The players' names in memory: sp, the player checks of tgbt, tgap and gps and the
+ * console's name completion are answered here instead of by the database.
+ *
+ * Names are folded: lower case, accents taken off their letters. sp finds the folded query
+ * anywhere in the folded "first last", as its LIKE '%name%' on the first, last and full name
+ * did, now also ignoring accents (and taking % and _ literally).
+ *
+ * Every three characters of a folded name are a trigram, packed into an int. A
+ * ColumnTable.IntIndex maps each trigram to the players whose name has it, in playerID
+ * order, so a search reads the players of the query's rarest trigram and checks only those.
+ * A query shorter than a trigram checks every name.
+ *
+ * Completion is a prefix search in the sorted folded first names, and in the last names of
+ * the players with a given first name.
+ *
+ * HockeyDB builds it at startup from one read of the players table (or from the local
+ * engine) and again after REPOP, INGEST and DELETE. As another session can reload the
+ * database, it is also read again once it is as old as the result cache's ttl, and when a
+ * player check misses here but the database has the player.
+ */
+public class NameIndex {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    // a folded character past this shares its trigram bits, the match is checked anyway
+    private static final int MAX_CHAR = 0x3FF;
+
+    // System.nanoTime() when the players were read
+    final long built = System.nanoTime();
+
+    // the sp rows (first, last, type, nationality, birth date, height, weight) in playerID order
+    private final List<List<String>> players;
+
+    // folded "first last" of each player
+    private final String[] folded;
+
+    // trigram -> its positions in gramPlayers, the player of each (player, trigram) pair
+    private final ColumnTable.IntIndex grams;
+    private final int[] gramPlayers;
+
+    // lower case "first\nlast", the names the server's case-insensitive = would find
+    private final Set<String> names = new HashSet<>();
+
+    private final Completions firstNames;
+    private final Map<String, Completions> lastNames = new HashMap<>();
+
+    public NameIndex(List<List<String>> players) {
+        this.players = players;
+        folded = new String[players.size()];
+
+        List<String> firsts = new ArrayList<>();
+        Map<String, List<String>> lastsByFirst = new HashMap<>();
+        int pairs = 0;
+        for (int p = 0; p < folded.length; p++) {
+            String first = players.get(p).get(0);
+            String last = players.get(p).get(1);
+            folded[p] = fold(first) + " " + fold(last);
+            pairs += Math.max(0, folded[p].length() - 2);
+
+            if (first != null && last != null) {
+                names.add(exact(first, last));
+                firsts.add(first);
+                lastsByFirst.computeIfAbsent(exact(first), f -> new ArrayList<>()).add(last);
+            }
+        }
+
+        // each player's distinct trigrams, players in order so every trigram's players are too
+        int[] keys = new int[pairs];
+        gramPlayers = new int[pairs];
+        int next = 0;
+        for (int p = 0; p < folded.length; p++) {
+            int[] own = trigrams(folded[p]);
+            Arrays.sort(own);
+            for (int g = 0; g < own.length; g++) {
+                if (g == 0 || own[g] != own[g - 1]) {
+                    keys[next] = own[g];
+                    gramPlayers[next++] = p;
+                }
+            }
+        }
+        grams = new ColumnTable.IntIndex(Arrays.copyOf(keys, next));
+
+        firstNames = new Completions(firsts);
+        for (Map.Entry<String, List<String>> lasts : lastsByFirst.entrySet()) {
+            lastNames.put(lasts.getKey(), new Completions(lasts.getValue()));
+        }
+    }
+
+    public int size() {
+        return players.size();
+    }
+
+    // sp: the players with the name anywhere in their first, last or full name
+    public List<List<String>> search(String name) {
+        String query = fold(name);
+        List<List<String>> found = new ArrayList<>();
+        if (query.length() < 3) {
+            for (int p = 0; p < folded.length; p++) {
+                if (folded[p].contains(query)) {
+                    found.add(players.get(p));
+                }
+            }
+            return found;
+        }
+
+        // the players of the rarest trigram, a trigram no name has means no player matches
+        int rarest = -1;
+        for (int key : trigrams(query)) {
+            int slot = grams.slot(key);
+            if (slot < 0) {
+                return found;
+            }
+            if (rarest < 0 || grams.end(slot) - grams.begin(slot) < grams.end(rarest) - grams.begin(rarest)) {
+                rarest = slot;
+            }
+        }
+        for (int i = grams.begin(rarest); i < grams.end(rarest); i++) {
+            int p = gramPlayers[grams.row(i)];
+            if (folded[p].contains(query)) {
+                found.add(players.get(p));
+            }
+        }
+        return found;
+    }
+
+    // a player with exactly this name, ignoring case as the server's collation does
+    public boolean contains(String first, String last) {
+        return names.contains(exact(first, last));
+    }
+
+    // first names starting with the prefix, see Completions
+    public List<String> completeFirst(String prefix) {
+        return firstNames.complete(prefix);
+    }
+
+    // last names of the players with this first name, starting with the prefix
+    public List<String> completeLast(String first, String prefix) {
+        Completions lasts = lastNames.get(exact(first));
+        return lasts == null ? Collections.emptyList() : lasts.complete(prefix);
+    }
+
+    // lower case without accents, NULL as ""
+    static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        if (text.chars().allMatch(c -> c < 0x80)) {
+            return text.toLowerCase(Locale.ROOT);
+        }
+        return MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static String exact(String first, String last) {
+        return exact(first) + "\n" + exact(last);
+    }
+
+    // what the server's = compares: case ignored, trailing spaces too
+    private static String exact(String name) {
+        return name.stripTrailing().toLowerCase(Locale.ROOT);
+    }
+
+    private static int[] trigrams(String text) {
+        int[] keys = new int[Math.max(0, text.length() - 2)];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = Math.min(text.charAt(i), MAX_CHAR) << 20 | Math.min(text.charAt(i + 1), MAX_CHAR) << 10
+                    | Math.min(text.charAt(i + 2), MAX_CHAR);
+        }
+        return keys;
+    }
+
+    /*
+     * Distinct names sorted by their folded form, e.g. the first names. complete() returns
+     * the names whose folded form starts with the folded prefix; when some of them fold to
+     * the prefix itself ("connor" for "Connor") it returns only those, so a whole name is not
+     * mistaken for the start of longer ones.
+     */
+    private static class Completions {
+        private final String[] keys;
+        private final String[] names;
+
+        Completions(List<String> all) {
+            TreeMap<String, String> sorted = new TreeMap<>();
+            for (String name : all) {
+                // folded, then as spelled, so spellings that fold alike are kept apart
+                sorted.put(fold(name) + "\n" + name, name);
+            }
+            keys = sorted.keySet().toArray(new String[0]);
+            names = sorted.values().toArray(new String[0]);
+        }
+
+        List<String> complete(String prefix) {
+            String key = fold(prefix);
+            int from = Arrays.binarySearch(keys, key);
+            from = from < 0 ? -from - 1 : from;
+
+            List<String> found = new ArrayList<>();
+            List<String> whole = new ArrayList<>();
+            for (int i = from; i < keys.length && keys[i].startsWith(key); i++) {
+                found.add(names[i]);
+                if (keys[i].startsWith(key + "\n")) {
+                    whole.add(names[i]);
+                }
+            }
+            return whole.isEmpty() ? found : whole;
+        }
+    }
+}
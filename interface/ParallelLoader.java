@@ -0,0 +1,455 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Loads the sql chunks over several connections at the same time.
+ *
+ * Every chunk is split into per-table segments. All segments of one table group are
+ * loaded at once by a bounded pool of workers (each with its own connection), and a
+ * group only starts after the groups it references through foreign keys are finished.
+ */
+public class ParallelLoader {
+
+    // foreign key order of the schema, tables in the same group never reference each other
+    static final String[][] TABLE_GROUPS = {
+        { "teams", "officials" },
+        { "venues" },
+        { "games" },
+        { "players" },
+        { "playsIn", "playsOn", "officiatedBy" },
+        { "shifts" },
+        { "plays" },
+        { "assists" }
+    };
+
+    private final ConnectionSource source;
+    private final LoadOptions options;
+    private final int workers;
+    private final int numChunks;
+    private LoadJournal journal;
+
+    // only with --pipeline, built once the worker connections are open
+    private LoadPipeline pipeline;
+
+    // only with --defer-constraints, collects the keys stripped from the CREATE TABLEs
+    private final DeferredConstraints constraints;
+
+    // wall time of each phase of the load, in order
+    private final Map<String, Double> phaseSeconds = new LinkedHashMap<>();
+
+    private final LoadMetrics metrics = new LoadMetrics();
+
+    // table name -> number of inserts into it over all chunks
+    private final Map<String, Long> insertCounts = new LinkedHashMap<>();
+
+    // table name -> chunk files containing inserts into it, in chunk order
+    private final Map<String, List<String>> segments = new LinkedHashMap<>();
+    private final Map<String, TableProgress> progress = new LinkedHashMap<>();
+
+    public ParallelLoader(ConnectionSource source, LoadOptions options, int numChunks) {
+        this.source = source;
+        this.options = options;
+        this.workers = options.workers;
+        this.numChunks = numChunks;
+        this.constraints = options.deferConstraints ? new DeferredConstraints() : null;
+
+        for (String[] group : TABLE_GROUPS) {
+            for (String table : group) {
+                segments.put(table, new ArrayList<>());
+            }
+        }
+    }
+
+    public void load(Connection connection) {
+        long start = System.nanoTime();
+
+        try {
+            if (!openJournal(connection)) {
+                return;
+            }
+
+            boolean createTables = !journal.isSchemaDone();
+            System.out.println(createTables ? "Creating tables and indexing chunks..." : "Resuming, indexing chunks...");
+            long phaseStart = System.nanoTime();
+            prepare(connection, createTables);
+            phaseSeconds.put(createTables ? "create tables" : "index chunks", (System.nanoTime() - phaseStart) / 1e9);
+
+            if (createTables) {
+                journal.schemaCreated();
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading the SQL chunks or the load journal.");
+            e.printStackTrace();
+            closeJournal();
+            return;
+        } catch (SQLException e) {
+            System.err.println("Error creating the tables.");
+            e.printStackTrace();
+            closeJournal();
+            return;
+        }
+
+        boolean loaded = false;
+
+        BatchTuner tuner = options.createTuner(metrics);
+        BlockingQueue<Worker> idle = new ArrayBlockingQueue<>(workers);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+
+        try {
+            for (int i = 0; i < workers; i++) {
+                Connection workerConnection = source.open();
+                idle.add(new Worker(workerConnection, options.createLoader(workerConnection, tuner)));
+            }
+
+            if (options.pipeline) {
+                List<Connection> connections = new ArrayList<>();
+                List<PreparedInsertLoader> loaders = new ArrayList<>();
+                for (Worker worker : idle) {
+                    connections.add(worker.connection);
+                    loaders.add((PreparedInsertLoader) worker.loader);
+                }
+                pipeline = new LoadPipeline(connections, loaders, journal, tuner, metrics, options.queueDepth);
+            }
+
+            metrics.expectRows(remainingRows());
+            if (options.progress) {
+                metrics.startProgress();
+            }
+
+            loaded = true;
+            long phaseStart = System.nanoTime();
+            for (String[] group : TABLE_GROUPS) {
+                if (!loadGroup(group, pool, idle, tuner)) {
+                    System.out.println("Stopping REPOP, later tables depend on the failed table. Use 'REPOP --resume' to continue.");
+                    loaded = false;
+                    break;
+                }
+            }
+            phaseSeconds.put("load rows", (System.nanoTime() - phaseStart) / 1e9);
+            metrics.stopProgress();
+
+            if (loaded && constraints != null) {
+                System.out.printf("Building %d deferred keys...\n", constraints.size());
+                if (!constraints.build(connection, phaseSeconds)) {
+                    System.out.println("Some keys could not be built. Use 'REPOP --resume' to try again once the data is fixed.");
+                    loaded = false;
+                }
+            }
+
+            if (loaded && !PlayerSeasonStats.rebuild(connection, phaseSeconds)) {
+                System.out.println("The summary table could not be built. Use 'REPOP --resume' to try again.");
+                loaded = false;
+            }
+
+            if (loaded) {
+                journal.loadComplete();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing the load journal.");
+            e.printStackTrace();
+        } catch (SQLException e) {
+            System.err.println("Error opening the loader connections.");
+            e.printStackTrace();
+        } finally {
+            metrics.stopProgress();
+            pool.shutdown();
+            for (Worker worker : idle) {
+                try {
+                    worker.loader.close();
+                    worker.connection.close();
+                } catch (SQLException e) {
+                    // closing at the end anyway
+                }
+            }
+            closeJournal();
+        }
+
+        printSummary(System.nanoTime() - start);
+        metrics.printLatencies();
+        metrics.writeJson(options.metricsFile, options, tuner, phaseSeconds);
+    }
+
+    // false if there is nothing to do
+    private boolean openJournal(Connection connection) throws IOException, SQLException {
+        if (!options.resume) {
+            journal = LoadJournal.start(connection, options.journalTable);
+            return true;
+        }
+
+        journal = LoadJournal.resume(connection, options.journalTable);
+
+        if (journal.isComplete()) {
+            System.out.println("The last REPOP finished, there is nothing to resume.");
+            closeJournal();
+            return false;
+        }
+        if (!journal.isSchemaDone()) {
+            System.out.println("No interrupted REPOP was found, starting a full load.");
+            closeJournal();
+            journal = LoadJournal.start(connection, options.journalTable);
+        }
+        return true;
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    // runs every statement that is not an insert (drop/create) in chunk order and finds
+    // which tables each chunk inserts into, a resumed load keeps the existing tables.
+    // With deferred constraints the tables are created without their keys
+    private void prepare(Connection connection, boolean createTables) throws IOException, SQLException {
+        connection.setAutoCommit(true);
+        PlayerSeasonStats.drop(connection);
+        Map<String, long[]> counts = new LinkedHashMap<>();
+        Statement statement = connection.createStatement();
+        Dialect dialect = Dialect.of(connection);
+        byte[] lastTable = null;
+        long[] count = null;
+
+        for (int i = 1; i <= numChunks; i++) {
+            String file_name = chunkName(i);
+            List<String> files = null;
+
+            try (ChunkScanner scanner = ChunkScanner.chunk(file_name)) {
+                while (scanner.next()) {
+                    if (!scanner.isInsert()) {
+                        if (!scanner.isPrint()) {
+                            // rewritten on resume too, so the keys still to build are known
+                            String sql = constraints != null ? constraints.rewrite(scanner.statement()) : scanner.statement();
+                            sql = dialect.schema(sql);
+                            if (createTables && sql != null) {
+                                statement.execute(sql);
+                            }
+                        }
+                        continue;
+                    }
+
+                    // inserts are grouped by table, only decode the name when it changes
+                    if (files != null && scanner.isInsertInto(lastTable)) {
+                        count[0]++;
+                        continue;
+                    }
+
+                    String table = scanner.table();
+                    files = segments.get(table);
+                    if (files == null) {
+                        throw new SQLException("Chunk " + file_name + " inserts into unknown table " + table);
+                    }
+                    lastTable = ChunkScanner.tableBytes(table);
+                    count = counts.computeIfAbsent(table, name -> new long[1]);
+                    count[0]++;
+                    if (files.isEmpty() || !files.get(files.size() - 1).equals(file_name)) {
+                        files.add(file_name);
+                    }
+                }
+            }
+        }
+
+        statement.close();
+
+        for (Map.Entry<String, List<String>> entry : segments.entrySet()) {
+            progress.put(entry.getKey(), new TableProgress(entry.getValue().size(), metrics, options.progress));
+            insertCounts.put(entry.getKey(), counts.containsKey(entry.getKey()) ? counts.get(entry.getKey())[0] : 0);
+        }
+    }
+
+    // rows still to load, everything minus what an interrupted run already committed
+    private long remainingRows() {
+        long remaining = 0;
+        for (Map.Entry<String, List<String>> entry : segments.entrySet()) {
+            remaining += insertCounts.get(entry.getKey());
+            for (String file_name : entry.getValue()) {
+                remaining -= journal.committedRows(file_name, entry.getKey());
+            }
+        }
+        return remaining;
+    }
+
+    private boolean loadGroup(String[] group, ExecutorService pool, BlockingQueue<Worker> idle, BatchTuner tuner) {
+        List<Future<?>> pending = new ArrayList<>();
+        List<LoadPipeline.Segment> piped = new ArrayList<>();
+        AtomicInteger failures = new AtomicInteger();
+
+        for (String table : group) {
+            TableProgress tableProgress = progress.get(table);
+            tableProgress.start = System.nanoTime();
+
+            for (String file_name : segments.get(table)) {
+                if (journal.isDone(file_name, table)) {
+                    tableProgress.segmentSkipped(table, journal.committedRows(file_name, table));
+                    continue;
+                }
+
+                if (pipeline != null) {
+                    piped.add(new LoadPipeline.Segment(file_name, table));
+                    continue;
+                }
+
+                pending.add(pool.submit(() -> {
+                    Worker worker = null;
+                    boolean segmentLoaded = false;
+                    try {
+                        worker = idle.take();
+                        LoadJournal.Checkpoint checkpoint = journal.checkpoint(worker.connection, file_name, table, tuner);
+                        long rows = worker.loader.load(file_name, table, checkpoint);
+                        segmentLoaded = true;
+                        metrics.bytesRead(file_name, Files.size(Paths.get(Populator.PATH_TO_CHUNKS, file_name)));
+                        tableProgress.segmentDone(table, rows);
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                        System.err.println("Error reading the SQL file: " + file_name);
+                        e.printStackTrace();
+                    } catch (SQLException | IllegalArgumentException e) {
+                        failures.incrementAndGet();
+                        System.err.printf("Error loading %s from %s.\n", table, file_name);
+                        e.printStackTrace();
+                    } catch (InterruptedException e) {
+                        failures.incrementAndGet();
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        if (worker != null) {
+                            // whatever failed, the next segment on this worker must start clean
+                            if (!segmentLoaded) {
+                                rollback(worker);
+                            }
+                            idle.add(worker);
+                        }
+                    }
+                }));
+            }
+        }
+
+        if (pipeline != null) {
+            return pipeline.load(piped, (table, rows) -> progress.get(table).segmentDone(table, rows));
+        }
+
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                failures.incrementAndGet();
+            }
+        }
+
+        return failures.get() == 0;
+    }
+
+    private static void rollback(Worker worker) {
+        worker.loader.reset();
+        try {
+            worker.connection.rollback();
+        } catch (SQLException e) {
+            // the connection is already broken, the failure has been reported
+        }
+    }
+
+    private void printSummary(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long totalRows = 0;
+        long skippedRows = 0;
+
+        System.out.println();
+        System.out.printf("%-15s%12s%12s%14s\n", "Table", "Rows", "Seconds", "Rows/sec");
+        for (Map.Entry<String, TableProgress> entry : progress.entrySet()) {
+            TableProgress p = entry.getValue();
+            totalRows += p.rows.get();
+            skippedRows += p.skippedRows.get();
+            System.out.printf("%-15s%,12d%12.1f%,14.0f\n", entry.getKey(), p.rows.get(), p.seconds(), p.rowsPerSecond());
+        }
+
+        System.out.printf("\nLoaded %,d rows in %.1f seconds (%,.0f rows/sec) using %d workers.\n",
+                totalRows, seconds, seconds > 0 ? totalRows / seconds : 0, workers);
+        if (skippedRows > 0) {
+            System.out.printf("%,d rows were already loaded by the interrupted REPOP.\n", skippedRows);
+        }
+
+        System.out.println();
+        for (Map.Entry<String, Double> phase : phaseSeconds.entrySet()) {
+            System.out.printf("%-15s%10.1f s\n", phase.getKey(), phase.getValue());
+        }
+
+        if (pipeline != null) {
+            pipeline.printUtilisation();
+        }
+    }
+
+    static String chunkName(int chunk) {
+        return String.format("sql_chunk_%s.sql", chunk);
+    }
+
+    private static class Worker {
+        final Connection connection;
+        final SegmentLoader loader;
+
+        Worker(Connection connection, SegmentLoader loader) {
+            this.connection = connection;
+            this.loader = loader;
+        }
+    }
+
+    private static class TableProgress {
+        final int totalSegments;
+        final LoadMetrics metrics;
+        final boolean quiet;
+        final AtomicInteger segmentsDone = new AtomicInteger();
+        final AtomicLong rows = new AtomicLong();
+        final AtomicLong skippedRows = new AtomicLong();
+        volatile long start;
+        volatile long end;
+
+        // with the progress line on, only whole tables are reported
+        TableProgress(int totalSegments, LoadMetrics metrics, boolean quiet) {
+            this.totalSegments = totalSegments;
+            this.metrics = metrics;
+            this.quiet = quiet;
+        }
+
+        // finished by an earlier run, not counted in this run's throughput
+        void segmentSkipped(String table, long segmentRows) {
+            skippedRows.addAndGet(segmentRows);
+            if (segmentsDone.incrementAndGet() == totalSegments) {
+                metrics.println(String.format("Table %s was already loaded", table));
+            }
+        }
+
+        void segmentDone(String table, long segmentRows) {
+            long tableRows = rows.addAndGet(segmentRows);
+            int done = segmentsDone.incrementAndGet();
+
+            if (done == totalSegments) {
+                end = System.nanoTime();
+                metrics.println(String.format("Table %s done: %,d rows in %.1f seconds (%,.0f rows/sec)",
+                        table, tableRows, seconds(), rowsPerSecond()));
+            } else if (!quiet) {
+                System.out.printf("  %s: %d of %d chunks done, %,d rows so far\n", table, done, totalSegments, tableRows);
+            }
+        }
+
+        double seconds() {
+            return end > start ? (end - start) / 1e9 : 0;
+        }
+
+        double rowsPerSecond() {
+            double seconds = seconds();
+            return seconds > 0 ? rows.get() / seconds : 0;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+/*
+ * The playerSeasonStats summary table: one row per player and season with goals, assists,
+ * points, shots, penalties, plusMinus and games played.
+ *
+ * top25, tgap and gps used to aggregate plays, assists and playsIn for every player on each
+ * run. They read this table instead, which REPOP builds once the rows are in and INGEST
+ * refreshes for the seasons its delta touches.
+ *
+ * A player's counts only come from rows of that season: goals, shots and penalties from
+ * plays, assists from the assists of goals, plusMinus (NULL for goalies) and gamesPlayed
+ * from playsIn. The table has no foreign keys, so the chunks' DROP TABLEs still work.
+ */
+public class PlayerSeasonStats {
+
+    private static final String CREATE_TABLE = """
+            DROP TABLE IF EXISTS playerSeasonStats;
+            CREATE TABLE playerSeasonStats (
+                playerID integer NOT NULL,
+                season varchar(15) NOT NULL,
+                goals integer NOT NULL,
+                assists integer NOT NULL,
+                points integer NOT NULL,
+                shots integer NOT NULL,
+                penalties integer NOT NULL,
+                plusMinus integer,
+                gamesPlayed integer NOT NULL,
+                PRIMARY KEY (playerID, season)
+            );
+            CREATE INDEX ix_playerSeasonStats_season ON playerSeasonStats (season);
+            """;
+
+    // every counted row as (player, season, one-hot counts), summed per player and season.
+    // %1$s..%3$s are the goal, shot and penalty flags of the dialect, %4$s a WHERE clause
+    private static final String INSERT_SEASONS = """
+            INSERT INTO playerSeasonStats (playerID, season, goals, assists, points, shots, penalties, plusMinus, gamesPlayed)
+            SELECT playerID, season, SUM(goals), SUM(assists), SUM(goals) + SUM(assists), SUM(shots), SUM(penalties),
+                   SUM(plusMinus), SUM(gamesPlayed)
+            FROM (
+                SELECT plays.playerID, games.season,
+                       %1$s AS goals, 0 AS assists,
+                       %2$s AS shots, %3$s AS penalties,
+                       NULL AS plusMinus, 0 AS gamesPlayed
+                FROM plays
+                JOIN games ON games.gameID = plays.gameID
+                UNION ALL
+                SELECT assists.playerID, games.season, 0, 1, 0, 0, NULL, 0
+                FROM assists
+                JOIN plays ON plays.playID = assists.playID
+                JOIN games ON games.gameID = plays.gameID
+                WHERE plays.playType = 'Goal'
+                UNION ALL
+                SELECT playsIn.playerID, games.season, 0, 0, 0, 0, playsIn.plusMinus, 1
+                FROM playsIn
+                JOIN games ON games.gameID = playsIn.gameID
+            ) counted
+            %4$s
+            GROUP BY playerID, season;
+            """;
+
+    // drops and rebuilds the whole table, false if it failed
+    public static boolean rebuild(Connection connection, Map<String, Double> phaseSeconds) {
+        long start = System.nanoTime();
+
+        try (Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(true);
+            statement.execute(CREATE_TABLE);
+            statement.executeUpdate(insertSeasons(Dialect.of(connection), ""));
+
+            // the load sessions run with NOCOUNT ON, so the insert reports no row count
+            long rows = 0;
+            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM playerSeasonStats;")) {
+                if (rs.next()) {
+                    rows = rs.getLong(1);
+                }
+            }
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            phaseSeconds.put("season stats", seconds);
+            System.out.printf("Built playerSeasonStats: %,d player seasons in %.1f seconds\n", rows, seconds);
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error building the playerSeasonStats table.");
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // run as a load starts, so a load that stops partway leaves no rows of the previous load
+    // next to its own partial tables
+    public static void drop(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS playerSeasonStats;");
+        }
+    }
+
+    // recomputes the seasons listed by seasonsQuery, inside the caller's transaction
+    public static void refresh(Statement statement, String seasonsQuery) throws SQLException {
+        String seasons = "season IN (" + seasonsQuery + ")";
+        statement.executeUpdate("DELETE FROM playerSeasonStats WHERE " + seasons + ";");
+        statement.executeUpdate(insertSeasons(Dialect.of(statement.getConnection()), "WHERE " + seasons));
+    }
+
+    private static String insertSeasons(Dialect dialect, String where) {
+        return String.format(INSERT_SEASONS, flag(dialect, "Goal"), flag(dialect, "Shot"), flag(dialect, "Penalty"), where);
+    }
+
+    private static String flag(Dialect dialect, String playType) {
+        return dialect.iif("plays.playType = '" + playType + "'", "1", "0");
+    }
+
+    public static boolean exists(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT OBJECT_ID('playerSeasonStats');")) {
+            return rs.next() && rs.getObject(1) != null;
+        }
+    }
+}
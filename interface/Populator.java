@@ -1,13 +1,16 @@
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class Populator {
 
-    private final static String PATH_TO_CHUNKS = "../populate_data/sql_chunks/";
+    final static String PATH_TO_CHUNKS = "../populate_data/sql_chunks/";
 
     public static void repopulateDB(Connection connection, String file_name) {
 
@@ -34,7 +37,7 @@ public class Populator {
                 // build up query
                 if (line.endsWith(";")) {
                     String query = queryBuilder.toString().trim();
-                    queryBuilder.setLength(0); 
+                    queryBuilder.setLength(0);
 
                     statement.addBatch(query);
                     batchCount++;
@@ -53,7 +56,7 @@ public class Populator {
                 statement.executeBatch();
             }
 
-            connection.commit(); 
+            connection.commit();
 
             reader.close();
         } catch (IOException e) {
@@ -66,4 +69,129 @@ public class Populator {
 
     }
 
+    // loads only the inserts into 'table' from one chunk, returns the number of rows inserted
+    public static long loadSegment(Connection connection, String file_name, String table, LoadJournal.Checkpoint checkpoint,
+            BatchTuner tuner) throws IOException, SQLException {
+
+        Statement statement = connection.createStatement();
+        connection.setAutoCommit(false);
+
+        byte[] tableBytes = ChunkScanner.tableBytes(table);
+        int position = 0; // inserts into 'table' seen in this chunk
+        long rows = 0;
+        int batchCount = 0;
+        int sinceCommit = 0;
+
+        try (ChunkScanner scanner = ChunkScanner.chunk(file_name)) {
+            while (scanner.next()) {
+                // only the statements we send are turned into Strings
+                if (!scanner.isInsertInto(tableBytes) || ++position <= checkpoint.skipRows()) {
+                    continue;
+                }
+
+                statement.addBatch(scanner.statement());
+                rows++;
+
+                if (++batchCount >= tuner.batchSize()) {
+                    executeBatch(statement, table, batchCount, tuner);
+                    batchCount = 0;
+                }
+
+                if (++sinceCommit >= checkpoint.commitInterval()) {
+                    if (batchCount > 0) {
+                        executeBatch(statement, table, batchCount, tuner);
+                        batchCount = 0;
+                    }
+                    checkpoint.commit(position);
+                    sinceCommit = 0;
+                }
+            }
+        }
+
+        if (batchCount > 0) {
+            executeBatch(statement, table, batchCount, tuner);
+        }
+
+        checkpoint.finish(position);
+        statement.close();
+
+        return rows;
+    }
+
+    private static void executeBatch(Statement statement, String table, int rows, BatchTuner tuner) throws SQLException {
+        long start = System.nanoTime();
+        statement.executeBatch();
+        tuner.recordBatches(table, 1, rows, System.nanoTime() - start);
+    }
+
+    // replays the snapshot's schema and loads every table from the binary snapshot
+    public static void loadSnapshot(Connection connection, LoadOptions options) {
+        if (!SnapshotWriter.isComplete()) {
+            System.out.println("\nSorry, the snapshot is incomplete, run 'REPOP --write-snapshot' once every chunk is in "
+                    + PATH_TO_CHUNKS);
+            return;
+        }
+
+        DeferredConstraints constraints = options.deferConstraints ? new DeferredConstraints() : null;
+        BatchTuner tuner = options.createTuner(new LoadMetrics());
+        PreparedInsertLoader loader = new PreparedInsertLoader(connection, tuner);
+        long start = System.nanoTime();
+        long totalRows = 0;
+
+        try (ChunkScanner schema = new ChunkScanner(Paths.get(SnapshotWriter.PATH_TO_SNAPSHOT, SnapshotWriter.SCHEMA_FILE));
+                Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(true);
+            PlayerSeasonStats.drop(connection);
+            Dialect dialect = Dialect.of(connection);
+            while (schema.next()) {
+                String sql = dialect.schema(constraints != null ? constraints.rewrite(schema.statement()) : schema.statement());
+                if (sql != null) {
+                    statement.execute(sql);
+                }
+            }
+
+            for (String[] group : ParallelLoader.TABLE_GROUPS) {
+                for (String table : group) {
+                    if (!SnapshotWriter.tableFile(table).toFile().exists()) {
+                        continue;
+                    }
+
+                    long tableStart = System.nanoTime();
+                    long rows;
+                    try (SnapshotReader reader = SnapshotReader.table(table)) {
+                        rows = loader.loadSnapshot(reader);
+                    }
+                    double seconds = (System.nanoTime() - tableStart) / 1e9;
+                    totalRows += rows;
+                    System.out.printf("Table %s done: %,d rows in %.1f seconds (%,.0f rows/sec)\n",
+                            table, rows, seconds, seconds > 0 ? rows / seconds : 0);
+                }
+            }
+
+            Map<String, Double> phaseSeconds = new LinkedHashMap<>();
+            if (constraints != null) {
+                constraints.build(connection, phaseSeconds);
+            }
+            if (!PlayerSeasonStats.rebuild(connection, phaseSeconds)) {
+                System.out.println("The summary table could not be built, top25, tgap and gps fail until the next REPOP.");
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading the snapshot in " + SnapshotWriter.PATH_TO_SNAPSHOT);
+            e.printStackTrace();
+        } catch (SQLException e) {
+            System.err.println("Error connecting to the database or executing queries.");
+            e.printStackTrace();
+        } finally {
+            try {
+                loader.close();
+            } catch (SQLException e) {
+                // statements go away with the connection anyway
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("\nLoaded %,d rows from the snapshot in %.1f seconds (%,.0f rows/sec).\n",
+                totalRows, seconds, seconds > 0 ? totalRows / seconds : 0);
+    }
+
 }
@@ -0,0 +1,267 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Loads chunk inserts through parameter-bound multi-row statements:
+ *
+ *   INSERT INTO table (cols) VALUES (?, ?), (?, ?), ...
+ *
+ * One statement is prepared per table and kept for the life of the connection,
+ * so the server compiles each table's insert once instead of once per row.
+ * Statements are sent in batches of about tuner.batchSize() rows. The rows left over at a
+ * commit go as a batch of a single-row insert, also prepared once per table, so the
+ * tuner's changing commit interval never makes the server compile a new statement.
+ */
+public class PreparedInsertLoader implements SegmentLoader {
+
+    // sql server allows at most 1000 rows per VALUES list and 2100 parameters per statement
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+    private static final int MAX_PARAMETERS = 2000;
+
+    private final Connection connection;
+    private final BatchTuner tuner;
+    private final Map<String, TableInsert> inserts = new HashMap<>();
+
+    public PreparedInsertLoader(Connection connection, BatchTuner tuner) {
+        this.connection = connection;
+        this.tuner = tuner;
+    }
+
+    @Override
+    public long load(String file_name, String table, LoadJournal.Checkpoint checkpoint) throws IOException, SQLException {
+        connection.setAutoCommit(false);
+        byte[] tableBytes = ChunkScanner.tableBytes(table);
+        int position = 0;
+        long rows = 0;
+        int sinceCommit = 0;
+        TableInsert insert = null;
+
+        try (ChunkScanner scanner = ChunkScanner.chunk(file_name)) {
+            while (scanner.next()) {
+                if (!scanner.isInsertInto(tableBytes) || ++position <= checkpoint.skipRows()) {
+                    continue;
+                }
+
+                if (insert == null) {
+                    insert = tableInsert(table, scanner.columns());
+                }
+
+                insert.add(scanner.values(insert.columns.length));
+                rows++;
+
+                if (++sinceCommit >= checkpoint.commitInterval()) {
+                    insert.flush();
+                    checkpoint.commit(position);
+                    sinceCommit = 0;
+                }
+            }
+
+            if (insert != null) {
+                insert.flush();
+            }
+        } catch (IOException | SQLException | RuntimeException e) {
+            reset();
+            throw e;
+        }
+
+        checkpoint.finish(position);
+        return rows;
+    }
+
+    // loads a whole table of the binary snapshot, committing after every block
+    public long loadSnapshot(SnapshotReader reader) throws IOException, SQLException {
+        connection.setAutoCommit(false);
+        TableInsert insert = tableInsert(reader.table(), reader.columns());
+        long rows = 0;
+
+        try {
+            while (reader.next()) {
+                insert.add(reader.values());
+                rows++;
+
+                if (reader.endOfBlock()) {
+                    insert.flush();
+                    connection.commit();
+                }
+            }
+
+            insert.flush();
+        } catch (IOException | SQLException | RuntimeException e) {
+            reset();
+            throw e;
+        }
+
+        connection.commit();
+        return rows;
+    }
+
+    // row by row entry point for the load pipeline's writer stages
+    void add(String table, String[] columns, Object[] values) throws SQLException {
+        tableInsert(table, columns).add(values);
+    }
+
+    void flush(String table) throws SQLException {
+        TableInsert insert = inserts.get(table);
+        if (insert != null) {
+            insert.flush();
+        }
+    }
+
+    // drops the rows and batches a failed segment left behind, so the next segment on this
+    // connection does not send them and commit them under its own checkpoint
+    @Override
+    public void reset() {
+        for (TableInsert insert : inserts.values()) {
+            insert.clear();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        for (TableInsert insert : inserts.values()) {
+            insert.statement.close();
+            if (insert.singleRow != null) {
+                insert.singleRow.close();
+            }
+        }
+        inserts.clear();
+    }
+
+    private TableInsert tableInsert(String table, String[] columns) throws SQLException {
+        TableInsert insert = inserts.get(table);
+        if (insert == null) {
+            // NULLs are bound with the column's own type so every row of a batch matches
+            insert = new TableInsert(table, columns, TableSchema.load(connection, table, columns).types);
+            inserts.put(table, insert);
+        }
+        return insert;
+    }
+
+    static String insertSQL(String table, String[] columns, int numRows) {
+        StringBuilder row = new StringBuilder("(");
+        for (int i = 0; i < columns.length; i++) {
+            row.append(i == 0 ? "?" : ", ?");
+        }
+        row.append(")");
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+                .append(" (").append(String.join(", ", columns)).append(") VALUES ");
+        for (int i = 0; i < numRows; i++) {
+            sql.append(i == 0 ? "" : ", ").append(row);
+        }
+        return sql.toString();
+    }
+
+    static void bind(PreparedStatement statement, int index, Object value, int type) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, type);
+        } else if (value instanceof Integer) {
+            statement.setInt(index, (Integer) value);
+        } else if (value instanceof Long) {
+            statement.setLong(index, (Long) value);
+        } else if (value instanceof Double) {
+            statement.setDouble(index, (Double) value);
+        } else {
+            statement.setString(index, value.toString());
+        }
+    }
+
+    // rows waiting to fill the next multi-row statement for one table
+    private class TableInsert {
+        final String table;
+        final String[] columns;
+        final int[] types;
+        final int rowsPerStatement;
+        final PreparedStatement statement;
+        final Object[][] pending;
+        PreparedStatement singleRow;
+        int pendingRows = 0;
+        int batchedStatements = 0;
+
+        TableInsert(String table, String[] columns, int[] types) throws SQLException {
+            this.table = table;
+            this.columns = columns;
+            this.types = types;
+            this.rowsPerStatement = Math.min(MAX_ROWS_PER_STATEMENT, MAX_PARAMETERS / columns.length);
+            this.statement = connection.prepareStatement(insertSQL(table, columns, rowsPerStatement));
+            this.pending = new Object[rowsPerStatement][];
+        }
+
+        void add(Object[] values) throws SQLException {
+            pending[pendingRows++] = values;
+
+            if (pendingRows == rowsPerStatement) {
+                bindRows(statement, pendingRows);
+                statement.addBatch();
+                pendingRows = 0;
+
+                // the tuner's batch size is in rows, each statement carries rowsPerStatement of them
+                if (++batchedStatements * rowsPerStatement >= tuner.batchSize()) {
+                    executeBatch();
+                }
+            }
+        }
+
+        // sends what is waiting, the rows short of a whole statement as a batch of single-row inserts
+        void flush() throws SQLException {
+            if (batchedStatements > 0) {
+                executeBatch();
+            }
+
+            if (pendingRows > 0) {
+                if (singleRow == null) {
+                    singleRow = connection.prepareStatement(insertSQL(table, columns, 1));
+                }
+                for (int r = 0; r < pendingRows; r++) {
+                    for (int c = 0; c < columns.length; c++) {
+                        bind(singleRow, c + 1, pending[r][c], types[c]);
+                    }
+                    pending[r] = null;
+                    singleRow.addBatch();
+                }
+                // the tail is one round trip of rows too, the tuner sees it like the full batches
+                long start = System.nanoTime();
+                singleRow.executeBatch();
+                tuner.recordBatches(table, 1, pendingRows, System.nanoTime() - start);
+                pendingRows = 0;
+            }
+        }
+
+        void clear() {
+            Arrays.fill(pending, null);
+            pendingRows = 0;
+            batchedStatements = 0;
+            try {
+                statement.clearBatch();
+                if (singleRow != null) {
+                    singleRow.clearBatch();
+                }
+            } catch (SQLException e) {
+                // the connection is broken, nothing queued on it can be sent anyway
+            }
+        }
+
+        private void executeBatch() throws SQLException {
+            long start = System.nanoTime();
+            statement.executeBatch();
+            tuner.recordBatches(table, 1, (long) batchedStatements * rowsPerStatement, System.nanoTime() - start);
+            batchedStatements = 0;
+        }
+
+        private void bindRows(PreparedStatement target, int numRows) throws SQLException {
+            int index = 1;
+            for (int r = 0; r < numRows; r++) {
+                Object[] values = pending[r];
+                for (int c = 0; c < columns.length; c++) {
+                    bind(target, index++, values[c], types[c]);
+                }
+                pending[r] = null;
+            }
+        }
+    }
+}
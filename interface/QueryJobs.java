@@ -0,0 +1,361 @@
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Runs the console's query commands as jobs, so a slow query no longer freezes the console.
+ *
+ * A command runs in the foreground, where Ctrl-C cancels it, or in the background when the
+ * command line ends with '&'. Background jobs keep their output and print it when they
+ * finish, so tables of different jobs never mix. A background job keeps at most
+ * OUTPUT_LIMIT bytes of output, the rest is counted and reported as dropped. 'jobs' lists what is running and
+ * 'cancel <id>' stops a job.
+ *
+ * Each job has a timeout in seconds, set as the query timeout of every statement it runs.
+ * Cancelling calls Statement.cancel() on the statement the job is running, the server stops
+ * the query and the command reports it instead of a stack trace. The statement is forgotten
+ * when the job returns its connection, pooled statements are shared by the jobs that borrow
+ * the connection later.
+ *
+ * Jobs run on virtual threads when the JVM has them (java 21), plain threads otherwise.
+ * Each job is timed by QueryMetrics under its command's name.
+ */
+public class QueryJobs {
+
+    static final int DEFAULT_TIMEOUT = 60;
+
+    // output a background job keeps in memory, 4 MB is thousands of table rows
+    static final int OUTPUT_LIMIT = 4 << 20;
+
+    private static final ThreadLocal<Job> CURRENT = new ThreadLocal<>();
+
+    private final ExecutorService executor = newExecutor();
+    private final Map<Integer, Job> running = new TreeMap<>();
+    private final PrintStream console;
+    private final String prompt;
+    private final QueryMetrics metrics;
+    private int nextId = 1;
+    private int defaultTimeout = DEFAULT_TIMEOUT;
+
+    // the whole-table scans get longer before they time out
+    private final Map<String, Integer> commandTimeouts = new HashMap<>(Map.of(
+            "sAll", 300, "ghh", 300, "gps", 180, "tgbt", 180, "top25", 120));
+
+    // the console's foreground job, null while it waits for input
+    private volatile Job foreground;
+    private final List<Job> finished = new ArrayList<>();
+
+    public QueryJobs(String prompt, QueryMetrics metrics) {
+        this.prompt = prompt;
+        this.metrics = metrics;
+        console = System.out;
+        // output of a background job goes to its buffer, everything else to the console
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                target().write(b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                target().write(bytes, offset, length);
+            }
+
+            @Override
+            public void flush() {
+                target().flush();
+            }
+        }, true));
+    }
+
+    private PrintStream target() {
+        Job job = CURRENT.get();
+        return job != null && job.output != null ? job.output : console;
+    }
+
+    // runs the command, waiting for it unless it goes to the background
+    public void run(String command, boolean background, Runnable task) {
+        Job job;
+        synchronized (this) {
+            job = new Job(nextId++, command, timeoutFor(command), background);
+            running.put(job.id, job);
+        }
+
+        job.future = executor.submit(() -> {
+            CURRENT.set(job);
+            QueryMetrics.Trace trace = metrics.begin(command);
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                QueryMetrics.failed();
+                e.printStackTrace(System.out);
+            } finally {
+                trace.finish();
+                CURRENT.remove();
+                done(job);
+            }
+        });
+
+        if (background) {
+            console.printf("[%d] %s running in the background\n", job.id, command);
+            return;
+        }
+
+        foreground = job;
+        try {
+            job.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace(console);
+        } finally {
+            foreground = null;
+        }
+        printFinished();
+    }
+
+    private void done(Job job) {
+        synchronized (this) {
+            running.remove(job.id);
+            if (job.output == null) {
+                return;
+            }
+            finished.add(job);
+        }
+        // at the prompt the result is printed right away, during a foreground job after it
+        if (foreground == null) {
+            printFinished();
+            console.print(prompt);
+        }
+    }
+
+    // output of the background jobs that finished since the last prompt
+    public void printFinished() {
+        List<Job> jobs;
+        synchronized (this) {
+            jobs = new ArrayList<>(finished);
+            finished.clear();
+        }
+
+        for (Job job : jobs) {
+            synchronized (console) {
+                console.printf("\n[%d] %s finished after %.1f seconds%s\n", job.id, job.command, job.elapsedSeconds(),
+                        job.cancelled ? " (cancelled)" : "");
+                console.print(job.buffer.toString());
+                if (job.buffer.dropped > 0) {
+                    console.printf("%s... %,d more bytes of output dropped, run '%s' in the foreground to see all of it\n",
+                            job.buffer.endsLine() ? "" : "\n", job.buffer.dropped, job.command);
+                }
+                console.flush();
+            }
+        }
+    }
+
+    public synchronized void list() {
+        if (running.isEmpty()) {
+            console.println("No jobs running.");
+            return;
+        }
+
+        console.printf("%-6s%-12s%-12s%10s%10s\n", "Job", "Command", "", "Elapsed", "Timeout");
+        for (Job job : running.values()) {
+            console.printf("%-6d%-12s%-12s%9.1fs%9ds\n", job.id, job.command,
+                    job.cancelled ? "cancelling" : job.output != null ? "background" : "foreground",
+                    job.elapsedSeconds(), job.timeout);
+        }
+    }
+
+    public void cancel(int id) {
+        Job job;
+        synchronized (this) {
+            job = running.get(id);
+        }
+        if (job == null) {
+            console.printf("Sorry, there is no running job %d\n", id);
+            return;
+        }
+        job.cancel();
+        console.printf("Cancelling job %d (%s)\n", id, job.command);
+    }
+
+    // Ctrl-C cancels the foreground job, at the prompt it still ends the program.
+    // sun.misc.Signal is looked up at run time, so the build has no internal API warning
+    public void handleInterrupt() {
+        try {
+            Class<?> signal = Class.forName("sun.misc.Signal");
+            Class<?> handler = Class.forName("sun.misc.SignalHandler");
+            Object onInterrupt = Proxy.newProxyInstance(handler.getClassLoader(), new Class<?>[] { handler },
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "handle":
+                                interrupted();
+                                return null;
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                return "SIGINT handler";
+                        }
+                    });
+            signal.getMethod("handle", signal, handler).invoke(null, signal.getConstructor(String.class).newInstance("INT"), onInterrupt);
+        } catch (ReflectiveOperationException | IllegalArgumentException | LinkageError e) {
+            // no SIGINT handling on this JVM or platform, 'cancel <id>' from a background job still works
+        }
+    }
+
+    private void interrupted() {
+        Job job = foreground;
+        if (job == null) {
+            System.exit(130);
+        }
+        job.cancel();
+        console.printf("\nCancelling job %d (%s)\n", job.id, job.command);
+    }
+
+    // one limit for every command, replacing the longer ones of the table scans
+    public synchronized void setTimeout(int seconds) {
+        defaultTimeout = seconds;
+        commandTimeouts.clear();
+        console.printf("Queries now time out after %d seconds%s\n", seconds, seconds == 0 ? " (no limit)" : "");
+    }
+
+    private synchronized int timeoutFor(String command) {
+        return commandTimeouts.getOrDefault(command, defaultTimeout);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /* the statement side, called from the commands' threads */
+
+    // applies the job's timeout to a statement about to run and makes it the one cancel() stops
+    static void track(Statement statement) throws SQLException {
+        Job job = CURRENT.get();
+        statement.setQueryTimeout(job == null ? 0 : job.timeout);
+        if (job != null) {
+            job.statement = statement;
+            if (job.cancelled) {
+                throw new SQLException("The query was cancelled.");
+            }
+        }
+    }
+
+    // the job's connection goes back to the pool, where another job may run the same statement
+    static void untrack() {
+        Job job = CURRENT.get();
+        if (job != null) {
+            synchronized (job) {
+                job.statement = null;
+            }
+        }
+    }
+
+    // what a command prints when its query fails
+    static void report(SQLException e) {
+        QueryMetrics.failed();
+        Job job = CURRENT.get();
+        if (job != null && job.cancelled) {
+            System.out.printf("Job %d (%s) was cancelled.\n", job.id, job.command);
+        } else if (job != null && job.timedOut(e)) {
+            System.out.printf("Job %d (%s) timed out after %d seconds, 'timeout N' sets a longer limit.\n",
+                    job.id, job.command, job.timeout);
+        } else {
+            e.printStackTrace(System.out);
+        }
+    }
+
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // before java 21: a thread per running job, kept for reuse a minute
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "query-job");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static class Job {
+        final int id;
+        final String command;
+        final int timeout;
+        final long start = System.nanoTime();
+        final JobOutput buffer;
+        final PrintStream output;
+        Future<?> future;
+        volatile Statement statement;
+        volatile boolean cancelled = false;
+
+        Job(int id, String command, int timeout, boolean background) {
+            this.id = id;
+            this.command = command;
+            this.timeout = timeout;
+            this.buffer = background ? new JobOutput() : null;
+            this.output = background ? new PrintStream(buffer, true) : null;
+        }
+
+        double elapsedSeconds() {
+            return (System.nanoTime() - start) / 1e9;
+        }
+
+        // holds the lock untrack() takes, so the connection is not handed to another job meanwhile
+        synchronized void cancel() {
+            cancelled = true;
+            if (statement != null) {
+                try {
+                    statement.cancel();
+                } catch (SQLException e) {
+                    // the statement finished or its connection is gone, either way it stopped
+                }
+            }
+        }
+
+        // sql server reports a query timeout as an error, not as SQLTimeoutException
+        boolean timedOut(SQLException e) {
+            return e instanceof SQLTimeoutException
+                    || (timeout > 0 && elapsedSeconds() >= timeout && String.valueOf(e.getMessage()).contains("timed out"));
+        }
+    }
+
+    // a background job's output, bytes past OUTPUT_LIMIT are counted instead of kept
+    private static class JobOutput extends ByteArrayOutputStream {
+        long dropped = 0;
+
+        @Override
+        public synchronized void write(int b) {
+            if (count < OUTPUT_LIMIT) {
+                super.write(b);
+            } else {
+                dropped++;
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] bytes, int offset, int length) {
+            int kept = Math.max(0, Math.min(length, OUTPUT_LIMIT - count));
+            super.write(bytes, offset, kept);
+            dropped += length - kept;
+        }
+
+        synchronized boolean endsLine() {
+            return count == 0 || buf[count - 1] == '\n';
+        }
+    }
+}
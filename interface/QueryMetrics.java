@@ -0,0 +1,250 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * Where the time of each console query goes, per command of this session.
+ *
+ * A command's time is split into phases:
+ * - prepare: borrowing a connection, preparing the statement and binding its parameters
+ * - execute: executeQuery() until the first rows are back (the local engine's whole query)
+ * - fetch: reading the rest of the rows into strings
+ * - render: printing the table
+ * The existence checks before a query are part of its command, so a phase is the sum over
+ * the command's statements. Rows and bytes are what the command read, a cache hit reads none.
+ * The bytes are the lengths of the values, the data is ASCII so a character is a byte.
+ *
+ * 'stats' prints p50/p95/max of each command's total time and its mean phases. Every
+ * command is also a hockeydb.Query event for Java Flight Recorder, e.g.
+ *
+ *   java -XX:StartFlightRecording=filename=hockeydb.jfr -cp ... HockeyDBInterface
+ *   jfr print --events hockeydb.Query hockeydb.jfr
+ *
+ * When no recording is running the event's begin/end/shouldCommit are no-ops the JIT removes,
+ * so what is left is a handful of nanoTime() calls per command.
+ */
+public class QueryMetrics {
+
+    enum Phase {
+        PREPARE, EXECUTE, FETCH, RENDER
+    }
+
+    // the command running on this thread, null outside a query job
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, CommandStats> commands = new TreeMap<>();
+
+    // starts timing a command on this thread, finish() ends it
+    public Trace begin(String command) {
+        Trace trace = new Trace(command);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /* the query side, called from the commands' threads */
+
+    // adds the time since start to the phase of the running command, returns now for the next phase
+    static long phase(Phase phase, long start) {
+        long now = System.nanoTime();
+        Trace trace = CURRENT.get();
+        if (trace != null) {
+            trace.nanos[phase.ordinal()] += now - start;
+        }
+        return now;
+    }
+
+    // rows the command read from the server or the local engine
+    static void read(String source, List<List<String>> rows) {
+        if (CURRENT.get() == null) {
+            return;
+        }
+
+        long bytes = 0;
+        for (List<String> row : rows) {
+            for (String value : row) {
+                bytes += value == null ? 0 : value.length();
+            }
+        }
+        read(source, rows.size(), bytes);
+    }
+
+    static void read(String source, long rows, long bytes) {
+        Trace trace = CURRENT.get();
+        if (trace != null) {
+            trace.source = source;
+            trace.rows += rows;
+            trace.bytes += bytes;
+        }
+    }
+
+    static void cacheHit() {
+        Trace trace = CURRENT.get();
+        if (trace != null) {
+            trace.source = "cache";
+        }
+    }
+
+    // the command failed, was cancelled or timed out
+    static void failed() {
+        Trace trace = CURRENT.get();
+        if (trace != null) {
+            trace.failed = true;
+        }
+    }
+
+    private synchronized void add(Trace trace, long totalNanos) {
+        commands.computeIfAbsent(trace.command, command -> new CommandStats()).add(trace, totalNanos);
+    }
+
+    public synchronized void clear() {
+        commands.clear();
+    }
+
+    public synchronized void printStats() {
+        if (commands.isEmpty()) {
+            System.out.println("No queries run yet.");
+            return;
+        }
+
+        System.out.printf("%-10s%6s%8s%10s%10s%10s%10s%10s%10s%10s%10s%10s\n", "Command", "Runs", "Cached",
+                "p50", "p95", "Max", "Prepare", "Execute", "Fetch", "Render", "Rows", "KB");
+        for (Map.Entry<String, CommandStats> entry : commands.entrySet()) {
+            entry.getValue().print(entry.getKey());
+        }
+        System.out.println("\nTimes in ms, the phases, rows and KB are the mean of a run.");
+    }
+
+    public class Trace {
+        private final String command;
+        private final long start = System.nanoTime();
+        private final QueryEvent event = new QueryEvent();
+        private final long[] nanos = new long[Phase.values().length];
+        private String source = "server";
+        private long rows = 0;
+        private long bytes = 0;
+        private boolean failed = false;
+
+        private Trace(String command) {
+            this.command = command;
+            event.begin();
+        }
+
+        public void finish() {
+            long total = System.nanoTime() - start;
+            CURRENT.remove();
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.command = command;
+                event.source = source;
+                event.prepare = nanos[Phase.PREPARE.ordinal()];
+                event.execute = nanos[Phase.EXECUTE.ordinal()];
+                event.fetch = nanos[Phase.FETCH.ordinal()];
+                event.render = nanos[Phase.RENDER.ordinal()];
+                event.rows = rows;
+                event.bytes = bytes;
+                event.failed = failed;
+                event.commit();
+            }
+
+            add(this, total);
+        }
+    }
+
+    private static class CommandStats {
+        private long[] totals = new long[16];
+        private int runs = 0;
+        private int cached = 0;
+        private int failed = 0;
+        private final long[] phaseNanos = new long[Phase.values().length];
+        private long rows = 0;
+        private long bytes = 0;
+
+        void add(Trace trace, long totalNanos) {
+            if (runs == totals.length) {
+                totals = Arrays.copyOf(totals, runs * 2);
+            }
+            totals[runs++] = totalNanos;
+            for (int p = 0; p < phaseNanos.length; p++) {
+                phaseNanos[p] += trace.nanos[p];
+            }
+            rows += trace.rows;
+            bytes += trace.bytes;
+            if (trace.source.equals("cache")) {
+                cached++;
+            }
+            if (trace.failed) {
+                failed++;
+            }
+        }
+
+        void print(String command) {
+            long[] sorted = Arrays.copyOf(totals, runs);
+            Arrays.sort(sorted);
+
+            System.out.printf("%-10s%6d%8d%10.1f%10.1f%10.1f%10.1f%10.1f%10.1f%10.1f%,10d%,10.1f%s\n", command, runs, cached,
+                    percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.95) / 1e6, sorted[runs - 1] / 1e6,
+                    mean(phaseNanos[Phase.PREPARE.ordinal()]) / 1e6, mean(phaseNanos[Phase.EXECUTE.ordinal()]) / 1e6,
+                    mean(phaseNanos[Phase.FETCH.ordinal()]) / 1e6, mean(phaseNanos[Phase.RENDER.ordinal()]) / 1e6,
+                    rows / runs, mean(bytes) / 1024, failed > 0 ? String.format("   (%d failed)", failed) : "");
+        }
+
+        private double mean(long sum) {
+            return (double) sum / runs;
+        }
+
+        // nearest rank, every run of the session is kept
+        private static long percentile(long[] sorted, double p) {
+            int rank = (int) Math.ceil(p * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+
+    @Name("hockeydb.Query")
+    @Label("HockeyDB Query")
+    @Category("HockeyDB")
+    @Description("A console query command with the time of each phase")
+    static class QueryEvent extends Event {
+        @Label("Command")
+        String command;
+
+        @Label("Source")
+        @Description("server, cache or local")
+        String source;
+
+        @Label("Prepare")
+        @Timespan(Timespan.NANOSECONDS)
+        long prepare;
+
+        @Label("Execute")
+        @Timespan(Timespan.NANOSECONDS)
+        long execute;
+
+        @Label("Fetch")
+        @Timespan(Timespan.NANOSECONDS)
+        long fetch;
+
+        @Label("Render")
+        @Timespan(Timespan.NANOSECONDS)
+        long render;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Failed")
+        boolean failed;
+    }
+}
@@ -0,0 +1,173 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Rows of the season and stat queries, kept so a repeated command does not go back to the
+ * server. The data only changes through REPOP, INGEST and DELETE.
+ *
+ * - keyed by query id, sql and the bound parameters
+ * - least recently used entries are evicted once there are more than maxEntries or the
+ *   entries hold more than maxCells values
+ * - an entry expires ttlSeconds after it was read from the server, in case another session
+ *   reloaded the database
+ * - every entry carries the data version it was read at, invalidate() bumps the version so
+ *   all older entries are gone at once, including a result still on its way from the server
+ */
+public class ResultCache {
+
+    private final int maxEntries;
+    private final long maxCells;
+    private final long ttlNanos;
+
+    private final AtomicLong version = new AtomicLong();
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cells = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long expirations = 0;
+
+    public ResultCache(int maxEntries, long maxCells, int ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.maxCells = maxCells;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    // read before the query runs, so rows read across an invalidate() are never kept
+    public long version() {
+        return version.get();
+    }
+
+    // the version makes every older entry a miss right away, clearing frees their rows
+    public void invalidate() {
+        version.incrementAndGet();
+        clear();
+    }
+
+    // whether data read from the server at readNanos (System.nanoTime()) is past the ttl
+    public boolean expired(long readNanos) {
+        return System.nanoTime() - readNanos > ttlNanos;
+    }
+
+    // the cached rows, null if they have to come from the server
+    public synchronized List<List<String>> get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        if (entry.version != version.get() || System.nanoTime() > entry.expiresAt) {
+            if (entry.version == version.get()) {
+                expirations++;
+            }
+            remove(key, entry);
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return entry.rows;
+    }
+
+    public synchronized void put(Key key, long readAt, List<List<String>> rows) {
+        if (readAt != version.get() || maxEntries == 0) {
+            return;
+        }
+
+        long rowCells = 0;
+        for (List<String> row : rows) {
+            rowCells += row.size();
+        }
+        if (rowCells > maxCells) {
+            return;
+        }
+
+        Entry old = entries.put(key, new Entry(rows, readAt, System.nanoTime() + ttlNanos, rowCells));
+        if (old != null) {
+            cells -= old.cells;
+        }
+        cells += rowCells;
+
+        // least recently used first, the new entry is last
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || cells > maxCells) && eldest.hasNext()) {
+            Map.Entry<Key, Entry> next = eldest.next();
+            if (next.getKey().equals(key)) {
+                break;
+            }
+            cells -= next.getValue().cells;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        cells = 0;
+    }
+
+    private void remove(Key key, Entry entry) {
+        entries.remove(key);
+        cells -= entry.cells;
+    }
+
+    public synchronized void printStats() {
+        long lookups = hits + misses;
+        System.out.printf("%-14s%,12d\n", "Entries", entries.size());
+        System.out.printf("%-14s%,12d\n", "Cells", cells);
+        System.out.printf("%-14s%,12d\n", "Hits", hits);
+        System.out.printf("%-14s%,12d\n", "Misses", misses);
+        System.out.printf("%-14s%,12d\n", "Evictions", evictions);
+        System.out.printf("%-14s%,12d\n", "Expirations", expirations);
+        System.out.printf("%-14s%,12d\n", "Data version", version.get());
+        System.out.printf("\nHit rate %.1f%% over %,d lookups\n", lookups > 0 ? 100.0 * hits / lookups : 0, lookups);
+    }
+
+    public static class Key {
+        private final String id;
+        private final String sql;
+        private final List<Object> params;
+
+        public Key(String id, String sql, Object... params) {
+            this.id = id;
+            this.sql = sql;
+            this.params = new ArrayList<>(Arrays.asList(params));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return id.equals(key.id) && sql.equals(key.sql) && params.equals(key.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return (id.hashCode() * 31 + sql.hashCode()) * 31 + params.hashCode();
+        }
+    }
+
+    private static class Entry {
+        final List<List<String>> rows;
+        final long version;
+        final long expiresAt;
+        final long cells;
+
+        Entry(List<List<String>> rows, long version, long expiresAt, long cells) {
+            this.rows = rows;
+            this.version = version;
+            this.expiresAt = expiresAt;
+            this.cells = cells;
+        }
+    }
+}
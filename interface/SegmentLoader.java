@@ -0,0 +1,17 @@
+import java.io.IOException;
+import java.sql.SQLException;
+
+// loads the inserts into one table from one chunk over a single worker connection,
+// committing through the checkpoint and returning the number of rows inserted
+public interface SegmentLoader {
+
+    long load(String file_name, String table, LoadJournal.Checkpoint checkpoint) throws IOException, SQLException;
+
+    // forgets anything a failed load left staged, the caller rolls back the connection
+    default void reset() {
+    }
+
+    default void close() throws SQLException {
+    }
+
+}
@@ -0,0 +1,309 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/*
+ * Reads a table of the binary snapshot written by SnapshotWriter, one block at a time.
+ *
+ * The file is memory mapped. Each block's checksum is verified before it is decoded, then
+ * the block is decoded column by column into plain arrays and handed out row by row.
+ * Dictionary strings are decoded once per file and shared by every row that uses them.
+ * A truncated or damaged file is reported as an IOException, like a checksum mismatch.
+ */
+public class SnapshotReader implements Closeable {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final String table;
+    private final String[] columns;
+    private final CRC32 crc = new CRC32();
+    private int blockNumber = 0;
+    private boolean finished = false;
+
+    // decoded strings, one dictionary per column
+    private final List<List<String>> dictionaries = new ArrayList<>();
+
+    // current block, column by column
+    private int blockRows = 0;
+    private int row = 0;
+    private final byte[] encodings;
+    private final boolean[][] nulls;
+    private final long[][] longs;
+    private final double[][] doubles;
+    private final String[][] strings;
+
+    public SnapshotReader(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        long length = channel.size();
+        if (length > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Snapshot too large to map: " + path);
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+        try {
+            byte[] magic = new byte[SnapshotWriter.MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, SnapshotWriter.MAGIC)) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+
+            table = readString(buffer);
+            columns = new String[buffer.getShort() & 0xFFFF];
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = readString(buffer);
+                dictionaries.add(new ArrayList<>());
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        } catch (RuntimeException e) {
+            channel.close();
+            throw damaged(e);
+        }
+
+        encodings = new byte[columns.length];
+        nulls = new boolean[columns.length][SnapshotWriter.BLOCK_ROWS];
+        longs = new long[columns.length][];
+        doubles = new double[columns.length][];
+        strings = new String[columns.length][];
+    }
+
+    public static SnapshotReader table(String table) throws IOException {
+        return new SnapshotReader(SnapshotWriter.tableFile(table));
+    }
+
+    public String table() {
+        return table;
+    }
+
+    public String[] columns() {
+        return columns;
+    }
+
+    public int size() {
+        return buffer.capacity();
+    }
+
+    // moves to the next row, false after the last one
+    public boolean next() throws IOException {
+        if (++row < blockRows) {
+            return true;
+        }
+        if (finished || !readBlock()) {
+            return false;
+        }
+        row = 0;
+        return true;
+    }
+
+    // true if the row just read is the last of its block, a good place to commit
+    public boolean endOfBlock() {
+        return row == blockRows - 1;
+    }
+
+    // values of the current row, boxed the same way as ChunkScanner.value()
+    public Object[] values() {
+        Object[] values = new Object[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            values[c] = value(c);
+        }
+        return values;
+    }
+
+    public Object value(int c) {
+        if (encodings[c] == SnapshotWriter.ALL_NULL || nulls[c][row]) {
+            return null;
+        }
+        switch (encodings[c]) {
+            case SnapshotWriter.INT:
+                return (int) longs[c][row];
+            case SnapshotWriter.LONG:
+                return longs[c][row];
+            case SnapshotWriter.DOUBLE:
+                return doubles[c][row];
+            default:
+                return strings[c][row];
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean readBlock() throws IOException {
+        try {
+            return decodeBlock();
+        } catch (RuntimeException e) {
+            // the buffer and array reads fail past the end of a truncated file
+            throw damaged(e);
+        }
+    }
+
+    private IOException damaged(RuntimeException cause) {
+        return new IOException(String.format("Truncated or damaged snapshot near block %d of %s", blockNumber, path), cause);
+    }
+
+    private boolean decodeBlock() throws IOException {
+        int rows = buffer.getInt();
+        if (rows == 0) {
+            blockRows = 0;
+            finished = true;
+            return false;
+        }
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        blockNumber++;
+
+        ByteBuffer block = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+
+        crc.reset();
+        crc.update(block.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException(String.format("Checksum mismatch in block %d of %s", blockNumber, path));
+        }
+
+        blockRows = rows;
+        for (int c = 0; c < columns.length; c++) {
+            readColumn(block, c);
+        }
+        return true;
+    }
+
+    private void readColumn(ByteBuffer block, int c) {
+        byte encoding = block.get();
+        encodings[c] = encoding;
+        if (encoding == SnapshotWriter.ALL_NULL) {
+            return;
+        }
+
+        boolean[] isNull = nulls[c];
+        Arrays.fill(isNull, 0, blockRows, false);
+        if (block.get() != 0) {
+            byte[] bitmap = new byte[(blockRows + 7) / 8];
+            block.get(bitmap);
+            for (int r = 0; r < blockRows; r++) {
+                isNull[r] = (bitmap[r >> 3] & (1 << (r & 7))) != 0;
+            }
+        }
+
+        switch (encoding) {
+            case SnapshotWriter.INT:
+            case SnapshotWriter.LONG:
+                long[] longColumn = longs[c] == null ? longs[c] = new long[SnapshotWriter.BLOCK_ROWS] : longs[c];
+                for (int r = 0; r < blockRows; r++) {
+                    if (!isNull[r]) {
+                        longColumn[r] = encoding == SnapshotWriter.INT ? block.getInt() : block.getLong();
+                    }
+                }
+                break;
+            case SnapshotWriter.DOUBLE:
+                double[] doubleColumn = doubles[c] == null ? doubles[c] = new double[SnapshotWriter.BLOCK_ROWS] : doubles[c];
+                for (int r = 0; r < blockRows; r++) {
+                    if (!isNull[r]) {
+                        doubleColumn[r] = block.getDouble();
+                    }
+                }
+                break;
+            case SnapshotWriter.DICT:
+                readDictionaryColumn(block, c);
+                break;
+            default:
+                String[] textColumn = stringColumn(c);
+                for (int r = 0; r < blockRows; r++) {
+                    textColumn[r] = isNull[r] ? null : readString(block);
+                }
+        }
+    }
+
+    private void readDictionaryColumn(ByteBuffer block, int c) {
+        List<String> dictionary = dictionaries.get(c);
+        int added = block.getInt();
+        for (int i = 0; i < added; i++) {
+            dictionary.add(readString(block));
+        }
+
+        int width = SnapshotWriter.indexWidth(dictionary.size());
+        String[] column = stringColumn(c);
+        for (int r = 0; r < blockRows; r++) {
+            if (nulls[c][r]) {
+                column[r] = null;
+                continue;
+            }
+            int index;
+            if (width == 1) {
+                index = block.get() & 0xFF;
+            } else if (width == 2) {
+                index = block.getShort() & 0xFFFF;
+            } else {
+                index = block.getInt();
+            }
+            column[r] = dictionary.get(index);
+        }
+    }
+
+    private String[] stringColumn(int c) {
+        if (strings[c] == null) {
+            strings[c] = new String[SnapshotWriter.BLOCK_ROWS];
+        }
+        return strings[c];
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // reads and decodes every table of the snapshot without a database
+    public static void parseOnly() {
+        long bytes = 0;
+        long rows = 0;
+        int files = 0;
+        long start = System.nanoTime();
+
+        for (String[] group : ParallelLoader.TABLE_GROUPS) {
+            for (String table : group) {
+                if (!SnapshotWriter.tableFile(table).toFile().exists()) {
+                    System.out.printf("Skipping %s, not in the snapshot\n", table);
+                    continue;
+                }
+
+                try (SnapshotReader reader = table(table)) {
+                    while (reader.next()) {
+                        for (int c = 0; c < reader.columns.length; c++) {
+                            reader.value(c);
+                        }
+                        rows++;
+                    }
+                    bytes += reader.size();
+                    files++;
+                } catch (IOException e) {
+                    System.err.println("Error reading the snapshot of " + table);
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double mb = bytes / (1024.0 * 1024.0);
+        System.out.printf("Read %d snapshot tables: %.1f MB, %,d rows in %.3f seconds\n", files, mb, rows, seconds);
+        if (seconds > 0) {
+            System.out.printf("Reader throughput: %.1f MB/s, %,.0f rows/sec\n", mb / seconds, rows / seconds);
+        }
+    }
+}
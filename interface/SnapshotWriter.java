@@ -0,0 +1,402 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/*
+ * Writes one table of the binary snapshot ('REPOP --write-snapshot').
+ *
+ * A table file is a header followed by blocks of up to BLOCK_ROWS rows:
+ *
+ *   "HKSNAP01", table, column count, column names
+ *   block: row count, payload length, CRC32 of the payload, payload
+ *   ...
+ *   row count 0
+ *
+ * The payload stores the block column by column. Each column starts with its encoding and
+ * a null bitmap, then only the non-null values: ints and doubles fixed width, strings as
+ * indexes into a dictionary that grows over the whole file (new entries are sent in the
+ * block that first uses them). Columns that are nearly all distinct, like playID, are
+ * written as plain text instead of growing the dictionary for nothing.
+ *
+ * Strings are written as an unsigned short byte length and UTF-8 bytes.
+ *
+ * convert() writes the COMPLETE_FILE marker last, only once every chunk has been converted.
+ * Readers that answer from the whole dataset refuse a snapshot without it.
+ */
+public class SnapshotWriter implements Closeable {
+
+    static final String PATH_TO_SNAPSHOT = "../populate_data/snapshot/";
+    static final String SCHEMA_FILE = "schema.sql";
+    static final String COMPLETE_FILE = "complete";
+    static final String EXTENSION = ".hks";
+    static final byte[] MAGIC = "HKSNAP01".getBytes(StandardCharsets.US_ASCII);
+
+    static final int BLOCK_ROWS = 16384;
+
+    // column encodings of a block
+    static final byte ALL_NULL = 0;
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte DOUBLE = 3;
+    static final byte DICT = 4;
+    static final byte TEXT = 5;
+
+    private final String table;
+    private final String[] columns;
+    private final DataOutputStream out;
+    private final Object[][] rows = new Object[BLOCK_ROWS][];
+    private int pendingRows = 0;
+    private long totalRows = 0;
+
+    // string -> dictionary index, one dictionary per column for the whole file
+    private final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream(1 << 20);
+    private final DataOutputStream block = new DataOutputStream(payload);
+    private final CRC32 crc = new CRC32();
+
+    public SnapshotWriter(Path path, String table, String[] columns) throws IOException {
+        this.table = table;
+        this.columns = columns;
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path.toFile()), 1 << 16));
+
+        for (int c = 0; c < columns.length; c++) {
+            dictionaries.add(new HashMap<>());
+        }
+
+        out.write(MAGIC);
+        writeString(out, table);
+        out.writeShort(columns.length);
+        for (String column : columns) {
+            writeString(out, column);
+        }
+    }
+
+    public static Path tableFile(String table) {
+        return Paths.get(PATH_TO_SNAPSHOT, table + EXTENSION);
+    }
+
+    public String[] columns() {
+        return columns;
+    }
+
+    public long rows() {
+        return totalRows;
+    }
+
+    public void add(Object[] values) throws IOException {
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values for " + table + " but found " + values.length);
+        }
+        rows[pendingRows++] = values;
+        totalRows++;
+
+        if (pendingRows == BLOCK_ROWS) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (pendingRows > 0) {
+            writeBlock();
+        }
+        out.writeInt(0);
+        out.close();
+    }
+
+    private void writeBlock() throws IOException {
+        payload.reset();
+        for (int c = 0; c < columns.length; c++) {
+            writeColumn(c);
+        }
+        block.flush();
+
+        byte[] bytes = payload.toByteArray();
+        crc.reset();
+        crc.update(bytes);
+
+        out.writeInt(pendingRows);
+        out.writeInt(bytes.length);
+        out.writeInt((int) crc.getValue());
+        out.write(bytes);
+
+        for (int r = 0; r < pendingRows; r++) {
+            rows[r] = null;
+        }
+        pendingRows = 0;
+    }
+
+    private void writeColumn(int c) throws IOException {
+        byte encoding = encoding(c);
+        block.writeByte(encoding);
+        if (encoding == ALL_NULL) {
+            return;
+        }
+
+        // one bit per row, set when the value is null
+        byte[] nulls = new byte[(pendingRows + 7) / 8];
+        boolean hasNulls = false;
+        for (int r = 0; r < pendingRows; r++) {
+            if (rows[r][c] == null) {
+                nulls[r >> 3] |= 1 << (r & 7);
+                hasNulls = true;
+            }
+        }
+        block.writeBoolean(hasNulls);
+        if (hasNulls) {
+            block.write(nulls);
+        }
+
+        switch (encoding) {
+            case INT:
+                for (int r = 0; r < pendingRows; r++) {
+                    if (rows[r][c] != null) {
+                        block.writeInt(((Number) rows[r][c]).intValue());
+                    }
+                }
+                break;
+            case LONG:
+                for (int r = 0; r < pendingRows; r++) {
+                    if (rows[r][c] != null) {
+                        block.writeLong(((Number) rows[r][c]).longValue());
+                    }
+                }
+                break;
+            case DOUBLE:
+                for (int r = 0; r < pendingRows; r++) {
+                    if (rows[r][c] != null) {
+                        block.writeDouble(((Number) rows[r][c]).doubleValue());
+                    }
+                }
+                break;
+            case DICT:
+                writeDictionaryColumn(c);
+                break;
+            default:
+                for (int r = 0; r < pendingRows; r++) {
+                    if (rows[r][c] != null) {
+                        writeString(block, rows[r][c].toString());
+                    }
+                }
+        }
+    }
+
+    // new dictionary entries of this block, then one fixed width index per value
+    private void writeDictionaryColumn(int c) throws IOException {
+        Map<String, Integer> dictionary = dictionaries.get(c);
+        List<String> added = new ArrayList<>();
+
+        for (int r = 0; r < pendingRows; r++) {
+            Object value = rows[r][c];
+            if (value != null && !dictionary.containsKey(value)) {
+                dictionary.put((String) value, dictionary.size());
+                added.add((String) value);
+            }
+        }
+
+        block.writeInt(added.size());
+        for (String value : added) {
+            writeString(block, value);
+        }
+
+        int width = indexWidth(dictionary.size());
+        for (int r = 0; r < pendingRows; r++) {
+            Object value = rows[r][c];
+            if (value == null) {
+                continue;
+            }
+            int index = dictionary.get(value);
+            if (width == 1) {
+                block.writeByte(index);
+            } else if (width == 2) {
+                block.writeShort(index);
+            } else {
+                block.writeInt(index);
+            }
+        }
+    }
+
+    // narrowest encoding that holds every value of the column in this block
+    private byte encoding(int c) {
+        boolean any = false;
+        boolean strings = false;
+        boolean numbers = false;
+        boolean doubles = false;
+        boolean longs = false;
+
+        for (int r = 0; r < pendingRows; r++) {
+            Object value = rows[r][c];
+            if (value == null) {
+                continue;
+            }
+            any = true;
+            if (value instanceof String) {
+                strings = true;
+            } else if (value instanceof Double) {
+                numbers = doubles = true;
+            } else if (value instanceof Long) {
+                numbers = longs = true;
+            } else {
+                numbers = true;
+            }
+        }
+
+        if (!any) {
+            return ALL_NULL;
+        }
+        if (strings) {
+            // a mix of strings and numbers keeps the text of every value
+            return numbers ? TEXT : dictionaryOrText(c);
+        }
+        if (doubles) {
+            return DOUBLE;
+        }
+        return longs ? LONG : INT;
+    }
+
+    // dictionary unless most values of the block would be new entries
+    private byte dictionaryOrText(int c) {
+        Map<String, Integer> dictionary = dictionaries.get(c);
+        Map<String, Boolean> seen = new HashMap<>();
+        int values = 0;
+
+        for (int r = 0; r < pendingRows; r++) {
+            Object value = rows[r][c];
+            if (value != null) {
+                values++;
+                if (!dictionary.containsKey(value)) {
+                    seen.put((String) value, Boolean.TRUE);
+                }
+            }
+        }
+        return seen.size() * 2 > values ? TEXT : DICT;
+    }
+
+    static int indexWidth(int dictionarySize) {
+        if (dictionarySize <= 256) {
+            return 1;
+        }
+        return dictionarySize <= 65536 ? 2 : 4;
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String too long for the snapshot: " + value.length() + " chars");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    // true once convert() has written every chunk into the snapshot
+    static boolean isComplete() {
+        return Paths.get(PATH_TO_SNAPSHOT, COMPLETE_FILE).toFile().exists();
+    }
+
+    // converts every sql chunk into the snapshot directory, one file per table
+    public static void convert(int numChunks) {
+        Map<String, SnapshotWriter> writers = new LinkedHashMap<>();
+        Path marker = Paths.get(PATH_TO_SNAPSHOT, COMPLETE_FILE);
+        boolean complete = false;
+        long textBytes = 0;
+        long start = System.nanoTime();
+
+        try {
+            Files.createDirectories(Paths.get(PATH_TO_SNAPSHOT));
+            Files.deleteIfExists(marker);
+
+            try (BufferedWriter schema = new BufferedWriter(new FileWriter(Paths.get(PATH_TO_SNAPSHOT, SCHEMA_FILE).toFile()))) {
+                for (int i = 1; i <= numChunks; i++) {
+                    String file_name = ParallelLoader.chunkName(i);
+                    if (!Paths.get(Populator.PATH_TO_CHUNKS, file_name).toFile().exists()) {
+                        // a snapshot without it would answer every --local command from part of the data
+                        throw new IOException("Chunk " + file_name + " not found, the snapshot needs every chunk");
+                    }
+
+                    try (ChunkScanner scanner = ChunkScanner.chunk(file_name)) {
+                        textBytes += scanner.size();
+                        SnapshotWriter writer = null;
+                        byte[] lastTable = null;
+
+                        while (scanner.next()) {
+                            if (!scanner.isInsert()) {
+                                // drops, creates and settings are replayed before loading
+                                if (!scanner.isPrint()) {
+                                    schema.write(scanner.statement());
+                                    schema.newLine();
+                                }
+                                continue;
+                            }
+
+                            if (writer == null || !scanner.isInsertInto(lastTable)) {
+                                String table = scanner.table();
+                                writer = writers.get(table);
+                                if (writer == null) {
+                                    writer = new SnapshotWriter(tableFile(table), table, scanner.columns());
+                                    writers.put(table, writer);
+                                }
+                                lastTable = ChunkScanner.tableBytes(table);
+                            }
+                            writer.add(scanner.values(writer.columns.length));
+                        }
+                    }
+                }
+            }
+            complete = true;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error writing the snapshot.");
+            e.printStackTrace();
+        } finally {
+            for (SnapshotWriter writer : writers.values()) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    complete = false;
+                    System.err.println("Error closing the snapshot of " + writer.table);
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        if (complete) {
+            try {
+                Files.createFile(marker);
+            } catch (IOException e) {
+                complete = false;
+                System.err.println("Error marking the snapshot complete.");
+                e.printStackTrace();
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long snapshotBytes = 0;
+        System.out.printf("%-15s%12s%12s\n", "Table", "Rows", "KB");
+        for (SnapshotWriter writer : writers.values()) {
+            long bytes = tableFile(writer.table).toFile().length();
+            snapshotBytes += bytes;
+            System.out.printf("%-15s%,12d%,12d\n", writer.table, writer.totalRows, bytes / 1024);
+        }
+        System.out.printf("\nWrote the snapshot in %.1f seconds: %.1f MB of SQL text became %.1f MB (%.0f%% smaller)\n",
+                seconds, textBytes / 1048576.0, snapshotBytes / 1048576.0,
+                textBytes > 0 ? 100.0 * (textBytes - snapshotBytes) / textBytes : 0);
+        if (!complete) {
+            System.out.println("The snapshot is incomplete, --local and 'REPOP --from-snapshot' will not use it.");
+        }
+    }
+}
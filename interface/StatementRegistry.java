@@ -0,0 +1,94 @@
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The prepared statements of the HockeyDB commands, by query id (the console command that
+ * runs the query, plus the existence checks).
+ *
+ * A statement is prepared the first time its query runs on a pooled connection and reused
+ * from then on, a hit is a run that found the statement already prepared on its connection.
+ * With every connection warm there is one miss per query and connection, the rest are hits.
+ */
+public class StatementRegistry {
+
+    // query id -> what it answers, in the numbering of HockeyDB's header
+    private static final String[][] QUERIES = {
+            { "tgbt", "(1) goals against each team" },
+            { "tgap", "(2) goals, assists, points" },
+            { "asl", "(3) avg shift by play type" },
+            { "gba", "(4) goals by venue" },
+            { "topNO", "(5) officials, away penalties" },
+            { "mt", "(6) most teams played for" },
+            { "tpp", "(7) most penalties" },
+            { "aslp", "(8) avg shift by period" },
+            { "pw", "(9) playoff wins" },
+            { "sAll", "(10) scored against all teams" },
+            { "top25", "(11) top 25 by stat" },
+            { "gps", "(12) goals per shot" },
+            { "teams", "(13) all teams" },
+            { "sp", "(14) player search" },
+            { "gs", "(15) team schedule" },
+            { "ghh", "(16) gordie howe hat tricks" },
+            { "playerExists", "player name check" },
+            { "teamExists", "team name check" },
+            { "names", "player name index" },
+            { "DELETE", "drop all tables" },
+    };
+
+    private final Map<String, Counts> counts = new LinkedHashMap<>();
+
+    public StatementRegistry() {
+        for (String[] query : QUERIES) {
+            counts.put(query[0], new Counts(query[1]));
+        }
+    }
+
+    // the lease's statement for the query with the running job's timeout, the caller binds and
+    // runs it but does not close it
+    public PreparedStatement prepare(ConnectionPool.Lease lease, String id, String sql) throws SQLException {
+        Counts query = counts.get(id);
+        if (query == null) {
+            throw new IllegalArgumentException("Unknown query id: " + id);
+        }
+
+        if (lease.isPrepared(sql)) {
+            query.hits.incrementAndGet();
+        } else {
+            query.misses.incrementAndGet();
+        }
+        PreparedStatement statement = lease.prepare(sql);
+        QueryJobs.track(statement);
+        return statement;
+    }
+
+    public void printStats() {
+        long hits = 0;
+        long misses = 0;
+
+        System.out.printf("%-14s%-32s%10s%10s\n", "Query", "", "Hits", "Misses");
+        for (Map.Entry<String, Counts> entry : counts.entrySet()) {
+            Counts query = entry.getValue();
+            hits += query.hits.get();
+            misses += query.misses.get();
+            if (query.hits.get() + query.misses.get() > 0) {
+                System.out.printf("%-14s%-32s%,10d%,10d\n", entry.getKey(), query.description, query.hits.get(), query.misses.get());
+            }
+        }
+
+        long runs = hits + misses;
+        System.out.printf("\n%,d statement runs, %,d prepared (%.1f%% reused)\n", runs, misses, runs > 0 ? 100.0 * hits / runs : 0);
+    }
+
+    private static class Counts {
+        final String description;
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+
+        Counts(String description) {
+            this.description = description;
+        }
+    }
+}
@@ -1,3 +1,8 @@
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -7,82 +12,139 @@ public class TablePrinter {
 
     private static int PADDING = 3;
 
-    public static void printResultSet(ResultSet rs, String[] headers) {
+    // characters a table writes before they go to System.out, a table smaller than this is one write
+    private static final int OUTPUT_BUFFER = 1 << 16;
+
+    // 'plain': values separated by tabs, no padding or dashes, for piping into other tools
+    private static volatile boolean plain = false;
 
-        List<List<String>> tableData = getTableData(rs);
-        List<Integer> col_spaces = getColumnSpaces(tableData, headers, tableData.size());
+    // rows read ahead to size the columns, then read and printed this many at a time
+    static final int WINDOW = 256;
 
-        printRow(Arrays.asList(headers), col_spaces);
-        printDashes(col_spaces);
+    // a column's declared size widens it up to this when the result is longer than the window
+    private static final int MAX_DISPLAY_WIDTH = 40;
 
-        // loop through the data one by one
-        for (int i = 0; i < tableData.size(); i++) {
-            printRow(tableData.get(i), col_spaces);
+    public static void printResultSet(ResultSet rs, String[] headers) {
+        try {
+            stream(rs, headers).print();
+        } catch (SQLException e) {
+            e.printStackTrace(System.out);
         }
     }
 
     public static void printResultSetWithRank(ResultSet rs, String[] headers, int numRows) {
+        try {
+            streamWithRank(rs, headers, numRows).print();
+        } catch (SQLException e) {
+            e.printStackTrace(System.out);
+        }
+    }
 
-        List<List<String>> tableData = getTableData(rs);
-        List<Integer> col_spaces = getColumnSpaces(tableData, Arrays.copyOfRange(headers, 1, headers.length), numRows);
+    // reads the first window of rows, print() prints them and the rest as they are read
+    public static Stream stream(ResultSet rs, String[] headers) throws SQLException {
+        return new Stream(rs, headers, false, false, Long.MAX_VALUE);
+    }
 
-        int rank = 1;
-        int i = 0;
-        // add rank to the arrays
-        while (i < tableData.size() && i < numRows) {
-            tableData.get(i).add(0, "" + rank);
-            rank++;
-            i++;
-        }
+    // the first numRows rows with their rank in front, headers[0] is the rank's
+    public static Stream streamWithRank(ResultSet rs, String[] headers, int numRows) throws SQLException {
+        return new Stream(rs, headers, true, false, numRows);
+    }
 
-        // make rank column width of "Rank"+1
-        col_spaces.add(0, headers[0].length() + 1);
+    // a page of at most pageRows rows whose last column is the sort key, kept but not printed
+    public static Stream streamPage(ResultSet rs, String[] headers, int pageRows) throws SQLException {
+        return new Stream(rs, headers, false, true, pageRows);
+    }
 
-        printRow(Arrays.asList(headers), col_spaces);
-        printDashes(col_spaces);
+    // prints the box above a streamed table once its first rows are in, false leaves the table out
+    public interface Heading {
+        boolean print(boolean empty);
+    }
 
-        // loop through the data one by one
-        i = 0;
-        while (i < tableData.size() && i < numRows) {
-            printRow(tableData.get(i), col_spaces);
-            i++;
-        }
+    public static boolean isPlain() {
+        return plain;
+    }
 
+    public static void setPlain(boolean on) {
+        plain = on;
     }
 
-    private static List<List<String>> getTableData(ResultSet rs) {
+    // rows already read, e.g. from the result cache
+    public static void printRows(List<List<String>> tableData, String[] headers) {
+        long start = System.nanoTime();
 
-        List<List<String>> tableData = new ArrayList<>();
+        int[] col_spaces = getColumnSpaces(tableData, headers, 0, tableData.size());
 
-        try {
-            // metadata to tell us how many columns were dealing with
-            ResultSetMetaData metaData = rs.getMetaData();
-            int columnCount = metaData.getColumnCount();
+        try (Output out = new Output(col_spaces)) {
+            out.headers(headers);
 
-            while (rs.next()) { // store result set data into 2D list
+            // loop through the data one by one
+            for (int i = 0; i < tableData.size(); i++) {
+                List<String> row = tableData.get(i);
+                for (int j = 0; j < row.size(); j++) {
+                    out.cell(row.get(j));
+                }
+                out.endRow();
+            }
+        }
+        QueryMetrics.phase(QueryMetrics.Phase.RENDER, start);
+    }
 
-                List<String> row = new ArrayList<>();
-                for (int i = 1; i <= columnCount; i++) {
+    public static void printRowsWithRank(List<List<String>> tableData, String[] headers, int numRows) {
+        long start = System.nanoTime();
 
-                    row.add(rs.getString(i)); // insert row
+        // the data's columns are after the rank, whose column is "Rank"+1 wide
+        int[] col_spaces = getColumnSpaces(tableData, headers, 1, numRows);
+        col_spaces[0] = headers[0].length() + 1;
+
+        try (Output out = new Output(col_spaces)) {
+            out.headers(headers);
+
+            // loop through the data one by one, the rank goes in front
+            int i = 0;
+            while (i < tableData.size() && i < numRows) {
+                List<String> row = tableData.get(i);
+                out.rank(i + 1);
+                for (int j = 0; j < row.size(); j++) {
+                    out.cell(row.get(j));
                 }
+                out.endRow();
+                i++;
+            }
+        }
+        QueryMetrics.phase(QueryMetrics.Phase.RENDER, start);
+    }
+
+    // reads the whole result set, each value as its string
+    public static List<List<String>> readRows(ResultSet rs) throws SQLException {
+
+        List<List<String>> tableData = new ArrayList<>();
+
+        // metadata to tell us how many columns were dealing with
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+
+        while (rs.next()) { // store result set data into 2D list
+
+            List<String> row = new ArrayList<>();
+            for (int i = 1; i <= columnCount; i++) {
 
-                tableData.add(row); // Add the row to the 2D ArrayList
+                row.add(rs.getString(i)); // insert row
             }
-        } catch (SQLException e) {
-            e.printStackTrace(System.out);
+
+            tableData.add(row); // Add the row to the 2D ArrayList
         }
 
         return tableData;
     }
 
-    private static List<Integer> getColumnSpaces(List<List<String>> tableData, String[] headers, int maxRows) {
+    // the data's columns start at column first of the headers, the ones before it are left 0
+    private static int[] getColumnSpaces(List<List<String>> tableData, String[] headers, int first, int maxRows) {
 
-        // col_spaces[i] is width of i'th column, set all 0 to start
-        List<Integer> col_spaces = new ArrayList<>(headers.length);
-        for (int i = 0; i < headers.length; i++) {
+        // col_spaces[i] is width of i'th column
+        int[] col_spaces = new int[headers.length];
+        for (int i = first; i < headers.length; i++) {
             // headers are initially width of titles, unless they need to be longer
-            col_spaces.add(headers[i].length());
+            col_spaces[i] = headers[i].length();
         }
 
         int i = 0;
@@ -91,9 +153,8 @@ public class TablePrinter {
             List<String> curRow = tableData.get(i);
 
             for (int j = 0; j < curRow.size(); j++) {
-                // continuously update the width of the maximum length for column[j]
-                int col_max = Math.max(col_spaces.get(j), curRow.get(j).length());
-                col_spaces.set(j, col_max);
+                // continuously update the width of the maximum length for column[j], NULL prints as null
+                col_spaces[first + j] = Math.max(col_spaces[first + j], String.valueOf(curRow.get(j)).length());
             }
             i++;
         }
@@ -101,22 +162,281 @@ public class TablePrinter {
         return col_spaces;
     }
 
-    private static void printRow(List<String> currRow, List<Integer> col_spaces) {
-        String title = "";
-        for (int i = 0; i < currRow.size(); i++) {
-            int spacing = col_spaces.get(i) + PADDING;
-            title += String.format("%-" + spacing + "s", currRow.get(i));
+    /*
+     * A result set printed while it is read, holding no more than WINDOW rows at a time.
+     *
+     * The columns are as wide as the headers and the values of the first window. When the
+     * result goes on past the window, a column whose declared display size is small (names,
+     * numbers, dates) is widened to it so later rows still line up; a longer value than the
+     * width pushes the rest of its row over rather than being cut. A result that fits in the
+     * window prints exactly as printRows() would print it.
+     *
+     * Reading a window is the command's fetch phase, printing it the render phase.
+     *
+     * A keyed stream (a page) holds the sort key in its last column: it is not printed, the
+     * first and last row's keys are kept for the next and previous pages.
+     */
+    public static class Stream {
+        private final ResultSet rs;
+        private final String[] headers;
+        private final boolean ranked;
+        private final boolean keyed;
+        private final long limit;
+        private final int columns;
+        private final String[][] window;
+        private final int[] col_spaces;
+
+        private int windowRows = 0;
+        private boolean more = true;
+        private boolean limited = false;
+        private long rows = 0;
+        private long bytes = 0;
+        private Object firstKey;
+        private Object lastKey;
+
+        private Stream(ResultSet rs, String[] headers, boolean ranked, boolean keyed, long limit) throws SQLException {
+            this.rs = rs;
+            this.headers = headers;
+            this.ranked = ranked;
+            this.keyed = keyed;
+            this.limit = limit;
+
+            ResultSetMetaData metaData = rs.getMetaData();
+            columns = metaData.getColumnCount() - (keyed ? 1 : 0);
+            window = new String[(int) Math.min(WINDOW, Math.max(1, limit))][columns];
+            readWindow();
+
+            // widths of the headers and the first window, the rank column is as wide as "Rank"+1
+            int first = ranked ? 1 : 0;
+            col_spaces = new int[first + columns];
+            if (ranked) {
+                col_spaces[0] = headers[0].length() + 1;
+            }
+            for (int c = 0; c < columns; c++) {
+                int width = first + c < headers.length ? headers[first + c].length() : 0;
+                for (int r = 0; r < windowRows; r++) {
+                    width = Math.max(width, String.valueOf(window[r][c]).length());
+                }
+                if (more) {
+                    int displaySize = metaData.getColumnDisplaySize(c + 1);
+                    if (displaySize > width && displaySize <= MAX_DISPLAY_WIDTH) {
+                        width = displaySize;
+                    }
+                }
+                col_spaces[first + c] = width;
+            }
+        }
+
+        public boolean isEmpty() {
+            return rows == 0;
+        }
+
+        public long rows() {
+            return rows;
+        }
+
+        // lengths of the values read, see QueryMetrics
+        public long bytes() {
+            return bytes;
+        }
+
+        public Object firstKey() {
+            return firstKey;
+        }
+
+        public Object lastKey() {
+            return lastKey;
+        }
+
+        // after print(), whether the result has rows past the limit (it reads one more row)
+        public boolean hasMore() throws SQLException {
+            if (limited) {
+                limited = false;
+                more = rs.next();
+            }
+            return more;
+        }
+
+        // prints the headers and every row, returns the number of rows
+        public long print() throws SQLException {
+            long start = System.nanoTime();
+            try (Output out = new Output(col_spaces)) {
+                out.headers(headers);
+
+                long rank = 0;
+                while (true) {
+                    for (int r = 0; r < windowRows; r++) {
+                        if (ranked) {
+                            out.rank(++rank);
+                        }
+                        String[] row = window[r];
+                        for (int c = 0; c < columns; c++) {
+                            out.cell(row[c]);
+                        }
+                        out.endRow();
+                    }
+                    start = QueryMetrics.phase(QueryMetrics.Phase.RENDER, start);
+
+                    if (!more) {
+                        return rows;
+                    }
+                    readWindow();
+                    start = System.nanoTime();
+                }
+            }
+        }
+
+        // the next rows into the window, reusing its arrays
+        private void readWindow() throws SQLException {
+            long start = System.nanoTime();
+            windowRows = 0;
+            while (windowRows < window.length && rows < limit) {
+                if (!rs.next()) {
+                    more = false;
+                    break;
+                }
+                String[] row = window[windowRows++];
+                for (int c = 0; c < columns; c++) {
+                    row[c] = rs.getString(c + 1);
+                    bytes += row[c] == null ? 0 : row[c].length();
+                }
+                if (keyed) {
+                    lastKey = rs.getObject(columns + 1);
+                    if (rows == 0) {
+                        firstKey = lastKey;
+                    }
+                }
+                rows++;
+            }
+            if (more && rows >= limit) {
+                more = false;
+                limited = true;
+            }
+            QueryMetrics.phase(QueryMetrics.Phase.FETCH, start);
+        }
+    }
+
+    // each thread's writer and line buffer, kept from table to table. Background jobs print
+    // on threads of their own, so their tables never share a writer
+    private static final ThreadLocal<Sink> SINKS = ThreadLocal.withInitial(Sink::new);
+
+    private static class Sink {
+        private PrintStream target;
+        private PrintWriter writer;
+        char[] line = new char[256];
+
+        // the writer on System.out, a new one if System.out was replaced since the last table
+        PrintWriter writer() {
+            if (target != System.out) {
+                target = System.out;
+                writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(target, Charset.defaultCharset()), OUTPUT_BUFFER));
+            }
+            return writer;
         }
-        System.out.println(title);
     }
 
-    private static void printDashes(List<Integer> col_spaces) {
-        String title = "";
-        for (int i = 0; i < col_spaces.size(); i++) {
-            int spacing = col_spaces.get(i) + PADDING;
-            title += String.format("%-" + spacing + "s", "-".repeat(col_spaces.get(i)));
+    /*
+     * One table on its way to System.out. Each line is put together in the thread's char
+     * buffer: a value, then spaces up to its column's width plus PADDING ('plain': a tab
+     * between values instead). A whole line goes to the thread's BufferedWriter, flushed when
+     * the table is done, so System.out sees one write per OUTPUT_BUFFER characters instead of
+     * one per row. A row allocates nothing, not even its rank, and a table only this object.
+     *
+     * Close it (it is flushed, System.out stays open) before anything else prints.
+     */
+    private static class Output implements AutoCloseable {
+        private static final char[] DASHES = "-".repeat(MAX_DISPLAY_WIDTH).toCharArray();
+
+        private final int[] col_spaces;
+        private final boolean plain = TablePrinter.plain;
+        private final Sink sink = SINKS.get();
+        private final PrintWriter writer = sink.writer();
+
+        private char[] line = sink.line;
+        private int length = 0;
+        private int column = 0;
+
+        Output(int[] col_spaces) {
+            this.col_spaces = col_spaces;
+        }
+
+        // the headers' line and, padded, the dashes under it
+        void headers(String[] headers) {
+            for (String header : headers) {
+                cell(header);
+            }
+            endRow();
+            if (plain) {
+                return;
+            }
+            for (int width : col_spaces) {
+                int at = start(width);
+                for (int done = 0; done < width; done += DASHES.length) {
+                    System.arraycopy(DASHES, 0, line, at + done, Math.min(width - done, DASHES.length));
+                }
+                end(at, width);
+            }
+            endRow();
+        }
+
+        // NULL prints as null
+        void cell(String value) {
+            if (value == null) {
+                value = "null";
+            }
+            int at = start(value.length());
+            value.getChars(0, value.length(), line, at);
+            end(at, value.length());
+        }
+
+        void rank(long rank) {
+            int digits = 1;
+            for (long rest = rank / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            int at = start(digits);
+            for (int i = at + digits - 1; i >= at; i--) {
+                line[i] = (char) ('0' + rank % 10);
+                rank /= 10;
+            }
+            end(at, digits);
+        }
+
+        void endRow() {
+            writer.write(line, 0, length);
+            writer.println();
+            length = 0;
+            column = 0;
+        }
+
+        @Override
+        public void close() {
+            writer.flush();
+        }
+
+        // makes room for the next value and what goes around it, returns where the value goes
+        private int start(int valueLength) {
+            int at = plain && column > 0 ? length + 1 : length;
+            int width = plain ? valueLength : Math.max(valueLength, col_spaces[column] + PADDING);
+            if (at + width > line.length) {
+                line = sink.line = Arrays.copyOf(line, Math.max(at + width, line.length * 2));
+            }
+            if (at > length) {
+                line[length] = '\t';
+            }
+            return at;
+        }
+
+        // after the value at at, spaces up to its column's width plus PADDING
+        private void end(int at, int valueLength) {
+            length = at + valueLength;
+            if (!plain) {
+                int end = at + Math.max(valueLength, col_spaces[column] + PADDING);
+                Arrays.fill(line, length, end, ' ');
+                length = end;
+            }
+            column++;
         }
-        System.out.println(title);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Column types of a table as reported by the database, in the order of a given column list.
+ *
+ * The types come from an empty select on the table rather than DatabaseMetaData.getColumns,
+ * so the name resolves to the same table the inserts go to: on the shared database another
+ * schema's table of that name is not matched, and on H2 the upper-case names still are.
+ */
+public class TableSchema {
+
+    final String table;
+    final String[] columns;
+    final int[] types;
+    final int[] precisions;
+    final int[] scales;
+
+    private TableSchema(String table, String[] columns) {
+        this.table = table;
+        this.columns = columns;
+        this.types = new int[columns.length];
+        this.precisions = new int[columns.length];
+        this.scales = new int[columns.length];
+    }
+
+    public static TableSchema load(Connection connection, String table, String[] columns) throws SQLException {
+        Map<String, int[]> found = new HashMap<>();
+
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT * FROM " + table + " WHERE 1 = 0;")) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                int[] info = { metaData.getColumnType(i), metaData.getPrecision(i), metaData.getScale(i) };
+                found.put(metaData.getColumnName(i).toLowerCase(), info);
+            }
+        }
+
+        TableSchema schema = new TableSchema(table, columns);
+        for (int i = 0; i < columns.length; i++) {
+            // columns we cannot look up are sent as text and converted by the server
+            int[] info = found.getOrDefault(columns[i].toLowerCase(), new int[] { Types.VARCHAR, 0, 0 });
+            schema.types[i] = info[0];
+            schema.precisions[i] = info[1];
+            schema.scales[i] = info[2];
+        }
+        return schema;
+    }
+}
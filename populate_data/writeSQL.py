@@ -14,163 +14,9 @@ game_plays_players = PATH + "game_plays_players.csv"
 
 FIRST_SEASON = "2012"
 
-# string to drop and create tables before inserting data
-SQL_CREATE_TABLES = """
-
-USE cs3380;
-
-SET NOCOUNT ON;
-
-DROP TABLE IF EXISTS assists;
-DROP TABLE IF EXISTS plays;
-DROP TABLE IF EXISTS shifts;
-DROP TABLE IF EXISTS officiatedBy;
-DROP TABLE IF EXISTS playsIn;
-DROP TABLE IF EXISTS games;
-DROP TABLE IF EXISTS venues;
-DROP TABLE IF EXISTS playsOn;
-DROP TABLE IF EXISTS teams; 
-DROP TABLE IF EXISTS players;
-DROP TABLE IF EXISTS officials;
-
-CREATE TABLE teams (
-  teamID INT PRIMARY KEY,
-  city varchar(30) NOT NULL,
-  teamName varchar(30) NOT NULL
-);
-
-CREATE TABLE venues (
-  venueID INT PRIMARY KEY,
-  venueName varchar(50) NOT NULL,
-  teamID INT,
-
-  FOREIGN KEY (teamID) REFERENCES teams (teamID)
-    ON DELETE NO ACTION,
-);
-
-CREATE TABLE games (
-  gameID INT PRIMARY KEY,
-  type varchar(10) NOT NULL,
-  dateTime DATETIME NOT NULL,
-  outcome varchar(30) NOT NULL,
-  season varchar(15) NOT NULL,
-  homeTeamID INT,
-  awayTeamID INT,
-  venueID INT,
-  
-  FOREIGN KEY (venueID) REFERENCES venues (venueID)
-    ON DELETE NO ACTION,
-  FOREIGN KEY (homeTeamID) REFERENCES teams (teamID)
-    ON DELETE NO ACTION,
-  FOREIGN KEY (awayTeamID) REFERENCES teams (teamID)
-    ON DELETE NO ACTION
-);
-
-CREATE TABLE players (
-  playerID INT PRIMARY KEY,
-  firstName varchar(30) NOT NULL,
-  lastName varchar(30) NOT NULL,
-  nationality varchar(30) NOT NULL,
-  birthDate DATE NOT NULL,
-  height varchar(30) NOT NULL,
-  weight INT NOT NULL,
-  playerType varchar(30)
-);
-
-CREATE TABLE playsIn (
-  gameID INT,
-  playerID INT,
-  plusMinus INT,
-  savePercentage FLOAT,
-
-  FOREIGN KEY (gameID) REFERENCES games (gameID)
-    ON DELETE NO ACTION,
-  FOREIGN KEY (playerID) REFERENCES players (playerID)
-    ON DELETE NO ACTION,
-  PRIMARY KEY (gameID, playerID)
-);
-
-CREATE TABLE playsOn (
-  playerID INT,
-  teamID INT,
-  startDate DATE NOT NULL,
-  endDate DATE,
-    CHECK (endDate IS NULL OR endDate >= startDate),
-
-  FOREIGN KEY (playerID) REFERENCES players (playerID)
-    ON DELETE NO ACTION,
-  FOREIGN KEY (teamID) REFERENCES teams (teamID)
-    ON DELETE NO ACTION,
-  PRIMARY KEY (playerID, teamID, startDate)
-);
-
-CREATE TABLE officials (
-  officialID INT PRIMARY KEY,
-  officialName varchar(30)
-);
-
-CREATE TABLE officiatedBy (
-  gameID INT,
-  officialID INT,
-  officialType varchar(30),
-
-  FOREIGN KEY (gameID) REFERENCES games (gameID)
-    ON DELETE NO ACTION,
-  FOREIGN KEY (officialID) REFERENCES officials (officialID)
-    ON DELETE NO ACTION,
-  PRIMARY KEY (gameID, officialID)
-);
-
-CREATE TABLE shifts (
-  shiftID INT PRIMARY KEY,
-  playerID INT,
-  gameID INT,
-  periodNumber INT NOT NULL,
-  shiftStart INT NOT NULL,
-  shiftEnd INT NOT NULL,
-
-  FOREIGN KEY (playerID) REFERENCES players (playerID)
-    ON DELETE NO ACTION,
-  FOREIGN KEY (gameID) REFERENCES games (gameID)
-    ON DELETE NO ACTION
-);
-
-CREATE TABLE plays(
-    playID varchar(30) PRIMARY KEY, 
-    playerID INT, 
-    gameID INT, 
-    shiftID INT, 
-    periodNumber INT,
-    periodType varchar(15),
-    periodTime INT, 
-    playType varchar(15), 
-         CHECK (playType IN ('Shot', 'Goal', 'Penalty')),
-    secondaryType varchar(60), 
-    goalieID INT,
-
-    
-    FOREIGN KEY (playerID) REFERENCES players(playerID)
-        ON DELETE NO ACTION,
-    FOREIGN KEY (gameID) REFERENCES games (gameID)
-        ON DELETE NO ACTION,
-    FOREIGN KEY (shiftID) REFERENCES shifts (shiftID)
-        ON DELETE NO ACTION,
-    FOREIGN KEY (goalieID) REFERENCES players(playerID)
-        ON DELETE NO ACTION
-);
-
-CREATE TABLE assists (
-  playID varchar(30), 
-  playerID INT, 
-
-  FOREIGN KEY (playerID) REFERENCES players (playerID)
-    ON DELETE NO ACTION,
-  FOREIGN KEY (playID) REFERENCES plays (playID)
-    ON DELETE NO ACTION,
-  PRIMARY KEY (playID, playerID)
-);
-
-"""
+# drop and create tables before inserting data, REPOP --from-csv runs the same file
+with open("create_tables.sql") as file:
+  SQL_CREATE_TABLES = file.read()
 
 # create pandas dataframe for teams table
 def create_teams_df():